@@ -0,0 +1,270 @@
+package ru.javabegin.backend.todo.loadtest;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+
+Tasks of one big category: /task/category (everything in one response) against /task/category/page (keyset pages)
+and /task/category/stream (NDJSON). Creates the user loadtest-category@example.com with one category of
+--tasks tasks (missing tasks are added with COPY), then prints the median of --runs runs of each variant
+and the plan of a keyset page in the middle of the category.
+
+Parameters:
+  --url=http://localhost:8080  --tasks=100000  --runs=5  --page-size=100
+  --jdbc-url=jdbc:postgresql://localhost:5432/postgres  --db-user=postgres  --db-password=postgres
+
+*/
+
+public class CategoryBenchmark {
+
+    private static final String EMAIL = DataGenerator.EMAIL_PREFIX + "category" + DataGenerator.EMAIL_DOMAIN;
+    private static final String CATEGORY = "benchmark";
+    private static final Pattern NEXT = Pattern.compile("\"next\":\"([^\"]*)\"");
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final String url;
+
+    private CategoryBenchmark(String url) {
+        this.url = url;
+    }
+
+    public static void main(String[] arguments) throws Exception {
+        Args args = new Args(arguments);
+        int taskCount = args.getInt("tasks", 100_000);
+        int runs = args.getInt("runs", 5);
+        int pageSize = args.getInt("page-size", 100);
+
+        long categoryId;
+        try (Connection connection = DriverManager.getConnection(
+                args.get("jdbc-url", "jdbc:postgresql://localhost:5432/postgres"),
+                args.get("db-user", "postgres"),
+                args.get("db-password", "postgres"))) {
+            connection.setAutoCommit(false);
+            categoryId = prepare(connection, taskCount);
+            explainMiddlePage(connection, categoryId, taskCount / 2, pageSize);
+        }
+
+        CategoryBenchmark benchmark = new CategoryBenchmark(args.get("url", "http://localhost:8080"));
+        String category = "\"categoryId\":" + categoryId;
+
+        System.out.printf("%n%-26s %12s %12s %12s %10s%n", "variant", "first ms", "total ms", "bytes", "requests");
+        benchmark.measure("/task/category (all)", runs, () -> benchmark.all("{" + category + "}"));
+        benchmark.measure("/task/category/page " + pageSize, runs, () -> benchmark.pages("{\"email\":\"" + EMAIL + "\"," + category + ",\"pageSize\":" + pageSize));
+        benchmark.measure("/task/category/stream", runs, () -> benchmark.stream("{\"email\":\"" + EMAIL + "\"," + category + "}"));
+    }
+
+    // user, category and tasks (only the missing number of tasks is added)
+    private static long prepare(Connection connection, int taskCount) throws SQLException, IOException {
+        long userId = findOrInsert(connection, "select id from todolist.user_data where email = ?",
+                "insert into todolist.user_data (email, username, userpassword) values (?, 'category benchmark', '" + DataGenerator.PASSWORD + "')",
+                EMAIL);
+        execute(connection, "insert into todolist.stat (user_id, completed_total, uncompleted_total) " +
+                "select " + userId + ", 0, 0 where not exists (select 1 from todolist.stat where user_id = " + userId + ")");
+        long categoryId = findOrInsert(connection, "select id from todolist.category where title = ? and user_id = " + userId,
+                "insert into todolist.category (title, completed_count, uncompleted_count, user_id) values (?, 0, 0, " + userId + ")",
+                CATEGORY);
+
+        long existing;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select count(*) from todolist.task where category_id = " + categoryId)) {
+            rs.next();
+            existing = rs.getLong(1);
+        }
+
+        if (existing < taskCount) {
+            // dates within +-2 years with many equal values (the keyset must order them by id), 5% without date
+            SplittableRandom random = new SplittableRandom(11);
+            LocalDateTime start = LocalDateTime.now().withNano(0).minusYears(2);
+            StringBuilder csv = new StringBuilder((int) (taskCount - existing) * 48);
+            for (long i = existing; i < taskCount; i++) {
+                csv.append("category task ").append(i).append(',').append(random.nextInt(10) < 3 ? 1 : 0).append(',');
+                if (random.nextInt(20) > 0) {
+                    csv.append(TIMESTAMP.format(start.plusHours(random.nextInt(4 * 365 * 24))));
+                }
+                csv.append(',').append(categoryId).append(',').append(userId).append('\n');
+            }
+            CopyManager copy = connection.unwrap(PGConnection.class).getCopyAPI();
+            try (Reader reader = new StringReader(csv.toString())) {
+                copy.copyIn("copy todolist.task (title, completed, task_date, category_id, user_id) from stdin with (format csv)", reader);
+            }
+            connection.commit();
+            System.out.println("tasks added: " + (taskCount - existing));
+        }
+
+        execute(connection, "analyze todolist.task");
+        connection.commit();
+        System.out.println("category " + categoryId + " of " + EMAIL + ": " + Math.max(existing, taskCount) + " tasks");
+        return categoryId;
+    }
+
+    private static long findOrInsert(Connection connection, String find, String insert, String value) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(find)) {
+            statement.setString(1, value);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS)) {
+            statement.setString(1, value);
+            statement.executeUpdate();
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                keys.next();
+                long id = keys.getLong("id");
+                connection.commit();
+                return id;
+            }
+        }
+    }
+
+    // plan of the query behind /task/category/page for a cursor in the middle (should be an index scan on task_category_date_id_idx)
+    private static void explainMiddlePage(Connection connection, long categoryId, int offset, int pageSize) throws SQLException {
+        Timestamp date;
+        long id;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select task_date, id from todolist.task where category_id = " + categoryId +
+                     " and task_date is not null order by task_date, id offset " + offset + " limit 1")) {
+            if (!rs.next()) {
+                return;
+            }
+            date = rs.getTimestamp(1);
+            id = rs.getLong(2);
+        }
+
+        System.out.println("\nplan of a keyset page in the middle of the category:");
+        try (PreparedStatement statement = connection.prepareStatement("explain (analyze, buffers) " +
+                "select t.* from todolist.task t join todolist.user_data u on u.id = t.user_id " +
+                "where t.category_id = ? and u.email = ? and (t.task_date, t.id) > (?, ?) order by t.task_date, t.id limit ?")) {
+            statement.setLong(1, categoryId);
+            statement.setString(2, EMAIL);
+            statement.setTimestamp(3, date);
+            statement.setLong(4, id);
+            statement.setInt(5, pageSize + 1);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    System.out.println("  " + rs.getString(1));
+                }
+            }
+        }
+        connection.rollback();
+    }
+
+    private interface Variant {
+        long[] run() throws IOException, InterruptedException; // first response ms * 1000, total, bytes, requests
+    }
+
+    private void measure(String name, int runs, Variant variant) throws IOException, InterruptedException {
+        variant.run(); // warm-up
+        long[][] results = new long[runs][];
+        for (int i = 0; i < runs; i++) {
+            results[i] = variant.run();
+        }
+        System.out.printf("%-26s %12.1f %12.1f %12d %10d%n", name,
+                median(results, 0) / 1000.0, median(results, 1) / 1000.0, median(results, 2), median(results, 3));
+    }
+
+    private static long median(long[][] results, int column) {
+        long[] values = new long[results.length];
+        for (int i = 0; i < results.length; i++) {
+            values[i] = results[i][column];
+        }
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    private long[] all(String body) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        HttpResponse<byte[]> response = http.send(request("/task/category", body), HttpResponse.BodyHandlers.ofByteArray());
+        check(response.statusCode());
+        long micros = (System.nanoTime() - started) / 1000;
+        return new long[]{micros, micros, response.body().length, 1};
+    }
+
+    private long[] pages(String bodyWithoutEnd) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        long first = 0;
+        long bytes = 0;
+        long requests = 0;
+        String after = null;
+        do {
+            String body = bodyWithoutEnd + (after != null ? ",\"after\":\"" + after + "\"" : "") + "}";
+            HttpResponse<String> response = http.send(request("/task/category/page", body), HttpResponse.BodyHandlers.ofString());
+            check(response.statusCode());
+            if (requests++ == 0) {
+                first = (System.nanoTime() - started) / 1000;
+            }
+            bytes += response.body().getBytes(StandardCharsets.UTF_8).length;
+            Matcher next = NEXT.matcher(response.body());
+            after = next.find() ? next.group(1) : null;
+        } while (after != null);
+        return new long[]{first, (System.nanoTime() - started) / 1000, bytes, requests};
+    }
+
+    private long[] stream(String body) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        HttpResponse<InputStream> response = http.send(request("/task/category/stream", body), HttpResponse.BodyHandlers.ofInputStream());
+        check(response.statusCode());
+        long first = 0;
+        long bytes = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (first == 0) {
+                    first = (System.nanoTime() - started) / 1000; // first task received
+                }
+                bytes += line.length() + 1;
+            }
+        }
+        return new long[]{first, (System.nanoTime() - started) / 1000, bytes, 1};
+    }
+
+    private HttpRequest request(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(url + path))
+                .timeout(Duration.ofMinutes(5))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static void check(int status) throws IOException {
+        if (status != 200) {
+            throw new IOException("HTTP " + status);
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+package ru.javabegin.backend.todo.loadtest;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/*
+
+Delete of one big category: DELETE /category/delete/{id} (tasks lose their category) and
+DELETE /category/delete/{id}?moveTo= (tasks are moved to another category). Before every run a category of --tasks
+tasks of the user loadtest-category-delete@example.com is created with COPY; prints the median time of --runs runs
+of each variant and checks that the counters of the target category and the stat of the user match the tasks
+(the row triggers are off during the delete, the service recalculates them once - todo.bulk-delete.bypass-triggers).
+
+Parameters:
+  --url=http://localhost:8080  --tasks=100000  --runs=5
+  --jdbc-url=jdbc:postgresql://localhost:5432/postgres  --db-user=postgres  --db-password=postgres
+
+*/
+
+public class CategoryDeleteBenchmark {
+
+    private static final String EMAIL = DataGenerator.EMAIL_PREFIX + "category-delete" + DataGenerator.EMAIL_DOMAIN;
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final String url;
+    private final Connection connection;
+    private final long userId;
+    private final int taskCount;
+
+    private CategoryDeleteBenchmark(String url, Connection connection, long userId, int taskCount) {
+        this.url = url;
+        this.connection = connection;
+        this.userId = userId;
+        this.taskCount = taskCount;
+    }
+
+    public static void main(String[] arguments) throws Exception {
+        Args args = new Args(arguments);
+        int taskCount = args.getInt("tasks", 100_000);
+        int runs = args.getInt("runs", 5);
+
+        try (Connection connection = DriverManager.getConnection(
+                args.get("jdbc-url", "jdbc:postgresql://localhost:5432/postgres"),
+                args.get("db-user", "postgres"),
+                args.get("db-password", "postgres"))) {
+            connection.setAutoCommit(false);
+            CategoryDeleteBenchmark benchmark = new CategoryDeleteBenchmark(args.get("url", "http://localhost:8080"),
+                    connection, prepareUser(connection), taskCount);
+            long target = benchmark.insertCategory("delete target");
+
+            System.out.printf("%n%-24s %10s %14s%n", "variant", "median ms", "tasks per ms");
+            benchmark.measure("delete (detach)", runs, id -> "/category/delete/" + id);
+            benchmark.measure("delete ?moveTo", runs, id -> "/category/delete/" + id + "?moveTo=" + target);
+
+            benchmark.checkCounters(target);
+        }
+    }
+
+    private interface Path {
+        String of(long categoryId);
+    }
+
+    private void measure(String name, int runs, Path path) throws SQLException, IOException, InterruptedException {
+        long[] millis = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long categoryId = fillCategory();
+            long started = System.nanoTime();
+            HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(url + path.of(categoryId)))
+                    .timeout(Duration.ofMinutes(5))
+                    .DELETE()
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            millis[i] = (System.nanoTime() - started) / 1_000_000;
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode() + ": " + response.body());
+            }
+        }
+        Arrays.sort(millis);
+        long median = millis[runs / 2];
+        System.out.printf("%-24s %10d %14.1f%n", name, median, taskCount / (double) Math.max(median, 1));
+    }
+
+    // the user with its stat row (found again on the next start)
+    private static long prepareUser(Connection connection) throws SQLException {
+        long userId;
+        try (PreparedStatement statement = connection.prepareStatement("select id from todolist.user_data where email = ?")) {
+            statement.setString(1, EMAIL);
+            try (ResultSet rs = statement.executeQuery()) {
+                userId = rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+        if (userId < 0) {
+            try (PreparedStatement statement = connection.prepareStatement("insert into todolist.user_data (email, username, userpassword) " +
+                    "values (?, 'category delete benchmark', '" + DataGenerator.PASSWORD + "')", Statement.RETURN_GENERATED_KEYS)) {
+                statement.setString(1, EMAIL);
+                statement.executeUpdate();
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    keys.next();
+                    userId = keys.getLong("id");
+                }
+            }
+        }
+        execute(connection, "insert into todolist.stat (user_id, completed_total, uncompleted_total) " +
+                "select " + userId + ", 0, 0 where not exists (select 1 from todolist.stat where user_id = " + userId + ")");
+        connection.commit();
+        return userId;
+    }
+
+    private long insertCategory(String title) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("insert into todolist.category " +
+                "(title, completed_count, uncompleted_count, user_id) values (?, 0, 0, ?)", Statement.RETURN_GENERATED_KEYS)) {
+            statement.setString(1, title);
+            statement.setLong(2, userId);
+            statement.executeUpdate();
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                keys.next();
+                long id = keys.getLong("id");
+                connection.commit();
+                return id;
+            }
+        }
+    }
+
+    // a new category with --tasks tasks (30% completed), committed before the delete is measured
+    private long fillCategory() throws SQLException, IOException {
+        long categoryId = insertCategory("delete benchmark");
+        SplittableRandom random = new SplittableRandom(categoryId);
+        StringBuilder csv = new StringBuilder(taskCount * 40);
+        for (int i = 0; i < taskCount; i++) {
+            csv.append("delete task ").append(i).append(',').append(random.nextInt(10) < 3 ? 1 : 0).append(',')
+                    .append(categoryId).append(',').append(userId).append('\n');
+        }
+        CopyManager copy = connection.unwrap(PGConnection.class).getCopyAPI();
+        try (Reader reader = new StringReader(csv.toString())) {
+            copy.copyIn("copy todolist.task (title, completed, category_id, user_id) from stdin with (format csv)", reader);
+        }
+        connection.commit();
+        execute(connection, "analyze todolist.task");
+        connection.commit();
+        return categoryId;
+    }
+
+    // what the row triggers would have kept: counters of the target and the totals of the user
+    private void checkCounters(long target) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select " +
+                     "(select completed_count = (select count(*) from todolist.task where category_id = c.id and completed = 1) " +
+                     "   and uncompleted_count = (select count(*) from todolist.task where category_id = c.id and completed = 0) " +
+                     "   from todolist.category c where c.id = " + target + "), " +
+                     "(select completed_total = (select count(*) from todolist.task where user_id = s.user_id and completed = 1) " +
+                     "       + (select count(*) from todolist.task_archive where user_id = s.user_id and completed = 1) " +
+                     "   and uncompleted_total = (select count(*) from todolist.task where user_id = s.user_id and completed = 0) " +
+                     "   from todolist.stat s where s.user_id = " + userId + ")")) {
+            rs.next();
+            System.out.println("\ncounters of the target category match its tasks: " + rs.getBoolean(1));
+            System.out.println("stat of the user matches its tasks: " + rs.getBoolean(2));
+        }
+        connection.rollback();
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+package ru.javabegin.backend.todo.loadtest;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/*
+
+Fills the database with test data for the load test:
+users loadtest-<n>@example.com (password "loadtest"), their categories, priorities and tasks.
+Tasks are written with COPY (fast even for millions of rows).
+
+Parameters:
+  --jdbc-url=jdbc:postgresql://localhost:5432/postgres  --db-user=postgres  --db-password=postgres
+  --users=1000  --tasks-per-user=1000  --categories-per-user=10  --priorities-per-user=4  --seed=42
+  --clean              deletes the data of earlier runs (tasks, categories, priorities of loadtest users) first
+  --disable-triggers   turns off the task triggers during COPY and recalculates counters after it
+                       (much faster; the DB user must own the table)
+
+*/
+
+public class DataGenerator {
+
+    static final String EMAIL_PREFIX = "loadtest-";
+    static final String EMAIL_DOMAIN = "@example.com";
+    static final String PASSWORD = "loadtest";
+
+    private static final String[] WORDS = {
+            "buy", "call", "write", "read", "fix", "plan", "check", "send", "book", "pay",
+            "milk", "report", "doctor", "meeting", "car", "tickets", "bills", "email", "project", "garden"
+    };
+    private static final String[] COLORS = {"#ff0000", "#ffaa00", "#00aa00", "#0000ff", "#aaaaaa"};
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public static void main(String[] arguments) throws Exception {
+        Args args = new Args(arguments);
+        int users = args.getInt("users", 1000);
+        int tasksPerUser = args.getInt("tasks-per-user", 1000);
+        int categoriesPerUser = args.getInt("categories-per-user", 10);
+        int prioritiesPerUser = args.getInt("priorities-per-user", 4);
+        SplittableRandom random = new SplittableRandom(args.getInt("seed", 42));
+
+        try (Connection connection = DriverManager.getConnection(
+                args.get("jdbc-url", "jdbc:postgresql://localhost:5432/postgres"),
+                args.get("db-user", "postgres"),
+                args.get("db-password", "postgres"))) {
+            connection.setAutoCommit(false);
+
+            if (args.getFlag("clean")) {
+                clean(connection);
+            }
+
+            long started = System.nanoTime();
+            List<Long> userIds = createUsers(connection, users);
+            System.out.println("users: " + userIds.size());
+
+            boolean disableTriggers = args.getFlag("disable-triggers");
+            if (disableTriggers) {
+                execute(connection, "alter table todolist.task disable trigger user");
+            }
+
+            long tasks = 0;
+            for (Long userId : userIds) {
+                long[] categories = createReferences(connection,
+                        "insert into todolist.category (title, completed_count, uncompleted_count, user_id) values (?, 0, 0, ?)",
+                        categoriesPerUser, userId, "category", null, random);
+                long[] priorities = createReferences(connection,
+                        "insert into todolist.priority (title, color, user_id) values (?, ?, ?)",
+                        prioritiesPerUser, userId, "priority", COLORS, random);
+
+                tasks += copyTasks(connection, userId, tasksPerUser, categories, priorities, random);
+                connection.commit();
+
+                if (tasks % 1_000_000 < tasksPerUser) {
+                    System.out.println("tasks: " + tasks);
+                }
+            }
+
+            if (disableTriggers) {
+                execute(connection, "alter table todolist.task enable trigger user");
+                recalculateCounters(connection);
+            }
+            connection.commit();
+
+            System.out.printf("done: %d users, %d tasks in %d s%n", userIds.size(), tasks,
+                    (System.nanoTime() - started) / 1_000_000_000);
+        }
+    }
+
+    static String email(int n) {
+        return EMAIL_PREFIX + n + EMAIL_DOMAIN;
+    }
+
+    private static void clean(Connection connection) throws SQLException {
+        String users = "(select id from todolist.user_data where email like '" + EMAIL_PREFIX + "%')";
+        execute(connection, "delete from todolist.task where user_id in " + users);
+        execute(connection, "delete from todolist.category where user_id in " + users);
+        execute(connection, "delete from todolist.priority where user_id in " + users);
+        connection.commit();
+        System.out.println("data of earlier runs deleted");
+    }
+
+    // existing loadtest users are reused, missing ones are created (with a stat row for the counters)
+    private static List<Long> createUsers(Connection connection, int count) throws SQLException {
+        List<Long> ids = new ArrayList<>(count);
+        try (PreparedStatement find = connection.prepareStatement("select id from todolist.user_data where email = ?");
+             PreparedStatement insert = connection.prepareStatement(
+                     "insert into todolist.user_data (email, username, userpassword) values (?, ?, ?)",
+                     Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement stat = connection.prepareStatement(
+                     "insert into todolist.stat (user_id, completed_total, uncompleted_total) " +
+                             "select ?, 0, 0 where not exists (select 1 from todolist.stat where user_id = ?)")) {
+
+            for (int n = 1; n <= count; n++) {
+                find.setString(1, email(n));
+                Long id = null;
+                try (ResultSet rs = find.executeQuery()) {
+                    if (rs.next()) {
+                        id = rs.getLong(1);
+                    }
+                }
+
+                if (id == null) {
+                    insert.setString(1, email(n));
+                    insert.setString(2, EMAIL_PREFIX + n);
+                    insert.setString(3, PASSWORD);
+                    insert.executeUpdate();
+                    try (ResultSet keys = insert.getGeneratedKeys()) {
+                        keys.next();
+                        id = keys.getLong("id");
+                    }
+                }
+
+                stat.setLong(1, id);
+                stat.setLong(2, id);
+                stat.executeUpdate();
+                ids.add(id);
+            }
+        }
+        connection.commit();
+        return ids;
+    }
+
+    private static long[] createReferences(Connection connection, String sql, int count, long userId,
+                                           String title, String[] colors, SplittableRandom random) throws SQLException {
+        long[] ids = new long[count];
+        try (PreparedStatement insert = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < count; i++) {
+                int p = 1;
+                insert.setString(p++, title + " " + (i + 1));
+                if (colors != null) {
+                    insert.setString(p++, colors[random.nextInt(colors.length)]);
+                }
+                insert.setLong(p, userId);
+                insert.executeUpdate();
+                try (ResultSet keys = insert.getGeneratedKeys()) {
+                    keys.next();
+                    ids[i] = keys.getLong("id");
+                }
+            }
+        }
+        return ids;
+    }
+
+    // tasks as CSV for COPY: ~30% completed, ~10% without date, dates within +-2 years, some without category/priority
+    private static long copyTasks(Connection connection, long userId, int count, long[] categories, long[] priorities,
+                                  SplittableRandom random) throws SQLException, IOException {
+        StringBuilder csv = new StringBuilder(count * 64);
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+
+        for (int i = 0; i < count; i++) {
+            csv.append(WORDS[random.nextInt(WORDS.length)]).append(' ')
+                    .append(WORDS[random.nextInt(WORDS.length)]).append(' ').append(i).append(',');
+            csv.append(random.nextInt(10) < 3 ? 1 : 0).append(',');
+            if (random.nextInt(10) > 0) {
+                csv.append(TIMESTAMP.format(now.plusMinutes(random.nextInt(-1_051_200, 1_051_200))));
+            }
+            csv.append(',');
+            if (priorities.length > 0 && random.nextInt(10) > 1) {
+                csv.append(priorities[random.nextInt(priorities.length)]);
+            }
+            csv.append(',');
+            if (categories.length > 0 && random.nextInt(10) > 1) {
+                csv.append(categories[random.nextInt(categories.length)]);
+            }
+            csv.append(',').append(userId).append('\n');
+        }
+
+        CopyManager copy = connection.unwrap(PGConnection.class).getCopyAPI();
+        try (Reader reader = new StringReader(csv.toString())) {
+            return copy.copyIn("copy todolist.task (title, completed, task_date, priority_id, category_id, user_id) " +
+                    "from stdin with (format csv)", reader);
+        }
+    }
+
+    // what the triggers would have done (used with --disable-triggers)
+    private static void recalculateCounters(Connection connection) throws SQLException {
+        String users = "(select id from todolist.user_data where email like '" + EMAIL_PREFIX + "%')";
+        execute(connection, "update todolist.category c set " +
+                "completed_count = (select count(*) from todolist.task t where t.category_id = c.id and t.completed = 1), " +
+                "uncompleted_count = (select count(*) from todolist.task t where t.category_id = c.id and coalesce(t.completed, 0) = 0) " +
+                "where c.user_id in " + users);
+        execute(connection, "update todolist.stat s set " +
+                "completed_total = (select count(*) from todolist.task t where t.user_id = s.user_id and t.completed = 1), " +
+                "uncompleted_total = (select count(*) from todolist.task t where t.user_id = s.user_id and coalesce(t.completed, 0) = 0) " +
+                "where s.user_id in " + users);
+        System.out.println("counters recalculated");
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package ru.javabegin.backend.todo.loadtest;
+
+import java.util.Arrays;
+
+// latencies of one operation type recorded by one client thread (merged at the end, so no synchronization)
+final class LatencyRecorder {
+
+    private long[] micros = new long[1024];
+    private int count;
+    private long errors;
+
+    void record(long latencyMicros, boolean ok) {
+        if (!ok) {
+            errors++;
+        }
+        if (count == micros.length) {
+            micros = Arrays.copyOf(micros, count * 2);
+        }
+        micros[count++] = latencyMicros;
+    }
+
+    void addAll(LatencyRecorder other) {
+        if (count + other.count > micros.length) {
+            micros = Arrays.copyOf(micros, Math.max(micros.length * 2, count + other.count));
+        }
+        System.arraycopy(other.micros, 0, micros, count, other.count);
+        count += other.count;
+        errors += other.errors;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long errors() {
+        return errors;
+    }
+
+    // percentiles in milliseconds: p50, p90, p99, p99.9, max
+    double[] percentiles() {
+        if (count == 0) {
+            return new double[5];
+        }
+        long[] sorted = Arrays.copyOf(micros, count);
+        Arrays.sort(sorted);
+        return new double[]{
+                at(sorted, 0.50), at(sorted, 0.90), at(sorted, 0.99), at(sorted, 0.999), sorted[count - 1] / 1000.0
+        };
+    }
+
+    private static double at(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000.0;
+    }
+
+}
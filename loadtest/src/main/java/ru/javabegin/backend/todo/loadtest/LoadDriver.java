@@ -0,0 +1,274 @@
+package ru.javabegin.backend.todo.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+
+HTTP load driver with the traffic mix of the frontend (closed model: every client sends the next request
+after the answer to the previous one). Users are the ones created by DataGenerator.
+
+Parameters:
+  --url=http://localhost:8080  --clients=32  --duration=60 (s)  --warmup=10 (s)  --users=1000  --seed=7
+  --mix=login:3,search:45,add:8,update:8,delete:4,categories:17,priorities:5,stat:10   (weights of the operations)
+
+Result: requests per second and latency percentiles (ms) for every operation and in total
+(warm-up requests are not counted). Tasks are updated/deleted only if they were added by the same client,
+and the tasks left at the end are deleted, so the generated data set stays the same from run to run.
+
+*/
+
+public class LoadDriver {
+
+    enum Operation { LOGIN, SEARCH, ADD, UPDATE, DELETE, CATEGORIES, PRIORITIES, STAT }
+
+    private static final Pattern FIRST_ID = Pattern.compile("^\\{\"id\":(\\d+)");
+    private static final String[] SEARCH_WORDS = {"", "", "buy", "call", "fix", "meeting", "project", "pay", "1"};
+    private static final String[] SORT_COLUMNS = {"taskDate", "title", "priority", "category", "completed"}; // the allowed ones
+    private static final int[] PAGE_SIZES = {10, 20, 50};
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final String url;
+    private final int users;
+
+    private LoadDriver(String url, int users) {
+        this.url = url;
+        this.users = users;
+    }
+
+    public static void main(String[] arguments) throws Exception {
+        Args args = new Args(arguments);
+        int clients = args.getInt("clients", 32);
+        int durationSeconds = args.getInt("duration", 60);
+        int warmupSeconds = args.getInt("warmup", 10);
+        int seed = args.getInt("seed", 7);
+        Operation[] mix = parseMix(args.get("mix", "login:3,search:45,add:8,update:8,delete:4,categories:17,priorities:5,stat:10"));
+
+        LoadDriver driver = new LoadDriver(args.get("url", "http://localhost:8080"), args.getInt("users", 1000));
+
+        System.out.printf("%d clients, %d s warm-up, %d s measured, %s%n", clients, warmupSeconds, durationSeconds, args.get("url", "http://localhost:8080"));
+
+        AtomicBoolean measuring = new AtomicBoolean(false);
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch finished = new CountDownLatch(clients);
+        List<Client> clientList = new ArrayList<>();
+
+        for (int i = 0; i < clients; i++) {
+            Client client = driver.new Client(new SplittableRandom(seed + i), mix, measuring, running, finished);
+            clientList.add(client);
+            Thread thread = new Thread(client, "client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Thread.sleep(warmupSeconds * 1000L);
+        measuring.set(true);
+        long started = System.nanoTime();
+        Thread.sleep(durationSeconds * 1000L);
+        measuring.set(false);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        running.set(false);
+        finished.await();
+
+        report(clientList, seconds);
+
+        for (Client client : clientList) {
+            client.cleanup();
+        }
+    }
+
+    private static Operation[] parseMix(String mix) {
+        List<Operation> weighted = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] nameWeight = part.trim().split(":");
+            Operation operation = Operation.valueOf(nameWeight[0].trim().toUpperCase(Locale.ROOT));
+            int weight = Integer.parseInt(nameWeight[1].trim());
+            for (int i = 0; i < weight; i++) {
+                weighted.add(operation);
+            }
+        }
+        return weighted.toArray(new Operation[0]);
+    }
+
+    private static void report(List<Client> clients, double seconds) {
+        LatencyRecorder total = new LatencyRecorder();
+        System.out.printf("%n%-11s %9s %9s %7s %9s %9s %9s %9s %9s%n",
+                "operation", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+
+        for (Operation operation : Operation.values()) {
+            LatencyRecorder merged = new LatencyRecorder();
+            for (Client client : clients) {
+                merged.addAll(client.recorders[operation.ordinal()]);
+            }
+            total.addAll(merged);
+            if (merged.count() > 0) {
+                line(operation.name().toLowerCase(Locale.ROOT), merged, seconds);
+            }
+        }
+        line("total", total, seconds);
+    }
+
+    private static void line(String name, LatencyRecorder recorder, double seconds) {
+        double[] p = recorder.percentiles();
+        System.out.printf("%-11s %9d %9.1f %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name, recorder.count(), recorder.count() / seconds, recorder.errors(), p[0], p[1], p[2], p[3], p[4]);
+    }
+
+    // one simulated user session after another
+    private final class Client implements Runnable {
+
+        final LatencyRecorder[] recorders = new LatencyRecorder[Operation.values().length];
+
+        private final SplittableRandom random;
+        private final Operation[] mix;
+        private final AtomicBoolean measuring;
+        private final AtomicBoolean running;
+        private final CountDownLatch finished;
+
+        private final List<Long> addedTasks = new ArrayList<>(); // ids of tasks added by this client
+        private final List<Long> addedTaskUsers = new ArrayList<>();
+
+        Client(SplittableRandom random, Operation[] mix, AtomicBoolean measuring, AtomicBoolean running, CountDownLatch finished) {
+            this.random = random;
+            this.mix = mix;
+            this.measuring = measuring;
+            this.running = running;
+            this.finished = finished;
+            for (int i = 0; i < recorders.length; i++) {
+                recorders[i] = new LatencyRecorder();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running.get()) {
+                    int n = 1 + random.nextInt(users);
+                    Operation operation = mix[random.nextInt(mix.length)];
+                    if ((operation == Operation.UPDATE || operation == Operation.DELETE) && addedTasks.isEmpty()) {
+                        operation = Operation.ADD;
+                    }
+                    execute(operation, n);
+                }
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        private void execute(Operation operation, int n) {
+            String email = DataGenerator.email(n);
+            long started = System.nanoTime();
+            boolean ok;
+            try {
+                ok = switch (operation) {
+                    case LOGIN -> send("POST", "/auth/login",
+                            "{\"email\":\"" + email + "\",\"password\":\"" + DataGenerator.PASSWORD + "\"}") != null;
+                    case SEARCH -> send("POST", "/task/search", searchValues(email)) != null;
+                    case ADD -> add(email);
+                    case UPDATE -> update();
+                    case DELETE -> delete();
+                    case CATEGORIES -> send("POST", "/category/all", email) != null;
+                    case PRIORITIES -> send("POST", "/priority/all", email) != null;
+                    case STAT -> send("POST", "/stat", email) != null;
+                };
+            } catch (IOException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running.set(false);
+                return;
+            }
+
+            if (measuring.get()) {
+                recorders[operation.ordinal()].record((System.nanoTime() - started) / 1000, ok);
+            }
+        }
+
+        // varied search parameters as sent by the frontend
+        private String searchValues(String email) {
+            StringBuilder json = new StringBuilder("{\"email\":\"").append(email).append('"');
+            String word = SEARCH_WORDS[random.nextInt(SEARCH_WORDS.length)];
+            if (!word.isEmpty()) {
+                json.append(",\"title\":\"").append(word).append('"');
+            }
+            if (random.nextInt(3) == 0) {
+                json.append(",\"completed\":").append(random.nextInt(2));
+            }
+            if (random.nextInt(4) == 0) {
+                LocalDate from = LocalDate.now().minusDays(random.nextInt(365));
+                json.append(",\"dateFrom\":\"").append(from).append("\",\"dateTo\":\"").append(from.plusDays(30)).append('"');
+            }
+            json.append(",\"pageNumber\":").append(random.nextInt(4))
+                    .append(",\"pageSize\":").append(PAGE_SIZES[random.nextInt(PAGE_SIZES.length)])
+                    .append(",\"sortColumn\":\"").append(SORT_COLUMNS[random.nextInt(SORT_COLUMNS.length)]).append('"')
+                    .append(",\"sortDirection\":\"").append(random.nextBoolean() ? "asc" : "desc").append("\"}");
+            return json.toString();
+        }
+
+        private boolean add(String email) throws IOException, InterruptedException {
+            String userId = send("POST", "/auth/login",
+                    "{\"email\":\"" + email + "\",\"password\":\"" + DataGenerator.PASSWORD + "\"}");
+            if (userId == null) {
+                return false;
+            }
+            String body = send("POST", "/task/add", "{\"title\":\"load test " + random.nextInt(1_000_000) + "\"," +
+                    "\"completed\":false,\"taskDate\":\"" + LocalDate.now().plusDays(random.nextInt(30)) + "\"," +
+                    "\"user\":{\"id\":" + userId.trim() + "}}");
+            if (body == null) {
+                return false;
+            }
+            // the created task is returned with its id as the first field
+            Matcher id = FIRST_ID.matcher(body);
+            if (id.find()) {
+                addedTasks.add(Long.valueOf(id.group(1)));
+                addedTaskUsers.add(Long.valueOf(userId.trim()));
+            }
+            return true;
+        }
+
+        private boolean update() throws IOException, InterruptedException {
+            int index = random.nextInt(addedTasks.size());
+            return send("PUT", "/task/update", "{\"id\":" + addedTasks.get(index) + ",\"title\":\"updated " + random.nextInt(1_000_000) + "\"," +
+                    "\"completed\":" + random.nextBoolean() + ",\"user\":{\"id\":" + addedTaskUsers.get(index) + "}}") != null;
+        }
+
+        private boolean delete() throws IOException, InterruptedException {
+            int index = addedTasks.size() - 1;
+            Long id = addedTasks.remove(index);
+            addedTaskUsers.remove(index);
+            return send("DELETE", "/task/delete/" + id, null) != null;
+        }
+
+        // tasks added during the run are deleted (not measured)
+        void cleanup() throws IOException, InterruptedException {
+            while (!addedTasks.isEmpty()) {
+                delete();
+            }
+        }
+
+        // returns the body of a 2xx answer or null
+        private String send(String method, String path, String body) throws IOException, InterruptedException {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url + path))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json");
+            request.method(method, body != null ? HttpRequest.BodyPublishers.ofString(body) : HttpRequest.BodyPublishers.noBody());
+
+            HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() / 100 == 2 ? response.body() : null;
+        }
+    }
+
+}
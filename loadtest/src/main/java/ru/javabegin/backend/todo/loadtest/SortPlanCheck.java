@@ -0,0 +1,89 @@
+package ru.javabegin.backend.todo.loadtest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+
+Checks with EXPLAIN that every sort column of the task search (TaskSort in the application) is read in the order
+of its index: the plan of the first page of a user's tasks must not have a Sort node. Exit code 1 if one has.
+The query has the shape of the search without filters (the most expensive case): the user id is found first,
+then the tasks of the user are read by (user_id, column, id).
+
+Parameters:
+  --jdbc-url=jdbc:postgresql://localhost:5432/postgres  --db-user=postgres  --db-password=postgres
+  --email=loadtest-1@example.com  --page-size=20
+  --analyze    updates the statistics of todolist.task first (e.g. right after the seed)
+
+*/
+
+public class SortPlanCheck {
+
+    // sortColumn -> column of the index, as in TaskSort
+    private static final String[][] SORTS = {
+            {"taskDate", "task_date"}, {"title", "title collate ucs_basic"}, {"priority", "priority_id"},
+            {"category", "category_id"}, {"completed", "completed"}
+    };
+
+    public static void main(String[] arguments) throws Exception {
+        Args args = new Args(arguments);
+        String email = args.get("email", DataGenerator.email(1));
+        int pageSize = args.getInt("page-size", 20);
+
+        List<String> failed = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(
+                args.get("jdbc-url", "jdbc:postgresql://localhost:5432/postgres"),
+                args.get("db-user", "postgres"),
+                args.get("db-password", "postgres"))) {
+
+            if (args.getFlag("analyze")) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("analyze todolist.task");
+                }
+            }
+
+            for (String[] sort : SORTS) {
+                for (String direction : new String[]{"asc", "desc"}) {
+                    String nulls = direction.equals("asc") ? "nulls last" : "nulls first";
+                    String sql = "explain (costs off) select t.* from todolist.task t " +
+                            "where t.user_id = (select u.id from todolist.user_data u where u.email = ?) " +
+                            "order by t." + sort[1] + " " + direction + " " + nulls + ", t.id " + direction + " " +
+                            "offset 0 rows fetch first " + pageSize + " rows only";
+                    String plan = explain(connection, sql, email);
+
+                    boolean sorted = plan.lines().anyMatch(line -> line.trim().matches("(->\\s*)?(Incremental )?Sort\\b.*"));
+                    System.out.printf("%n%s %s: %s%n%s", sort[0], direction, sorted ? "SORT (no index order)" : "ok", plan);
+                    if (sorted) {
+                        failed.add(sort[0] + " " + direction);
+                    }
+                }
+            }
+        }
+
+        if (!failed.isEmpty()) {
+            System.out.println("\nsorted without an index: " + failed);
+            System.exit(1);
+        }
+        System.out.println("\nall sort columns are read in index order");
+    }
+
+    private static String explain(Connection connection, String sql, String email) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, email);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+            }
+        }
+        return plan.toString();
+    }
+
+}
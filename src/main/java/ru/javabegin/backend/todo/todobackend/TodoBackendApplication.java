@@ -2,13 +2,21 @@ package ru.javabegin.backend.todo.todobackend;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import ru.javabegin.backend.todo.todobackend.aot.TodoRuntimeHints;
 
 @SpringBootApplication
+@EnableScheduling // background jobs (TaskArchiveJob)
+@ImportRuntimeHints(TodoRuntimeHints.class) // native image
 public class TodoBackendApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(TodoBackendApplication.class, args);
+        SpringApplication application = new SpringApplication(TodoBackendApplication.class);
+        // timings of startup steps (beans, context phases): StartupReport and /actuator/startup
+        application.setApplicationStartup(new BufferingApplicationStartup(4096));
+        application.run(args);
     }
 
 }
-    
\ No newline at end of file
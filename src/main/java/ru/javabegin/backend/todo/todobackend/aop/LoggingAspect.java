@@ -5,18 +5,20 @@ import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StopWatch;
 
 @Aspect
 @Component
 @Log
+@ConditionalOnProperty(name = "todo.logging.aspect.enabled", havingValue = "true") // no proxies for controllers if off
 
 
 public class LoggingAspect {
 
 
-    @Around("execution(* ru.javabegin.backend.todo.controller..*(..)))")
+    @Around("execution(* ru.javabegin.backend.todo.todobackend.controller..*(..))")
     public Object profileControllerMethods(ProceedingJoinPoint proceedingJoinPoint) throws Throwable
     {
 
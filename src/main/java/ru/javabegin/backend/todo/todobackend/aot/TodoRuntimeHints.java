@@ -0,0 +1,80 @@
+package ru.javabegin.backend.todo.todobackend.aot;
+
+import org.hibernate.type.NumericBooleanConverter;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import ru.javabegin.backend.todo.todobackend.aop.LoggingAspect;
+import ru.javabegin.backend.todo.todobackend.dto.BootstrapResponse;
+import ru.javabegin.backend.todo.todobackend.dto.ImportResult;
+import ru.javabegin.backend.todo.todobackend.dto.TaskKeysetPage;
+import ru.javabegin.backend.todo.todobackend.entity.*;
+import ru.javabegin.backend.todo.todobackend.jdbc.JdbcProxyFactory;
+import ru.javabegin.backend.todo.todobackend.jdbc.QueryStatsSnapshot;
+import ru.javabegin.backend.todo.todobackend.outbox.OutboxEvent;
+import ru.javabegin.backend.todo.todobackend.reminder.Reminder;
+import ru.javabegin.backend.todo.todobackend.search.*;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/*
+
+Hints for the GraalVM native image (gradle nativeCompile): what is used through reflection or JDK proxies
+and can't be found by the AOT processing itself.
+
+*/
+
+public class TodoRuntimeHints implements RuntimeHintsRegistrar {
+
+    // entities: Hibernate creates them and sets fields, Jackson reads them through Lombok getters/setters
+    private static final Class<?>[] ENTITIES = {
+            Task.class, ArchivedTask.class, Category.class, Priority.class, Stat.class, User.class, Activity.class, Role.class
+    };
+
+    // request/response objects read and written by Jackson
+    private static final Class<?>[] JSON_TYPES = {
+            TaskSearchValues.class, TaskPatchValues.class, CategorySearchValues.class, PrioritySearchValues.class,
+            LoginRequest.class, CategoryTaskValues.class, QueryStatsSnapshot.class, BootstrapResponse.class, TaskKeysetPage.class,
+            ImportResult.class, Reminder.class, AutocompleteValues.class, OutboxEvent.class
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (Class<?> type : ENTITIES) {
+            hints.reflection().registerType(type,
+                    MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+        for (Class<?> type : JSON_TYPES) {
+            hints.reflection().registerType(type,
+                    MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+
+        // @Convert(converter = NumericBooleanConverter.class) is instantiated by Hibernate
+        hints.reflection().registerType(NumericBooleanConverter.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+
+        // the aspect's advice method is called reflectively (only if todo.logging.aspect.enabled was true at build time)
+        hints.reflection().registerType(LoggingAspect.class, MemberCategory.INVOKE_DECLARED_METHODS);
+
+        // JdbcProxyFactory: the same interface lists (and order) as used at runtime
+        hints.proxies().registerJdkProxy(JdbcProxyFactory.DATA_SOURCE_INTERFACES.toArray(new Class<?>[0]));
+        hints.proxies().registerJdkProxy(Connection.class);
+        hints.proxies().registerJdkProxy(Statement.class);
+        hints.proxies().registerJdkProxy(PreparedStatement.class);
+        hints.proxies().registerJdkProxy(CallableStatement.class);
+        hints.proxies().registerJdkProxy(ResultSet.class);
+
+        // Flyway migrations (with their .sql.conf files) and profile files
+        hints.resources().registerPattern("db/migration/*");
+        hints.resources().registerPattern("db/sharding/*");
+        hints.resources().registerPattern("application-*.properties");
+    }
+
+}
@@ -0,0 +1,179 @@
+package ru.javabegin.backend.todo.todobackend.cache;
+
+import lombok.extern.java.Log;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.javabegin.backend.todo.todobackend.shard.ShardRouter;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/*
+
+Drops caches of this instance when data is changed by another instance (or by anybody else working with the DB directly).
+Triggers from V2__cache_invalidation_notify.sql send "<table>:<user_id>:<application_name>" to the channel on commit.
+The listener uses its own connection (not from the pool: LISTEN needs the same session all the time).
+If the connection is lost, notifications could be missed - so after reconnect all caches are dropped.
+With sharding there is one listener connection (and thread) per shard database.
+
+*/
+
+@Component
+@Log
+public class CacheInvalidationListener implements SmartLifecycle {
+
+    public static final String CHANNEL = "todo_cache_invalidation";
+
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final UserCacheEvictor cacheEvictor;
+    private final DataSourceProperties dataSourceProperties;
+    private final NodeIdentity nodeIdentity;
+    private final ShardRouter router;
+    private final boolean enabled;
+    private final int pollTimeoutMs;
+
+    private volatile boolean running;
+    private final List<Thread> threads = new ArrayList<>();
+
+    public CacheInvalidationListener(UserCacheEvictor cacheEvictor,
+                                     DataSourceProperties dataSourceProperties,
+                                     NodeIdentity nodeIdentity,
+                                     ShardRouter router,
+                                     @Value("${todo.cache.invalidation.enabled:true}") boolean enabled,
+                                     @Value("${todo.cache.invalidation.poll-timeout-ms:500}") int pollTimeoutMs) {
+        this.cacheEvictor = cacheEvictor;
+        this.dataSourceProperties = dataSourceProperties;
+        this.nodeIdentity = nodeIdentity;
+        this.router = router;
+        this.enabled = enabled;
+        this.pollTimeoutMs = pollTimeoutMs;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        List<String> urls = router.jdbcUrls(dataSourceProperties.determineUrl());
+        for (int i = 0; i < urls.size(); i++) {
+            String url = urls.get(i);
+            Thread thread = new Thread(() -> listen(url), "cache-invalidation-listener" + (i > 0 ? "-" + i : ""));
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        threads.forEach(Thread::interrupt);
+        threads.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen(String url) {
+        long backoffMs = 500;
+        boolean connectedBefore = false;
+
+        while (running) {
+            try (Connection connection = connect(url)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+
+                if (connectedBefore) {
+                    cacheEvictor.evictAll(); // changes made while we were disconnected are unknown
+                    log.info("Cache invalidation listener reconnected, all caches are dropped");
+                }
+                connectedBefore = true;
+                backoffMs = 500;
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    // waits for notifications up to the timeout (0 would wait forever and block stop())
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMs);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            try {
+                                handle(notification.getParameter());
+                            } catch (RuntimeException e) {
+                                // a failure of a cache must not stop the listener
+                                log.warning("Cache invalidation failed: " + e.getMessage());
+                            }
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warning("Cache invalidation listener lost the connection: " + e.getMessage()
+                        + ", retry in " + backoffMs + " ms");
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+            }
+        }
+    }
+
+    // payload: "<table>:<user_id>:<application_name>"
+    void handle(String payload) {
+        String[] parts = payload.split(":", 3);
+        if (parts.length == 3 && parts[2].equals(nodeIdentity.getApplicationName())) {
+            return; // our own change - caches were already updated by the services
+        }
+
+        Long userId = null;
+        if (parts.length >= 2 && !parts[1].isEmpty()) {
+            try {
+                userId = Long.valueOf(parts[1]);
+            } catch (NumberFormatException ignored) {
+                // unknown payload - drop everything below
+            }
+        }
+
+        if (userId == null) {
+            cacheEvictor.evictAll();
+        } else {
+            cacheEvictor.evictByUserId(userId);
+        }
+    }
+
+    private Connection connect(String url) throws SQLException {
+        Properties properties = new Properties();
+        String username = dataSourceProperties.determineUsername();
+        String password = dataSourceProperties.determinePassword();
+        if (username != null) {
+            properties.setProperty("user", username);
+        }
+        if (password != null) {
+            properties.setProperty("password", password);
+        }
+        properties.setProperty("ApplicationName", nodeIdentity.getApplicationName() + "-listener");
+        properties.setProperty("tcpKeepAlive", "true");
+
+        Connection connection = DriverManager.getConnection(url, properties);
+        connection.setAutoCommit(true); // LISTEN takes effect only after commit
+        return connection;
+    }
+
+}
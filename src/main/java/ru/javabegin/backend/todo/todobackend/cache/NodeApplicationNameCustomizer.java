@@ -0,0 +1,33 @@
+package ru.javabegin.backend.todo.todobackend.cache;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+
+// sets the unique application_name of this instance on the Hikari pool
+// (runs before other post processors wrap the DataSource; the pool is not started yet at this point)
+@Component
+public class NodeApplicationNameCustomizer implements BeanPostProcessor, Ordered {
+
+    private final ObjectProvider<NodeIdentity> nodeIdentity;
+
+    public NodeApplicationNameCustomizer(ObjectProvider<NodeIdentity> nodeIdentity) {
+        this.nodeIdentity = nodeIdentity;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource dataSource) {
+            dataSource.addDataSourceProperty("ApplicationName", nodeIdentity.getObject().getApplicationName());
+        }
+        return bean;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+}
@@ -0,0 +1,26 @@
+package ru.javabegin.backend.todo.todobackend.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+// unique name of this application instance, sent to PostgreSQL as application_name of all pool connections
+// (lets the instance recognize notifications about its own changes)
+@Component
+public class NodeIdentity {
+
+    private final String applicationName;
+
+    public NodeIdentity(@Value("${spring.application.name:todo-backend}") String name) {
+        // application_name is limited to 63 bytes in PostgreSQL
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        String prefix = name.length() > 50 ? name.substring(0, 50) : name;
+        this.applicationName = prefix + "-" + suffix;
+    }
+
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+}
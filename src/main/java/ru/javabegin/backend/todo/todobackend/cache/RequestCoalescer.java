@@ -0,0 +1,102 @@
+package ru.javabegin.backend.todo.todobackend.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/*
+
+Single flight for identical reads: while a read of (region, email, parameters) is executed, the same reads of other
+requests (many tabs of one user) wait for it and get the same result instead of running the same query again.
+Nothing is kept after the read has finished (this is not a cache).
+
+A change of the user's data drops the user's reads in flight (evict), so a read that starts after a change
+never gets the result of a query that started before it.
+The result object is shared by all callers - it must only be read (serialized).
+
+Metrics: todo.coalescing.calls{region, result=executed|merged}
+
+*/
+
+@Component
+public class RequestCoalescer implements UserScopedCache {
+
+    private final boolean enabled;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Counter[]> counters = new ConcurrentHashMap<>(); // region -> executed, merged
+
+    public RequestCoalescer(MeterRegistry meterRegistry,
+                            @Value("${todo.coalescing.enabled:true}") boolean enabled) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+    }
+
+    // params - normalized parameters of the read (equals/hashCode), null if the email is enough
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String region, String email, Object params, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        Key key = new Key(region, email, params);
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, own);
+
+        if (running != null) {
+            counters(region)[1].increment();
+            try {
+                return (T) running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause; // the same exception as the executing request got
+                }
+                throw e;
+            }
+        }
+
+        counters(region)[0].increment();
+        try {
+            T result = loader.get();
+            own.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    @Override
+    public void evict(String email) {
+        // waiting callers still get the result, new callers execute the read again
+        inFlight.keySet().removeIf(key -> key.email().equals(email));
+    }
+
+    @Override
+    public void evictAll() {
+        inFlight.clear();
+    }
+
+    private Counter[] counters(String region) {
+        return counters.computeIfAbsent(region, r -> new Counter[]{
+                Counter.builder("todo.coalescing.calls").tag("region", r).tag("result", "executed")
+                        .description("reads executed against the DB").register(meterRegistry),
+                Counter.builder("todo.coalescing.calls").tag("region", r).tag("result", "merged")
+                        .description("reads answered by an identical read in flight").register(meterRegistry)
+        });
+    }
+
+    private record Key(String region, String email, Object params) {
+    }
+
+}
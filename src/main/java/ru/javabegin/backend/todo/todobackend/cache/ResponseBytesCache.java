@@ -0,0 +1,142 @@
+package ru.javabegin.backend.todo.todobackend.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import ru.javabegin.backend.todo.todobackend.service.UserResolver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/*
+
+Ready-to-send JSON (plain and gzip) of small reference lists (categories, priorities) per user.
+Repeated reads are written as is, without going to the DB and without Jackson.
+Entries are keyed by the user id: the raw email from the request body (e.g. with spaces around it) must not
+create a separate entry which the eviction by the user's email would miss.
+
+*/
+
+@Component
+public class ResponseBytesCache implements UserScopedCache {
+
+    public static final String CATEGORIES = "category";
+    public static final String PRIORITIES = "priority";
+
+    private static final String GZIP = "gzip";
+
+    private final ObjectMapper objectMapper;
+    private final UserResolver userResolver;
+    private final int maxEntries;
+    private final int compressionMinSize;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    // changed on every eviction - a value loaded before the eviction must not be stored
+    private final AtomicLong epoch = new AtomicLong();
+
+    public ResponseBytesCache(ObjectMapper objectMapper, UserResolver userResolver,
+                              @Value("${todo.response-cache.max-entries:10000}") int maxEntries,
+                              @Value("${todo.response-cache.compression-min-size:1024}") int compressionMinSize) {
+        this.objectMapper = objectMapper;
+        this.userResolver = userResolver;
+        this.maxEntries = maxEntries;
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    // loader gets the email of the user as it is stored in the DB
+    public ResponseEntity<byte[]> respond(String region, String email, String acceptEncoding, Function<String, ?> loader) {
+        Long userId = userResolver.userIdOf(email);
+
+        Entry entry;
+        if (userId == null) {
+            entry = serialize(loader.apply(email)); // unknown user - nothing to cache
+        } else {
+            Key key = new Key(region, userId);
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = load(key, loader);
+            }
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        // the container does not compress responses which already have Content-Encoding
+        if (entry.gzip() != null && acceptsGzip(acceptEncoding)) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, GZIP).body(entry.gzip());
+        }
+        return response.body(entry.json());
+    }
+
+    @Override
+    public void evict(String email) {
+        epoch.incrementAndGet();
+        Long userId = userResolver.userIdOf(email);
+        if (userId != null) {
+            entries.remove(new Key(CATEGORIES, userId));
+            entries.remove(new Key(PRIORITIES, userId));
+        }
+    }
+
+    @Override
+    public void evictAll() {
+        epoch.incrementAndGet();
+        entries.clear();
+    }
+
+    private Entry load(Key key, Function<String, ?> loader) {
+        long loadEpoch = epoch.get();
+
+        Entry entry = serialize(loader.apply(userResolver.emailOf(key.userId())));
+
+        if (epoch.get() == loadEpoch && entries.size() < maxEntries) {
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    private Entry serialize(Object value) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // tiny payloads get bigger after gzip - send them as is
+        return new Entry(json, json.length >= compressionMinSize ? gzip(json) : null);
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains(GZIP);
+    }
+
+    private record Key(String region, Long userId) {
+    }
+
+    private record Entry(byte[] json, byte[] gzip) {
+    }
+
+}
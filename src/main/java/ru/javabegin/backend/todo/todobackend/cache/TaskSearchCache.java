@@ -0,0 +1,179 @@
+package ru.javabegin.backend.todo.todobackend.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.javabegin.backend.todo.todobackend.entity.Task;
+import ru.javabegin.backend.todo.todobackend.repo.TaskRepository;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*
+
+Results of /task/search per user: ids of the found tasks of the page and the total count (not the tasks themselves).
+A repeated search reads only these tasks by primary key instead of filtering, sorting and counting again;
+the tasks are always read from the DB, so a changed title or date is never stale.
+
+Any change of the user's tasks (TaskService), categories or priorities drops all searches of the user
+(a change can move a task in or out of any result). Bounded: todo.search-cache.max-users users,
+todo.search-cache.max-per-user searches per user (least recently used is dropped).
+
+*/
+
+@Component
+public class TaskSearchCache implements UserScopedCache {
+
+    private final TaskRepository taskRepository;
+    private final boolean enabled;
+    private final int maxUsers;
+    private final int maxPerUser;
+
+    private final Map<String, Searches> users = new ConcurrentHashMap<>();
+
+    // changed on every eviction - a result found before the eviction must not be stored
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public TaskSearchCache(TaskRepository taskRepository,
+                           MeterRegistry meterRegistry,
+                           @Value("${todo.search-cache.enabled:true}") boolean enabled,
+                           @Value("${todo.search-cache.max-users:10000}") int maxUsers,
+                           @Value("${todo.search-cache.max-per-user:50}") int maxPerUser) {
+        this.taskRepository = taskRepository;
+        this.enabled = enabled;
+        this.maxUsers = maxUsers;
+        this.maxPerUser = maxPerUser;
+
+        this.hits = Counter.builder("todo.search.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("todo.search.cache").tag("result", "miss").register(meterRegistry);
+    }
+
+    // the page from the remembered ids or from query (then its ids are remembered)
+    public Page<Task> findByParams(String title, Boolean completed, Long priorityId, Long categoryId, String email,
+                                   Date dateFrom, Date dateTo, Pageable pageable, Supplier<Page<Task>> query) {
+        if (!enabled) {
+            return query.get();
+        }
+
+        Key key = new Key(title != null && !title.isEmpty() ? title.toLowerCase(Locale.ROOT) : null, // "like" ignores the case
+                completed, priorityId, categoryId, dateFrom, dateTo, pageable);
+
+        Searches searches = users.get(email);
+        Result result = searches != null ? searches.get(key) : null;
+        if (result != null) {
+            List<Task> tasks = load(result.ids());
+            if (tasks != null) {
+                hits.increment();
+                return new PageImpl<>(tasks, pageable, result.total());
+            }
+        }
+
+        misses.increment();
+        long loadEpoch = epoch.get();
+        Page<Task> page = query.get();
+
+        // a repeatable read snapshot (/bootstrap) can be older than the last eviction
+        Integer isolation = TransactionSynchronizationManager.getCurrentTransactionIsolationLevel();
+        boolean oldSnapshot = isolation != null && isolation >= TransactionDefinition.ISOLATION_REPEATABLE_READ;
+
+        if (epoch.get() == loadEpoch && !oldSnapshot) {
+            long[] ids = new long[page.getNumberOfElements()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = page.getContent().get(i).getId();
+            }
+            Searches userSearches = users.size() < maxUsers
+                    ? users.computeIfAbsent(email, e -> new Searches(maxPerUser))
+                    : users.get(email);
+            if (userSearches != null) {
+                userSearches.put(key, new Result(ids, page.getTotalElements()));
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public void evict(String email) {
+        epoch.incrementAndGet();
+        users.remove(email);
+    }
+
+    @Override
+    public void evictAll() {
+        epoch.incrementAndGet();
+        users.clear();
+    }
+
+    // tasks in the order of ids; null if one of them doesn't exist anymore (deleted by another node, not yet evicted)
+    private List<Task> load(long[] ids) {
+        if (ids.length == 0) {
+            return List.of();
+        }
+        List<Long> idList = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            idList.add(id);
+        }
+
+        Map<Long, Task> byId = new HashMap<>();
+        for (Task task : taskRepository.findWithReferencesByIdIn(idList)) {
+            byId.put(task.getId(), task);
+        }
+        if (byId.size() != ids.length) {
+            return null;
+        }
+
+        List<Task> tasks = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            tasks.add(byId.get(id));
+        }
+        return tasks;
+    }
+
+    // canonical search: the values as the repository gets them (dates are already moved to 00:01 / 23:59)
+    private record Key(String title, Boolean completed, Long priorityId, Long categoryId,
+                       Date dateFrom, Date dateTo, Pageable pageable) {
+    }
+
+    private record Result(long[] ids, long total) {
+    }
+
+    // searches of one user, least recently used first
+    private static final class Searches {
+
+        private final Map<Key, Result> results;
+
+        Searches(int maxEntries) {
+            this.results = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        synchronized Result get(Key key) {
+            return results.get(key);
+        }
+
+        synchronized void put(Key key, Result result) {
+            results.put(key, result);
+        }
+    }
+
+}
@@ -0,0 +1,521 @@
+package ru.javabegin.backend.todo.todobackend.cache;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import ru.javabegin.backend.todo.todobackend.entity.Category;
+import ru.javabegin.backend.todo.todobackend.entity.Priority;
+import ru.javabegin.backend.todo.todobackend.entity.Task;
+import ru.javabegin.backend.todo.todobackend.repo.TaskSort;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/*
+
+All tasks of one user in compact form: parallel primitive arrays (one row per task, rows are only appended),
+bitsets of rows for completed/priority/category and the array of live rows sorted by (taskDate, id).
+
+A change is applied in place: the row is appended (or marked as removed) and its position in the sorted array is
+found with binary search, so a write costs O(log n) plus a shift of one int array - nothing is sorted again.
+Removed rows are dropped when they are more than the live ones.
+
+Answers the same filters as TaskRepository.findByParams (title, completed, priority, category, date range),
+sorting and paging without the DB. Titles are compared by code points, as the collation ucs_basic of the sort
+in the DB (TaskSort.TITLE), so the cache and the DB return the same order.
+
+*/
+
+final class TaskWorkingSet {
+
+    private static final long NO_DATE = Long.MAX_VALUE; // tasks without date are at the end (as "nulls last" in PostgreSQL)
+    private static final int NONE = -1;
+    private static final int MIN_CAPACITY = 16;
+    private static final int MIN_REMOVED_TO_COMPACT = 64;
+
+    // searches read in parallel, changes (from one updater thread) are exclusive
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // rows in the order they were added
+    private long[] ids;
+    private long[] versions; // returned to clients for optimistic locking
+    private long[] dates;
+    private String[] titles;
+    private String[] lowerTitles; // for "like %text%" search without allocations
+    private int[] priorityRefs; // index in priorities or NONE
+    private int[] categoryRefs; // index in categories or NONE
+    private BitSet completed;
+    private BitSet uncompleted; // rows with completed = null are in neither of the sets
+    private int rows; // used rows (live and removed)
+
+    // live rows sorted by (taskDate asc, id asc)
+    private int[] order;
+    private int size;
+
+    private Map<Long, Integer> rowById;
+
+    private final List<Priority> priorities = new ArrayList<>();
+    private final List<BitSet> rowsByPriority = new ArrayList<>();
+    private final Map<Long, Integer> priorityIndex = new HashMap<>();
+
+    private final List<Category> categories = new ArrayList<>();
+    private final List<BitSet> rowsByCategory = new ArrayList<>();
+    private final Map<Long, Integer> categoryIndex = new HashMap<>();
+
+    private long rowBytes; // estimated heap size of the rows
+
+    private TaskWorkingSet(int capacity) {
+        allocate(Math.max(capacity, MIN_CAPACITY));
+    }
+
+    static TaskWorkingSet of(List<Task> tasks) {
+        TaskWorkingSet set = new TaskWorkingSet(tasks.size());
+
+        List<Task> sorted = new ArrayList<>(tasks);
+        sorted.sort(Comparator.comparingLong(TaskWorkingSet::dateOf).thenComparing(Task::getId));
+        for (Task task : sorted) {
+            set.order[set.size++] = set.append(task); // already in order
+        }
+        return set;
+    }
+
+    // estimated heap size (for the global memory budget)
+    long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 256 + rowBytes;
+            bytes += (long) (priorities.size() + categories.size()) * (200 + ids.length / 8);
+            bytes += 2L * ids.length / 8 + 4L * order.length;
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // adds the task or replaces it; categories are replaced with fresh objects (counters are changed by DB triggers)
+    void put(Task task, List<Category> freshCategories) {
+        lock.writeLock().lock();
+        try {
+            removeRow(task.getId());
+
+            int row = append(task);
+            int position = position(dates[row], ids[row]);
+            System.arraycopy(order, position, order, position + 1, size - position);
+            order[position] = row;
+            size++;
+
+            refresh(freshCategories);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(long taskId, List<Category> freshCategories) {
+        lock.writeLock().lock();
+        try {
+            removeRow(taskId);
+            refresh(freshCategories);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // same conditions as TaskRepository.findByParams; returns null if the sort can't be done in memory
+    Page<Task> findByParams(String title, Boolean completedValue, Long priorityId, Long categoryId,
+                            Date dateFrom, Date dateTo, Pageable pageable) {
+
+        Comparator<Integer> comparator = comparator(pageable.getSort());
+        if (comparator == null) {
+            return null;
+        }
+
+        lock.readLock().lock();
+        try {
+            // date range: live rows are sorted by date, so the range is found with binary search
+            int from = 0;
+            int to = size;
+            if (dateFrom != null || dateTo != null) {
+                to = lowerBound(NO_DATE); // tasks without date never match a date condition
+                if (dateFrom != null) {
+                    from = lowerBound(dateFrom.getTime());
+                }
+                if (dateTo != null) {
+                    to = Math.min(to, lowerBound(dateTo.getTime() + 1));
+                }
+            }
+
+            // null - no condition on the bitsets (removed rows are cleared in all of them)
+            BitSet filter = null;
+            if (completedValue != null) {
+                filter = and(filter, completedValue ? completed : uncompleted);
+            }
+            if (priorityId != null) {
+                Integer index = priorityIndex.get(priorityId);
+                filter = and(filter, index == null ? new BitSet() : rowsByPriority.get(index));
+            }
+            if (categoryId != null) {
+                Integer index = categoryIndex.get(categoryId);
+                filter = and(filter, index == null ? new BitSet() : rowsByCategory.get(index));
+            }
+
+            String text = title != null && !title.isEmpty() ? title.toLowerCase() : null;
+
+            List<Integer> matched = new ArrayList<>();
+            for (int position = from; position < to; position++) {
+                int row = order[position];
+                if ((filter == null || filter.get(row))
+                        && (text == null || (lowerTitles[row] != null && lowerTitles[row].contains(text)))) {
+                    matched.add(row);
+                }
+            }
+
+            if (!isNaturalOrder(pageable.getSort())) {
+                matched.sort(comparator);
+            }
+
+            List<Task> content = new ArrayList<>();
+            if (pageable.isPaged()) {
+                long offset = pageable.getOffset();
+                for (long i = offset; i < matched.size() && i < offset + pageable.getPageSize(); i++) {
+                    content.add(task(matched.get((int) i)));
+                }
+            } else {
+                for (Integer row : matched) {
+                    content.add(task(row));
+                }
+            }
+
+            return new PageImpl<>(content, pageable, matched.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // appends the task as a new row (not yet in order)
+    private int append(Task task) {
+        if (rows == ids.length) {
+            grow(ids.length * 2);
+        }
+        int row = rows++;
+
+        ids[row] = task.getId();
+        versions[row] = task.getVersion() != null ? task.getVersion() : 0;
+        dates[row] = dateOf(task);
+        titles[row] = task.getTitle();
+        lowerTitles[row] = task.getTitle() != null ? task.getTitle().toLowerCase() : null;
+
+        if (Boolean.TRUE.equals(task.getCompleted())) {
+            completed.set(row);
+        } else if (Boolean.FALSE.equals(task.getCompleted())) {
+            uncompleted.set(row);
+        }
+
+        Priority priority = task.getPriority();
+        if (priority == null) {
+            priorityRefs[row] = NONE;
+        } else {
+            Integer index = priorityIndex.get(priority.getId());
+            if (index == null) {
+                index = priorities.size();
+                priorityIndex.put(priority.getId(), index);
+                priorities.add(priority);
+                rowsByPriority.add(new BitSet());
+            }
+            priorityRefs[row] = index;
+            rowsByPriority.get(index).set(row);
+        }
+
+        Category category = task.getCategory();
+        if (category == null) {
+            categoryRefs[row] = NONE;
+        } else {
+            Integer index = categoryIndex.get(category.getId());
+            if (index == null) {
+                index = categories.size();
+                categoryIndex.put(category.getId(), index);
+                categories.add(category);
+                rowsByCategory.add(new BitSet());
+            }
+            categoryRefs[row] = index;
+            rowsByCategory.get(index).set(row);
+        }
+
+        rowById.put(task.getId(), row);
+        rowBytes += rowBytes(row);
+        return row;
+    }
+
+    // the row stays in the arrays until the next compaction, but it is not in order and in no bitset
+    private void removeRow(long taskId) {
+        Integer row = rowById.remove(taskId);
+        if (row == null) {
+            return;
+        }
+
+        int position = position(dates[row], ids[row]) - 1; // the row itself is the last one not greater than its key
+        System.arraycopy(order, position + 1, order, position, size - position - 1);
+        size--;
+
+        completed.clear(row);
+        uncompleted.clear(row);
+        if (priorityRefs[row] != NONE) {
+            rowsByPriority.get(priorityRefs[row]).clear(row);
+        }
+        if (categoryRefs[row] != NONE) {
+            rowsByCategory.get(categoryRefs[row]).clear(row);
+        }
+        rowBytes -= rowBytes(row);
+        titles[row] = null;
+        lowerTitles[row] = null;
+
+        int removed = rows - size;
+        if (removed >= MIN_REMOVED_TO_COMPACT && removed > size) {
+            compact();
+        }
+    }
+
+    // rebuilds the rows from the live ones (their order is kept), amortized over the removals before it
+    private void compact() {
+        long[] oldIds = ids;
+        long[] oldVersions = versions;
+        long[] oldDates = dates;
+        String[] oldTitles = titles;
+        String[] oldLowerTitles = lowerTitles;
+        int[] oldPriorityRefs = priorityRefs;
+        int[] oldCategoryRefs = categoryRefs;
+        BitSet oldCompleted = completed;
+        BitSet oldUncompleted = uncompleted;
+        int[] oldOrder = order;
+        int liveRows = size;
+
+        allocate(Math.max(liveRows * 2, MIN_CAPACITY));
+        for (BitSet bits : rowsByPriority) {
+            bits.clear();
+        }
+        for (BitSet bits : rowsByCategory) {
+            bits.clear();
+        }
+
+        for (int position = 0; position < liveRows; position++) {
+            int oldRow = oldOrder[position];
+            int row = position;
+
+            ids[row] = oldIds[oldRow];
+            versions[row] = oldVersions[oldRow];
+            dates[row] = oldDates[oldRow];
+            titles[row] = oldTitles[oldRow];
+            lowerTitles[row] = oldLowerTitles[oldRow];
+            priorityRefs[row] = oldPriorityRefs[oldRow];
+            categoryRefs[row] = oldCategoryRefs[oldRow];
+            completed.set(row, oldCompleted.get(oldRow));
+            uncompleted.set(row, oldUncompleted.get(oldRow));
+            if (priorityRefs[row] != NONE) {
+                rowsByPriority.get(priorityRefs[row]).set(row);
+            }
+            if (categoryRefs[row] != NONE) {
+                rowsByCategory.get(categoryRefs[row]).set(row);
+            }
+
+            rowById.put(ids[row], row);
+            order[position] = row;
+            rowBytes += rowBytes(row);
+        }
+        rows = liveRows;
+        size = liveRows;
+    }
+
+    private void allocate(int capacity) {
+        ids = new long[capacity];
+        versions = new long[capacity];
+        dates = new long[capacity];
+        titles = new String[capacity];
+        lowerTitles = new String[capacity];
+        priorityRefs = new int[capacity];
+        categoryRefs = new int[capacity];
+        completed = new BitSet(capacity);
+        uncompleted = new BitSet(capacity);
+        order = new int[capacity];
+        rowById = new HashMap<>(capacity * 4 / 3 + 1);
+        rows = 0;
+        size = 0;
+        rowBytes = 0;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        dates = Arrays.copyOf(dates, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        lowerTitles = Arrays.copyOf(lowerTitles, capacity);
+        priorityRefs = Arrays.copyOf(priorityRefs, capacity);
+        categoryRefs = Arrays.copyOf(categoryRefs, capacity);
+        order = Arrays.copyOf(order, capacity);
+    }
+
+    private long rowBytes(int row) {
+        long bytes = 3 * 8 + 3 * 4 + 2 * 8 + 48; // ids, versions, dates, refs, order, title references, id map entry
+        if (titles[row] != null) {
+            bytes += 2 * (40 + 2L * titles[row].length()); // title + lower-case copy
+        }
+        return bytes;
+    }
+
+    private void refresh(List<Category> freshCategories) {
+        for (Category category : freshCategories) {
+            Integer index = categoryIndex.get(category.getId());
+            if (index != null) {
+                categories.set(index, category);
+            }
+        }
+    }
+
+    private Task task(int row) {
+        Boolean completedValue = completed.get(row) ? Boolean.TRUE : uncompleted.get(row) ? Boolean.FALSE : null;
+        Date date = dates[row] == NO_DATE ? null : new Date(dates[row]);
+        Priority priority = priorityRefs[row] == NONE ? null : priorities.get(priorityRefs[row]);
+        Category category = categoryRefs[row] == NONE ? null : categories.get(categoryRefs[row]);
+
+        return new Task(ids[row], titles[row], completedValue, date, priority, category, null, versions[row]);
+    }
+
+    // first position in order with (date, id) > (date, id) of the key
+    private int position(long date, long id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int row = order[middle];
+            if (dates[row] < date || (dates[row] == date && ids[row] <= id)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // first position in order with date >= value
+    private int lowerBound(long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (dates[order[middle]] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // the first condition is copied, the next ones are applied to the copy
+    private static BitSet and(BitSet filter, BitSet rows) {
+        if (filter == null) {
+            return (BitSet) rows.clone();
+        }
+        filter.and(rows);
+        return filter;
+    }
+
+    private static boolean isNaturalOrder(Sort sort) {
+        if (sort.isUnsorted()) {
+            return true;
+        }
+        List<Sort.Order> orders = sort.toList();
+        return orders.size() <= 2
+                && orders.get(0).getProperty().equals("taskDate") && orders.get(0).isAscending()
+                && orders.get(0).getNullHandling() != Sort.NullHandling.NULLS_FIRST
+                && (orders.size() == 1 || (orders.get(1).getProperty().equals("id") && orders.get(1).isAscending()));
+    }
+
+    // comparator of row indexes for the sort (null handling as in PostgreSQL: nulls are the largest values)
+    private Comparator<Integer> comparator(Sort sort) {
+        Comparator<Integer> result = null;
+
+        for (Sort.Order order : sort) {
+            Comparator<Integer> next = comparator(order);
+            if (next == null) {
+                return null; // unknown property - the DB has to do it
+            }
+            result = result == null ? next : result.thenComparing(next);
+        }
+
+        Comparator<Integer> byId = (a, b) -> Long.compare(ids[a], ids[b]);
+        return result == null ? byId : result.thenComparing(byId);
+    }
+
+    // titles only in the collation of TaskSort.TITLE: with the default collation of the DB the order would differ
+    private Comparator<Integer> comparator(Sort.Order order) {
+        Comparator<Integer> values; // compares non-null values only
+        IntPredicate isNull;
+
+        switch (order.getProperty()) {
+            case "id":
+                values = (a, b) -> Long.compare(ids[a], ids[b]);
+                isNull = row -> false;
+                break;
+            case "taskDate":
+                values = (a, b) -> Long.compare(dates[a], dates[b]);
+                isNull = row -> dates[row] == NO_DATE;
+                break;
+            case TaskSort.TITLE_ORDER:
+                values = (a, b) -> TaskSort.compareTitles(titles[a], titles[b]);
+                isNull = row -> titles[row] == null;
+                break;
+            case "completed":
+                values = (a, b) -> Boolean.compare(completed.get(a), completed.get(b));
+                isNull = row -> !completed.get(row) && !uncompleted.get(row);
+                break;
+            case "priority":
+            case "priority.id":
+                values = (a, b) -> Long.compare(priorities.get(priorityRefs[a]).getId(), priorities.get(priorityRefs[b]).getId());
+                isNull = row -> priorityRefs[row] == NONE;
+                break;
+            case "category":
+            case "category.id":
+                values = (a, b) -> Long.compare(categories.get(categoryRefs[a]).getId(), categories.get(categoryRefs[b]).getId());
+                isNull = row -> categoryRefs[row] == NONE;
+                break;
+            default:
+                return null;
+        }
+
+        boolean ascending = order.isAscending();
+        boolean nullsFirst = switch (order.getNullHandling()) {
+            case NULLS_FIRST -> true;
+            case NULLS_LAST -> false;
+            default -> !ascending; // PostgreSQL: asc -> nulls last, desc -> nulls first
+        };
+
+        return (a, b) -> {
+            boolean nullA = isNull.test(a);
+            boolean nullB = isNull.test(b);
+            if (nullA || nullB) {
+                if (nullA == nullB) {
+                    return 0;
+                }
+                return nullA == nullsFirst ? -1 : 1;
+            }
+            int result = values.compare(a, b);
+            return ascending ? result : -result;
+        };
+    }
+
+    private static long dateOf(Task task) {
+        return task.getTaskDate() != null ? task.getTaskDate().getTime() : NO_DATE;
+    }
+
+}
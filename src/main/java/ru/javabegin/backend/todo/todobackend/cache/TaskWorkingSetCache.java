@@ -0,0 +1,262 @@
+package ru.javabegin.backend.todo.todobackend.cache;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.javabegin.backend.todo.todobackend.entity.Category;
+import ru.javabegin.backend.todo.todobackend.entity.Task;
+import ru.javabegin.backend.todo.todobackend.entity.User;
+import ru.javabegin.backend.todo.todobackend.repo.CategoryRepository;
+import ru.javabegin.backend.todo.todobackend.repo.TaskRepository;
+import ru.javabegin.backend.todo.todobackend.service.TransactionHooks;
+import ru.javabegin.backend.todo.todobackend.service.UserResolver;
+import ru.javabegin.backend.todo.todobackend.shard.ShardContext;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+
+Optional in-memory engine for task search (todo.task-cache.enabled=true).
+A user's tasks are loaded on first access into TaskWorkingSet, TaskService changes are written through after commit
+(by a background thread, in place: O(log n) per change; until a change is applied the user's searches go to the DB),
+least recently used users are dropped when the estimated size of all sets is over todo.task-cache.memory-budget-mb.
+
+*/
+
+@Component
+@Log
+public class TaskWorkingSetCache implements UserScopedCache {
+
+    private final TaskRepository taskRepository;
+    private final CategoryRepository categoryRepository;
+    private final UserResolver userResolver;
+    private final TransactionTemplate readTransaction;
+
+    private final boolean enabled;
+    private final long memoryBudgetBytes;
+
+    private final Map<String, Holder> holders = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    // applies committed changes one by one (the writing request does not wait for a second connection)
+    private final ExecutorService updater = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "task-working-set");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TaskWorkingSetCache(TaskRepository taskRepository,
+                               CategoryRepository categoryRepository,
+                               UserResolver userResolver,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${todo.task-cache.enabled:false}") boolean enabled,
+                               @Value("${todo.task-cache.memory-budget-mb:256}") long memoryBudgetMb) {
+        this.taskRepository = taskRepository;
+        this.categoryRepository = categoryRepository;
+        this.userResolver = userResolver;
+        this.enabled = enabled;
+        this.memoryBudgetBytes = memoryBudgetMb * 1024 * 1024;
+
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        updater.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // null means "not answered from memory" (cache is off, a change is being applied or the sort is not supported)
+    public Page<Task> findByParams(String title, Boolean completed, Long priorityId, Long categoryId, String email,
+                                   Date dateFrom, Date dateTo, Pageable pageable) {
+        if (!enabled) {
+            return null;
+        }
+        TaskWorkingSet set = workingSet(email);
+        return set != null ? set.findByParams(title, completed, priorityId, categoryId, dateFrom, dateTo, pageable) : null;
+    }
+
+    // all tasks of the user, newest first (as TaskRepository.findByUserEmailOrderByTaskDateDesc)
+    public List<Task> findAll(String email) {
+        if (!enabled) {
+            return null;
+        }
+        TaskWorkingSet set = workingSet(email);
+        if (set == null) {
+            return null;
+        }
+        return set.findByParams(null, null, null, null, null, null,
+                Pageable.unpaged(Sort.by(Sort.Direction.DESC, "taskDate"))).getContent();
+    }
+
+    public void taskSaved(Long taskId, User user) {
+        writeThrough(taskId, user, false);
+    }
+
+    public void taskDeleted(Long taskId, User user) {
+        writeThrough(taskId, user, true);
+    }
+
+    // task changes are written through, so they don't drop the set
+    @Override
+    public void tasksChanged(String email) {
+    }
+
+    @Override
+    public void evict(String email) {
+        Holder holder = holders.remove(email);
+        if (holder != null) {
+            holder.evicted = true;
+            release(holder);
+        }
+    }
+
+    @Override
+    public void evictAll() {
+        for (String email : holders.keySet()) {
+            evict(email);
+        }
+    }
+
+    private TaskWorkingSet workingSet(String email) {
+        Holder holder = holders.computeIfAbsent(email, e -> new Holder());
+        holder.lastAccess = System.nanoTime();
+
+        if (holder.pendingUpdates.get() > 0) {
+            return null; // a committed change is not applied yet
+        }
+
+        TaskWorkingSet set = holder.set.get();
+        if (set != null) {
+            return set;
+        }
+
+        // only one thread loads the set, the others wait for it
+        synchronized (holder) {
+            set = holder.set.get();
+            if (set == null) {
+                List<Task> tasks = readTransaction.execute(status -> taskRepository.findWorkingSet(email));
+                set = TaskWorkingSet.of(tasks);
+                holder.set.set(set);
+                account(holder, set);
+                if (holder.evicted) {
+                    release(holder); // evicted while loading
+                }
+            }
+        }
+
+        enforceBudget();
+        return set;
+    }
+
+    private void writeThrough(Long taskId, User user, boolean deleted) {
+        if (!enabled) {
+            return;
+        }
+        String email = userResolver.emailOf(user);
+        if (email == null) {
+            evictAll();
+            return;
+        }
+
+        TransactionHooks.afterCommit(() -> {
+            Holder holder = holders.get(email);
+            if (holder == null) {
+                return; // not loaded - will be read from the DB on first access
+            }
+
+            holder.pendingUpdates.incrementAndGet();
+            // the task is read on the updater thread from the shard of the writing request
+            updater.execute(ShardContext.wrap(() -> {
+                try {
+                    update(email, holder, taskId, deleted);
+                } finally {
+                    holder.pendingUpdates.decrementAndGet();
+                }
+            }));
+        });
+    }
+
+    private void update(String email, Holder holder, Long taskId, boolean deleted) {
+        try {
+            synchronized (holder) {
+                TaskWorkingSet set = holder.set.get();
+                if (set == null || holder.evicted) {
+                    return;
+                }
+
+                // the saved task is read from the DB: the client sends only ids of priority/category
+                // category counters of the user are changed by DB triggers, so categories are read too
+                readTransaction.executeWithoutResult(status -> {
+                    List<Category> categories = categoryRepository.findByUserEmailOrderByIdAsc(email);
+                    Task saved = deleted ? null : taskRepository.findWithReferencesById(taskId).orElse(null);
+
+                    // applied in place (searches of other threads wait for the change only)
+                    if (saved == null) {
+                        set.remove(taskId, categories);
+                    } else {
+                        set.put(saved, categories);
+                    }
+                });
+
+                account(holder, set);
+                if (holder.evicted) {
+                    release(holder);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warning("Task working set of " + email + " is dropped after failed update: " + e.getMessage());
+            evict(email);
+        }
+
+        enforceBudget();
+    }
+
+    // the size of a set changes with every write: only the difference to the last accounted size is added
+    private void account(Holder holder, TaskWorkingSet set) {
+        long bytes = set.memoryBytes();
+        usedBytes.addAndGet(bytes - holder.bytes.getAndSet(bytes));
+    }
+
+    private void release(Holder holder) {
+        holder.set.set(null);
+        usedBytes.addAndGet(-holder.bytes.getAndSet(0));
+    }
+
+    // drops the least recently used sets until all of them fit into the budget
+    private void enforceBudget() {
+        while (usedBytes.get() > memoryBudgetBytes && !holders.isEmpty()) {
+            holders.entrySet().stream()
+                    .min(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                    .ifPresent(entry -> evict(entry.getKey()));
+        }
+    }
+
+    private static final class Holder {
+        final AtomicReference<TaskWorkingSet> set = new AtomicReference<>();
+        final AtomicInteger pendingUpdates = new AtomicInteger();
+        final AtomicLong bytes = new AtomicLong(); // size of the set in usedBytes
+        volatile boolean evicted;
+        volatile long lastAccess;
+    }
+
+}
@@ -0,0 +1,222 @@
+package ru.javabegin.backend.todo.todobackend.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+
+Titles of one user for autocomplete: sorted array of the lower case titles with the title as written by the user,
+the number of uses (ranking) and the kinds of objects with this title (task, category, priority).
+
+A prefix is found with a binary search; the matching titles follow each other, the most used are returned.
+Immutable: a change makes a copy (O(n) for the few hundred or thousand titles of a user, rare compared to reads),
+so readers don't need any lock. Lower case titles that are already lower case are the same String object.
+
+*/
+
+public final class TitleIndex {
+
+    public static final int TASK = 1;
+    public static final int CATEGORY = 2;
+    public static final int PRIORITY = 4;
+    public static final int ALL = TASK | CATEGORY | PRIORITY;
+
+    private final String[] keys; // lower case, sorted
+    private final String[] titles;
+    private final long[] counts;
+    private final byte[] kinds;
+    private final int changes; // incremental changes since the load
+
+    private TitleIndex(String[] keys, String[] titles, long[] counts, byte[] kinds, int changes) {
+        this.keys = keys;
+        this.titles = titles;
+        this.counts = counts;
+        this.kinds = kinds;
+        this.changes = changes;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    int changes() {
+        return changes;
+    }
+
+    // up to limit titles starting with the prefix (case is ignored), most used first, then in alphabetical order
+    public List<String> suggest(String prefix, int kindMask, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        String key = prefix.toLowerCase(Locale.ROOT);
+        int[] best = new int[limit];
+        int found = 0;
+
+        for (int i = lowerBound(key); i < keys.length && keys[i].startsWith(key); i++) {
+            if ((kinds[i] & kindMask) == 0) {
+                continue;
+            }
+            if (found == limit && counts[i] <= counts[best[limit - 1]]) {
+                continue; // not better than the worst of the best
+            }
+            // insertion into the small sorted array of the best ones (alphabetical order is kept for equal counts)
+            int position = found < limit ? found++ : limit - 1;
+            while (position > 0 && counts[best[position - 1]] < counts[i]) {
+                best[position] = best[position - 1];
+                position--;
+            }
+            best[position] = i;
+        }
+
+        List<String> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            result.add(titles[best[i]]);
+        }
+        return result;
+    }
+
+    // a new or renamed task: one more use of the title
+    TitleIndex with(String title, int kind) {
+        String key = title.toLowerCase(Locale.ROOT);
+        int i = Arrays.binarySearch(keys, key);
+        if (i >= 0) {
+            long[] newCounts = counts.clone();
+            byte[] newKinds = kinds.clone();
+            newCounts[i]++;
+            newKinds[i] |= (byte) kind;
+            return new TitleIndex(keys, titles, newCounts, newKinds, changes + 1);
+        }
+
+        int at = -i - 1;
+        int size = keys.length;
+        String[] newKeys = new String[size + 1];
+        String[] newTitles = new String[size + 1];
+        long[] newCounts = new long[size + 1];
+        byte[] newKinds = new byte[size + 1];
+        copyAround(keys, newKeys, at, size);
+        copyAround(titles, newTitles, at, size);
+        System.arraycopy(counts, 0, newCounts, 0, at);
+        System.arraycopy(counts, at, newCounts, at + 1, size - at);
+        System.arraycopy(kinds, 0, newKinds, 0, at);
+        System.arraycopy(kinds, at, newKinds, at + 1, size - at);
+        newKeys[at] = key;
+        newTitles[at] = title;
+        newCounts[at] = 1;
+        newKinds[at] = (byte) kind;
+        return new TitleIndex(newKeys, newTitles, newCounts, newKinds, changes + 1);
+    }
+
+    // a deleted task: one use less; the title is removed when only this task had it
+    TitleIndex without(String title, int kind) {
+        int i = Arrays.binarySearch(keys, title.toLowerCase(Locale.ROOT));
+        if (i < 0) {
+            return this;
+        }
+        if (counts[i] > 1 || kinds[i] != kind) {
+            long[] newCounts = counts.clone();
+            newCounts[i] = Math.max(1, counts[i] - 1);
+            return new TitleIndex(keys, titles, newCounts, kinds, changes + 1);
+        }
+
+        int size = keys.length;
+        String[] newKeys = new String[size - 1];
+        String[] newTitles = new String[size - 1];
+        long[] newCounts = new long[size - 1];
+        byte[] newKinds = new byte[size - 1];
+        copyWithout(keys, newKeys, i, size);
+        copyWithout(titles, newTitles, i, size);
+        System.arraycopy(counts, 0, newCounts, 0, i);
+        System.arraycopy(counts, i + 1, newCounts, i, size - i - 1);
+        System.arraycopy(kinds, 0, newKinds, 0, i);
+        System.arraycopy(kinds, i + 1, newKinds, i, size - i - 1);
+        return new TitleIndex(newKeys, newTitles, newCounts, newKinds, changes + 1);
+    }
+
+    // first position with a key >= the given one
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static void copyAround(String[] from, String[] to, int at, int size) {
+        System.arraycopy(from, 0, to, 0, at);
+        System.arraycopy(from, at, to, at + 1, size - at);
+    }
+
+    private static void copyWithout(String[] from, String[] to, int at, int size) {
+        System.arraycopy(from, 0, to, 0, at);
+        System.arraycopy(from, at + 1, to, at, size - at - 1);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // titles of different kinds that differ only in case become one entry (uses are summed up)
+    public static final class Builder {
+
+        private final Map<String, Integer> positions = new HashMap<>();
+        private final List<String> titles = new ArrayList<>();
+        private final List<long[]> counts = new ArrayList<>();
+        private final List<int[]> kinds = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        // every title gets at least one use (a new category without tasks is suggested too)
+        public Builder add(String title, long count, int kind) {
+            if (title == null || title.isBlank()) {
+                return this;
+            }
+            String key = title.toLowerCase(Locale.ROOT);
+            Integer position = positions.get(key);
+            if (position == null) {
+                positions.put(key, titles.size());
+                titles.add(title);
+                counts.add(new long[]{Math.max(1, count)});
+                kinds.add(new int[]{kind});
+            } else {
+                counts.get(position)[0] += Math.max(1, count);
+                kinds.get(position)[0] |= kind;
+            }
+            return this;
+        }
+
+        public TitleIndex build() {
+            Integer[] order = new Integer[titles.size()];
+            String[] lower = new String[titles.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+                lower[i] = titles.get(i).toLowerCase(Locale.ROOT); // the title itself if it has no upper case letters
+            }
+            Arrays.sort(order, (a, b) -> lower[a].compareTo(lower[b]));
+
+            String[] sortedKeys = new String[order.length];
+            String[] sortedTitles = new String[order.length];
+            long[] sortedCounts = new long[order.length];
+            byte[] sortedKinds = new byte[order.length];
+            for (int i = 0; i < order.length; i++) {
+                int from = order[i];
+                sortedKeys[i] = lower[from];
+                sortedTitles[i] = titles.get(from);
+                sortedCounts[i] = counts.get(from)[0];
+                sortedKinds[i] = (byte) kinds.get(from)[0];
+            }
+            return new TitleIndex(sortedKeys, sortedTitles, sortedCounts, sortedKinds, 0);
+        }
+    }
+
+}
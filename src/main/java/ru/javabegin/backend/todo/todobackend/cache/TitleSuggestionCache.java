@@ -0,0 +1,136 @@
+package ru.javabegin.backend.todo.todobackend.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.javabegin.backend.todo.todobackend.entity.User;
+import ru.javabegin.backend.todo.todobackend.service.TransactionHooks;
+import ru.javabegin.backend.todo.todobackend.service.UserResolver;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/*
+
+Autocomplete titles (TitleIndex) per user, loaded on the first request of the user.
+
+Task titles are updated by TaskWriter after commit (a new title is one more use, a deleted task one use less).
+The old title of a renamed task is not known without reading it, so its count stays until the index is
+loaded again: after todo.autocomplete.max-changes incremental changes the index is dropped.
+Changes of categories and priorities (and of other instances) drop the index of the user.
+Bounded: todo.autocomplete.max-users users (new users are not cached when it's full).
+
+*/
+
+@Component
+public class TitleSuggestionCache implements UserScopedCache {
+
+    private final UserResolver userResolver;
+    private final boolean enabled;
+    private final int maxUsers;
+    private final int maxChanges;
+
+    private final Map<String, TitleIndex> users = new ConcurrentHashMap<>();
+
+    // changed on every eviction and task change - an index loaded before it must not be stored
+    private final AtomicLong epoch = new AtomicLong();
+
+    public TitleSuggestionCache(UserResolver userResolver,
+                                @Value("${todo.autocomplete.enabled:true}") boolean enabled,
+                                @Value("${todo.autocomplete.max-users:10000}") int maxUsers,
+                                @Value("${todo.autocomplete.max-changes:200}") int maxChanges) {
+        this.userResolver = userResolver;
+        this.enabled = enabled;
+        this.maxUsers = maxUsers;
+        this.maxChanges = maxChanges;
+    }
+
+    public TitleIndex get(String email, Supplier<TitleIndex> loader) {
+        TitleIndex index = users.get(email);
+        if (index != null) {
+            return index;
+        }
+
+        long loadEpoch = epoch.get();
+        index = loader.get();
+        if (enabled && epoch.get() == loadEpoch && users.size() < maxUsers) {
+            users.putIfAbsent(email, index);
+        }
+        return index;
+    }
+
+    // called by TaskWriter (new title of a task)
+    public void taskTitleSaved(User user, String title) {
+        if (title != null && !title.isBlank()) {
+            change(user, index -> index.with(title, TitleIndex.TASK));
+        }
+    }
+
+    // title of an existing task was replaced (nothing to do if it is the same)
+    public void taskTitleChanged(User user, String oldTitle, String newTitle) {
+        if (Objects.equals(oldTitle, newTitle)) {
+            return;
+        }
+        change(user, index -> {
+            TitleIndex changed = index;
+            if (oldTitle != null && !oldTitle.isBlank()) {
+                changed = changed.without(oldTitle, TitleIndex.TASK);
+            }
+            if (newTitle != null && !newTitle.isBlank()) {
+                changed = changed.with(newTitle, TitleIndex.TASK);
+            }
+            return changed;
+        });
+    }
+
+    // the titles of the user are in memory (TaskWriter reads the old title of a task only then)
+    public boolean isLoaded(User user) {
+        if (users.isEmpty()) {
+            return false;
+        }
+        String email = userResolver.emailOf(user);
+        return email != null && users.containsKey(email);
+    }
+
+    public void taskTitleDeleted(User user, String title) {
+        if (title != null && !title.isBlank()) {
+            change(user, index -> index.without(title, TitleIndex.TASK));
+        }
+    }
+
+    private void change(User user, UnaryOperator<TitleIndex> change) {
+        if (users.isEmpty()) {
+            return;
+        }
+        String email = userResolver.emailOf(user);
+        if (email == null) {
+            return;
+        }
+        TransactionHooks.afterCommit(() -> users.computeIfPresent(email, (e, index) -> {
+            TitleIndex changed = change.apply(index);
+            return changed.changes() < maxChanges ? changed : null; // counts may be off too much - load again
+        }));
+    }
+
+    @Override
+    public void evict(String email) {
+        epoch.incrementAndGet();
+        users.remove(email);
+    }
+
+    @Override
+    public void evictAll() {
+        epoch.incrementAndGet();
+        users.clear();
+    }
+
+    // the index itself is changed by TaskWriter, only a load that is in progress must not be stored
+    @Override
+    public void tasksChanged(String email) {
+        epoch.incrementAndGet();
+    }
+
+}
@@ -0,0 +1,76 @@
+package ru.javabegin.backend.todo.todobackend.cache;
+
+import org.springframework.stereotype.Component;
+import ru.javabegin.backend.todo.todobackend.entity.User;
+import ru.javabegin.backend.todo.todobackend.service.TransactionHooks;
+import ru.javabegin.backend.todo.todobackend.service.UserResolver;
+
+import java.util.List;
+
+// single entry point for services: drops all user-scoped caches of the user whose data was changed
+@Component
+public class UserCacheEvictor {
+
+    private final List<UserScopedCache> caches;
+    private final UserResolver userResolver;
+
+    public UserCacheEvictor(List<UserScopedCache> caches, UserResolver userResolver) {
+        this.caches = caches;
+        this.userResolver = userResolver;
+    }
+
+    public void evict(User user) {
+        evictByUserId(user != null ? user.getId() : null);
+    }
+
+    public void evictByUserId(Long userId) {
+        String email = userResolver.emailOf(userId);
+        if (email == null) {
+            evictAll(); // owner is unknown - safer to drop everything
+        } else {
+            evict(email);
+        }
+    }
+
+    public void evict(String email) {
+        evictNow(email);
+        // second pass after commit: a concurrent reader could have cached the old (not yet committed) state
+        TransactionHooks.afterCommit(() -> evictNow(email));
+    }
+
+    // called by TaskService: caches written through by TaskService keep their data
+    public void tasksChanged(User user) {
+        String email = userResolver.emailOf(user);
+        if (email == null) {
+            evictAll();
+            return;
+        }
+
+        tasksChangedNow(email);
+        TransactionHooks.afterCommit(() -> tasksChangedNow(email));
+    }
+
+    public void evictAll() {
+        evictAllNow();
+        TransactionHooks.afterCommit(this::evictAllNow);
+    }
+
+    private void evictNow(String email) {
+        for (UserScopedCache cache : caches) {
+            cache.evict(email);
+        }
+    }
+
+    private void tasksChangedNow(String email) {
+        for (UserScopedCache cache : caches) {
+            cache.tasksChanged(email);
+        }
+    }
+
+    private void evictAllNow() {
+        for (UserScopedCache cache : caches) {
+            cache.evictAll();
+        }
+    }
+
+}
@@ -0,0 +1,15 @@
+package ru.javabegin.backend.todo.todobackend.cache;
+
+// any in-memory data that belongs to one user and must be dropped when the user's data changes
+public interface UserScopedCache {
+
+    void evict(String email);
+
+    void evictAll();
+
+    // tasks of the user were changed by TaskService (caches that are updated by TaskService itself may ignore it)
+    default void tasksChanged(String email) {
+        evict(email);
+    }
+
+}
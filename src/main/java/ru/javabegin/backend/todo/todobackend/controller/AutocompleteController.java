@@ -0,0 +1,49 @@
+package ru.javabegin.backend.todo.todobackend.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import ru.javabegin.backend.todo.todobackend.search.AutocompleteValues;
+import ru.javabegin.backend.todo.todobackend.service.AutocompleteService;
+
+import java.util.List;
+
+
+@RestController
+// suggestions of task, category and priority titles on every keystroke (instead of /category/search, /priority/search)
+public class AutocompleteController {
+
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 50;
+
+    private final AutocompleteService autocompleteService; // service to access data (we don't call repositories directly)
+
+    // constructor-based dependency injection
+    public AutocompleteController(AutocompleteService autocompleteService) {
+        this.autocompleteService = autocompleteService;
+    }
+
+    // titles starting with the prefix, most used first
+    @PostMapping("/autocomplete")
+    public ResponseEntity<List<String>> suggest(@RequestBody AutocompleteValues values) {
+
+        // check required params
+        if (values.getEmail() == null || values.getEmail().trim().length() == 0) {
+            return new ResponseEntity("missed param: email", HttpStatus.NOT_ACCEPTABLE);
+        }
+        if (values.getPrefix() == null || values.getPrefix().trim().length() == 0) {
+            return new ResponseEntity("missed param: prefix", HttpStatus.NOT_ACCEPTABLE);
+        }
+
+        int limit = values.getLimit() != null ? Math.max(1, Math.min(values.getLimit(), MAX_LIMIT)) : DEFAULT_LIMIT;
+
+        try {
+            return ResponseEntity.ok(autocompleteService.suggest(values.getEmail(), values.getPrefix().stripLeading(), values.getType(), limit));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity(e.getMessage(), HttpStatus.NOT_ACCEPTABLE); // unknown type
+        }
+    }
+
+}
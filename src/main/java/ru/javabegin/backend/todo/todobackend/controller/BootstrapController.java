@@ -0,0 +1,54 @@
+package ru.javabegin.backend.todo.todobackend.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import ru.javabegin.backend.todo.todobackend.dto.BootstrapResponse;
+import ru.javabegin.backend.todo.todobackend.search.TaskSearchValues;
+import ru.javabegin.backend.todo.todobackend.service.BootstrapService;
+
+
+@RestController
+// one call instead of /category/all, /priority/all, /stat and /task/search after login
+public class BootstrapController {
+
+    // first page of tasks if the client doesn't send search parameters
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final String DEFAULT_SORT_COLUMN = "taskDate";
+
+    private final BootstrapService bootstrapService; // service to access data (we don't call repositories directly)
+
+    // constructor-based dependency injection
+    public BootstrapController(BootstrapService bootstrapService) {
+        this.bootstrapService = bootstrapService;
+    }
+
+    // the body is the same as for /task/search (only email is required)
+    @PostMapping("/bootstrap")
+    public ResponseEntity<BootstrapResponse> bootstrap(@RequestBody TaskSearchValues taskSearchValues) {
+
+        // check required params
+        if (taskSearchValues.getEmail() == null || taskSearchValues.getEmail().trim().length() == 0) {
+            return new ResponseEntity("missed param: email", HttpStatus.NOT_ACCEPTABLE);
+        }
+
+        if (taskSearchValues.getPageNumber() == null) {
+            taskSearchValues.setPageNumber(0);
+        }
+        if (taskSearchValues.getPageSize() == null) {
+            taskSearchValues.setPageSize(DEFAULT_PAGE_SIZE);
+        }
+        if (taskSearchValues.getSortColumn() == null) {
+            taskSearchValues.setSortColumn(DEFAULT_SORT_COLUMN);
+        }
+
+        try {
+            return ResponseEntity.ok(bootstrapService.load(taskSearchValues));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity(e.getMessage(), HttpStatus.NOT_ACCEPTABLE); // unknown field in fields
+        }
+    }
+
+}
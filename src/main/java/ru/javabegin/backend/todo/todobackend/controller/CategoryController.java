@@ -1,9 +1,13 @@
 package ru.javabegin.backend.todo.todobackend.controller;
 
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
+import ru.javabegin.backend.todo.todobackend.cache.RequestCoalescer;
+import ru.javabegin.backend.todo.todobackend.cache.ResponseBytesCache;
 import ru.javabegin.backend.todo.todobackend.entity.Category;
 import ru.javabegin.backend.todo.todobackend.search.CategorySearchValues;
 import ru.javabegin.backend.todo.todobackend.service.CategoryService;
@@ -18,16 +22,37 @@ public class CategoryController {
     // this is the service layer to work with the database
     private CategoryService categoryService;
 
+    // already serialized lists of categories (dropped by CategoryService on any change)
+    private ResponseBytesCache responseBytesCache;
+
+    // misses of the bytes cache at the same time (many tabs after a change) read the list once
+    private RequestCoalescer coalescer;
+
     // constructor injection (we inject service using constructor)
     // we do not use @Autowired on the field because it is not recommended
-    public CategoryController(CategoryService categoryService) {
+    public CategoryController(CategoryService categoryService, ResponseBytesCache responseBytesCache,
+                              RequestCoalescer coalescer) {
         this.categoryService = categoryService;
+        this.responseBytesCache = responseBytesCache;
+        this.coalescer = coalescer;
     }
 
+    // ?fields=id,title - only these fields are read and returned (the full list is served from the bytes cache)
     @PostMapping("/all")
-    public List<Category> findAll(@RequestBody String email) {
-        // return all categories for this email
-        return categoryService.findAll(email);
+    public ResponseEntity<?> findAll(@RequestBody String email,
+                                     @RequestParam(value = "fields", required = false) List<String> fields,
+                                     @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        if (fields != null && !fields.isEmpty()) {
+            try {
+                return ResponseEntity.ok(categoryService.findAll(email, fields));
+            } catch (IllegalArgumentException e) {
+                return new ResponseEntity(e.getMessage(), HttpStatus.NOT_ACCEPTABLE);
+            }
+        }
+
+        // return all categories for this email (JSON bytes are reused until the categories change)
+        return responseBytesCache.respond(ResponseBytesCache.CATEGORIES, email, acceptEncoding,
+                userEmail -> coalescer.execute(ResponseBytesCache.CATEGORIES, userEmail, null, () -> categoryService.findAll(userEmail)));
     }
 
     @PostMapping("/add")
@@ -61,7 +86,14 @@ public class CategoryController {
         }
 
         // update the category
-        categoryService.update(category);
+        // the version sent by the client is checked (409 if somebody changed the category in the meantime)
+        try {
+            categoryService.update(category);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return new ResponseEntity("version conflict: category id=" + category.getId() + " was changed, read it again", HttpStatus.CONFLICT);
+        } catch (EmptyResultDataAccessException e) {
+            return new ResponseEntity("id=" + category.getId() + " not found", HttpStatus.NOT_ACCEPTABLE);
+        }
 
         // return status 200 OK
         return new ResponseEntity(HttpStatus.OK);
@@ -69,14 +101,17 @@ public class CategoryController {
 
     // delete category by ID (using DELETE method and path variable)
     @DeleteMapping("/delete/{id}")
-    public ResponseEntity delete(@PathVariable("id") Long id) {
+    public ResponseEntity delete(@PathVariable("id") Long id,
+                                 @RequestParam(value = "moveTo", required = false) Long moveTo) { // optional: move tasks to this id instead of leaving them empty
 
         // try to delete the category
         try {
-            categoryService.deleteById(id);
+            categoryService.deleteById(id, moveTo);
         } catch (EmptyResultDataAccessException e) {
             e.printStackTrace();
             return new ResponseEntity("id=" + id + " not found", HttpStatus.NOT_ACCEPTABLE);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity("moveTo=" + moveTo + " not found", HttpStatus.NOT_ACCEPTABLE);
         }
 
         // return status 200 OK if delete is successful
@@ -0,0 +1,58 @@
+package ru.javabegin.backend.todo.todobackend.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.javabegin.backend.todo.todobackend.dto.ImportResult;
+import ru.javabegin.backend.todo.todobackend.importer.ImportFormat;
+import ru.javabegin.backend.todo.todobackend.importer.TaskImportService;
+
+import java.io.IOException;
+
+
+@RestController
+@RequestMapping("/import")
+public class ImportController {
+
+    private final TaskImportService importService; // service to access data (we don't call repositories directly)
+
+    // constructor-based dependency injection
+    public ImportController(TaskImportService importService) {
+        this.importService = importService;
+    }
+
+    // body: CSV with a header (title, completed, taskDate, priority, category) or one JSON object per line;
+    // it is read as a stream (not loaded into memory), rows with errors are skipped and reported
+    @PostMapping("/tasks")
+    public ResponseEntity<ImportResult> importTasks(@RequestParam("email") String email,
+                                                    @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+                                                    HttpServletRequest request) throws IOException {
+
+        // check required params
+        if (email == null || email.trim().length() == 0) {
+            return new ResponseEntity("missed param: email", HttpStatus.NOT_ACCEPTABLE);
+        }
+
+        ImportFormat format = ImportFormat.of(contentType);
+        if (format == null) {
+            return new ResponseEntity("Content-Type must be text/csv or application/x-ndjson", HttpStatus.NOT_ACCEPTABLE);
+        }
+
+        try {
+            return ResponseEntity.ok(importService.importTasks(email, format, request.getInputStream()));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity(e.getMessage(), HttpStatus.NOT_ACCEPTABLE); // unknown user, CSV header, too many rows
+        } catch (DataAccessException e) {
+            // nothing is imported (one transaction), e.g. a title longer than the column
+            return new ResponseEntity("import failed: " + e.getMostSpecificCause().getMessage(), HttpStatus.NOT_ACCEPTABLE);
+        }
+    }
+
+}
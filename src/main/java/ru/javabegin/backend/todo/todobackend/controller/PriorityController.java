@@ -1,9 +1,13 @@
 package ru.javabegin.backend.todo.todobackend.controller;
 
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
+import ru.javabegin.backend.todo.todobackend.cache.RequestCoalescer;
+import ru.javabegin.backend.todo.todobackend.cache.ResponseBytesCache;
 import ru.javabegin.backend.todo.todobackend.entity.Priority;
 import ru.javabegin.backend.todo.todobackend.search.PrioritySearchValues;
 import ru.javabegin.backend.todo.todobackend.service.PriorityService;
@@ -23,16 +27,37 @@ public class PriorityController {
     // access to DB data
     private PriorityService priorityService;
 
+    // already serialized lists of priorities (dropped by PriorityService on any change)
+    private ResponseBytesCache responseBytesCache;
+
+    // misses of the bytes cache at the same time (many tabs after a change) read the list once
+    private RequestCoalescer coalescer;
+
     // constructor-based dependency injection
     // we do not use @Autowired on the field because "Field injection is not recommended"
-    public PriorityController(PriorityService priorityService) {
+    public PriorityController(PriorityService priorityService, ResponseBytesCache responseBytesCache,
+                              RequestCoalescer coalescer) {
         this.priorityService = priorityService;
+        this.responseBytesCache = responseBytesCache;
+        this.coalescer = coalescer;
     }
 
 
+    // ?fields=id,title - only these fields are read and returned (the full list is served from the bytes cache)
     @PostMapping("/all")
-    public List<Priority> findAll(@RequestBody String email) {
-        return priorityService.findAll(email);
+    public ResponseEntity<?> findAll(@RequestBody String email,
+                                     @RequestParam(value = "fields", required = false) List<String> fields,
+                                     @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        if (fields != null && !fields.isEmpty()) {
+            try {
+                return ResponseEntity.ok(priorityService.findAll(email, fields));
+            } catch (IllegalArgumentException e) {
+                return new ResponseEntity(e.getMessage(), HttpStatus.NOT_ACCEPTABLE);
+            }
+        }
+
+        return responseBytesCache.respond(ResponseBytesCache.PRIORITIES, email, acceptEncoding,
+                userEmail -> coalescer.execute(ResponseBytesCache.PRIORITIES, userEmail, null, () -> priorityService.findAll(userEmail)));
     }
 
 
@@ -79,7 +104,14 @@ public class PriorityController {
         }
 
         // save works for both create and update
-        priorityService.update(priority);
+        // the version sent by the client is checked (409 if somebody changed the priority in the meantime)
+        try {
+            priorityService.update(priority);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return new ResponseEntity("version conflict: priority id=" + priority.getId() + " was changed, read it again", HttpStatus.CONFLICT);
+        } catch (EmptyResultDataAccessException e) {
+            return new ResponseEntity("id=" + priority.getId() + " not found", HttpStatus.NOT_ACCEPTABLE);
+        }
 
         return new ResponseEntity(HttpStatus.OK); // just return status 200 (operation successful)
     }
@@ -105,15 +137,18 @@ public class PriorityController {
 
     // for deletion we use DELETE mapping with id in the URL path variable
     @DeleteMapping("/delete/{id}")
-    public ResponseEntity delete(@PathVariable("id") Long id) {
+    public ResponseEntity delete(@PathVariable("id") Long id,
+                                 @RequestParam(value = "moveTo", required = false) Long moveTo) { // optional: move tasks to this id instead of leaving them empty
 
         // you can avoid try-catch and get full stacktrace on error
         // here is an example of handling the exception and sending a custom message/status
         try {
-            priorityService.deleteById(id);
+            priorityService.deleteById(id, moveTo);
         } catch (EmptyResultDataAccessException e) {
             e.printStackTrace();
             return new ResponseEntity("id=" + id + " not found", HttpStatus.NOT_ACCEPTABLE);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity("moveTo=" + moveTo + " not found", HttpStatus.NOT_ACCEPTABLE);
         }
 
         return new ResponseEntity(HttpStatus.OK); // just return status 200 (operation successful)
@@ -0,0 +1,34 @@
+package ru.javabegin.backend.todo.todobackend.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.javabegin.backend.todo.todobackend.jdbc.QueryStatistics;
+import ru.javabegin.backend.todo.todobackend.jdbc.QueryStatsSnapshot;
+
+import java.util.List;
+
+// statistics of SQL statements executed by this instance (slowest by total time first)
+@RestController
+@RequestMapping("/admin/query-stats")
+public class QueryStatsController {
+
+    private final QueryStatistics queryStatistics;
+
+    public QueryStatsController(QueryStatistics queryStatistics) {
+        this.queryStatistics = queryStatistics;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<QueryStatsSnapshot>> findAll(@RequestParam(value = "limit", defaultValue = "50") int limit) {
+        return ResponseEntity.ok(queryStatistics.snapshot(limit));
+    }
+
+    // start collecting from scratch (e.g. before a load test)
+    @DeleteMapping
+    public ResponseEntity reset() {
+        queryStatistics.reset();
+        return new ResponseEntity(HttpStatus.OK);
+    }
+
+}
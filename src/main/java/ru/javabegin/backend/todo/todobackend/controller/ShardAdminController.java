@@ -0,0 +1,47 @@
+package ru.javabegin.backend.todo.todobackend.controller;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.javabegin.backend.todo.todobackend.shard.ShardRebalancer;
+import ru.javabegin.backend.todo.todobackend.shard.ShardRouter;
+
+import java.util.Map;
+
+// shards of the instance: number of slots of every shard and moving users to the shards that own their slots
+// (moves data of all users: off unless todo.shard.admin.enabled=true, only for the time of a reconfiguration)
+@RestController
+@RequestMapping("/admin/shards")
+@ConditionalOnExpression("${todo.sharding.enabled:false} and ${todo.shard.admin.enabled:false}")
+public class ShardAdminController {
+
+    private final ShardRouter router;
+    private final ShardRebalancer rebalancer;
+
+    public ShardAdminController(ShardRouter router, ShardRebalancer rebalancer) {
+        this.router = router;
+        this.rebalancer = rebalancer;
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Integer>> slots() {
+        return ResponseEntity.ok(router.slotCounts());
+    }
+
+    // starts the move on a background thread (202), progress and result: GET /admin/shards/rebalance
+    @PostMapping("/rebalance")
+    public ResponseEntity rebalance() {
+        if (!rebalancer.start()) {
+            return new ResponseEntity("rebalance is already running", HttpStatus.NOT_ACCEPTABLE);
+        }
+        return new ResponseEntity(rebalancer.status(), HttpStatus.ACCEPTED);
+    }
+
+    // running, moved (shard -> number of users moved from it in the last run), error
+    @GetMapping("/rebalance")
+    public ResponseEntity<Map<String, Object>> rebalanceStatus() {
+        return ResponseEntity.ok(rebalancer.status());
+    }
+
+}
@@ -4,6 +4,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import ru.javabegin.backend.todo.todobackend.cache.RequestCoalescer;
 import ru.javabegin.backend.todo.todobackend.entity.Stat;
 import ru.javabegin.backend.todo.todobackend.service.StatService;
 
@@ -15,11 +16,13 @@ import ru.javabegin.backend.todo.todobackend.service.StatService;
 public class StatController {
 
     private final StatService statService; // service to access data (we don't call repositories directly)
+    private final RequestCoalescer coalescer; // identical reads at the same time are executed once
 
     // constructor-based dependency injection
     // we don't use @Autowired on the field because "Field injection is not recommended"
-    public StatController(StatService statService) {
+    public StatController(StatService statService, RequestCoalescer coalescer) {
         this.statService = statService;
+        this.coalescer = coalescer;
     }
 
 
@@ -28,7 +31,7 @@ public class StatController {
     public ResponseEntity<Stat> findByEmail(@RequestBody String email) {
 
         // you can skip ResponseEntity and just return the collection, status code will still be 200 OK
-        return ResponseEntity.ok(statService.findStat(email));
+        return ResponseEntity.ok(coalescer.execute("stat", email, null, () -> statService.findStat(email)));
     }
 
 
@@ -1,18 +1,27 @@
 package ru.javabegin.backend.todo.todobackend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.javabegin.backend.todo.todobackend.cache.RequestCoalescer;
+import ru.javabegin.backend.todo.todobackend.dto.TaskKeysetPage;
 import ru.javabegin.backend.todo.todobackend.entity.Category;
 import ru.javabegin.backend.todo.todobackend.entity.Task;
+import ru.javabegin.backend.todo.todobackend.repo.TaskSort;
+import ru.javabegin.backend.todo.todobackend.search.CategoryTaskValues;
+import ru.javabegin.backend.todo.todobackend.search.TaskPatchValues;
 import ru.javabegin.backend.todo.todobackend.search.TaskSearchValues;
 import ru.javabegin.backend.todo.todobackend.service.TaskService;
 
 import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
 
 
@@ -23,13 +32,26 @@ import java.util.*;
 public class TaskController {
 
     public static final String ID_COLUMN = "id"; // name of the ID column
+    private static final String SEARCH_REGION = "task.search"; // name of the reads in RequestCoalescer (metrics tag)
+
+    // tasks of a category by pages
+    private static final int DEFAULT_CATEGORY_PAGE_SIZE = 100;
+    private static final int MAX_CATEGORY_PAGE_SIZE = 1000;
+    private static final int STREAM_PAGE_SIZE = 500;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final String TITLE_TOO_LONG = "title is longer than " + Task.MAX_TITLE_LENGTH + " characters";
+
     private final TaskService taskService; // service to access data (we don't call repositories directly)
+    private final RequestCoalescer coalescer; // identical searches at the same time are executed once
+    private final ObjectMapper objectMapper; // tasks of /category/stream are written one by one
 
 
     // constructor-based dependency injection
     // we don't use @Autowired on the class field because "Field injection is not recommended"
-    public TaskController(TaskService taskService) {
+    public TaskController(TaskService taskService, RequestCoalescer coalescer, ObjectMapper objectMapper) {
         this.taskService = taskService;
+        this.coalescer = coalescer;
+        this.objectMapper = objectMapper;
     }
 
 
@@ -52,6 +74,73 @@ public class TaskController {
         return ResponseEntity.ok(tasks);
     }
 
+    // tasks of the category by pages in the order (taskDate, id), only of the given user
+    @PostMapping("/category/page")
+    public ResponseEntity<TaskKeysetPage> getTasksByCategoryPage(@RequestBody CategoryTaskValues values) {
+
+        ResponseEntity error = checkCategoryValues(values);
+        if (error != null) {
+            return error;
+        }
+
+        int size = values.getPageSize() != null ? values.getPageSize() : DEFAULT_CATEGORY_PAGE_SIZE;
+        if (size < 1 || size > MAX_CATEGORY_PAGE_SIZE) {
+            return new ResponseEntity("pageSize must be 1.." + MAX_CATEGORY_PAGE_SIZE, HttpStatus.NOT_ACCEPTABLE);
+        }
+
+        try {
+            return ResponseEntity.ok(taskService.findByCategoryAfter(values.getEmail(), values.getCategoryId(), values.getAfter(), size));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity(e.getMessage(), HttpStatus.NOT_ACCEPTABLE);
+        }
+    }
+
+    // all tasks of the category as NDJSON (one task per line), read page by page: memory and DB connection
+    // are used only for one page at a time, the client gets the first tasks at once
+    @PostMapping("/category/stream")
+    public ResponseEntity<StreamingResponseBody> getTasksByCategoryStream(@RequestBody CategoryTaskValues values) {
+
+        ResponseEntity error = checkCategoryValues(values);
+        if (error != null) {
+            return error;
+        }
+
+        // the first page is read here: a wrong cursor is still answered with 406
+        TaskKeysetPage first;
+        try {
+            first = taskService.findByCategoryAfter(values.getEmail(), values.getCategoryId(), values.getAfter(), STREAM_PAGE_SIZE);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity(e.getMessage(), HttpStatus.NOT_ACCEPTABLE);
+        }
+
+        StreamingResponseBody body = out -> {
+            TaskKeysetPage page = first;
+            while (true) {
+                for (Task task : page.getTasks()) {
+                    out.write(objectMapper.writeValueAsBytes(task));
+                    out.write('\n');
+                }
+                out.flush();
+                if (page.getNext() == null) {
+                    break;
+                }
+                page = taskService.findByCategoryAfter(values.getEmail(), values.getCategoryId(), page.getNext(), STREAM_PAGE_SIZE);
+            }
+        };
+
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    private static ResponseEntity checkCategoryValues(CategoryTaskValues values) {
+        if (values.getEmail() == null || values.getEmail().trim().length() == 0) {
+            return new ResponseEntity("missed param: email", HttpStatus.NOT_ACCEPTABLE);
+        }
+        if (values.getCategoryId() == null || values.getCategoryId() == 0) {
+            return new ResponseEntity("missed param: categoryId", HttpStatus.NOT_ACCEPTABLE);
+        }
+        return null;
+    }
+
     // add new task
     @PostMapping("/add")
     public ResponseEntity<Task> add(@RequestBody Task task) {
@@ -67,6 +156,10 @@ public class TaskController {
             return new ResponseEntity("missed param: title", HttpStatus.NOT_ACCEPTABLE);
         }
 
+        if (task.getTitle().length() > Task.MAX_TITLE_LENGTH) {
+            return new ResponseEntity(TITLE_TOO_LONG, HttpStatus.NOT_ACCEPTABLE);
+        }
+
         return ResponseEntity.ok(taskService.add(task)); // return created object with generated id
 
     }
@@ -74,7 +167,7 @@ public class TaskController {
 
     // update existing task
     @PutMapping("/update")
-    public ResponseEntity<Task> update(@RequestBody Task task) {
+    public ResponseEntity<Long> update(@RequestBody Task task) {
 
         // check required fields
         if (task.getId() == null || task.getId() == 0) {
@@ -86,15 +179,54 @@ public class TaskController {
             return new ResponseEntity("missed param: title", HttpStatus.NOT_ACCEPTABLE);
         }
 
+        if (task.getTitle().length() > Task.MAX_TITLE_LENGTH) {
+            return new ResponseEntity(TITLE_TOO_LONG, HttpStatus.NOT_ACCEPTABLE);
+        }
 
-        // save works for both adding and updating
-        taskService.update(task);
 
-        return new ResponseEntity(HttpStatus.OK); // just return status 200 (operation succeeded)
+        // one UPDATE with version check (the task is not read before)
+        long version;
+        try {
+            version = taskService.update(task);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return new ResponseEntity("version conflict: task id=" + task.getId() + " was changed, read it again", HttpStatus.CONFLICT);
+        } catch (EmptyResultDataAccessException e) {
+            return new ResponseEntity("id=" + task.getId() + " not found", HttpStatus.NOT_ACCEPTABLE);
+        }
+
+        return new ResponseEntity(version, HttpStatus.OK); // new version of the task (for the next update)
 
     }
 
 
+    // partial update: only the fields present in the JSON are changed
+    @PatchMapping("/update")
+    public ResponseEntity<Long> patch(@RequestBody TaskPatchValues patch) {
+
+        // check required fields
+        if (patch.getId() == null || patch.getId() == 0) {
+            return new ResponseEntity("missed param: id", HttpStatus.NOT_ACCEPTABLE);
+        }
+
+        // title can't be cleared
+        if (patch.getChanges().containsKey("title") && (patch.getTitle() == null || patch.getTitle().trim().length() == 0)) {
+            return new ResponseEntity("missed param: title", HttpStatus.NOT_ACCEPTABLE);
+        }
+
+        if (patch.getChanges().containsKey("title") && patch.getTitle().length() > Task.MAX_TITLE_LENGTH) {
+            return new ResponseEntity(TITLE_TOO_LONG, HttpStatus.NOT_ACCEPTABLE);
+        }
+
+        try {
+            return ResponseEntity.ok(taskService.patch(patch)); // new version of the task
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return new ResponseEntity("version conflict: task id=" + patch.getId() + " was changed, read it again", HttpStatus.CONFLICT);
+        } catch (EmptyResultDataAccessException e) {
+            return new ResponseEntity("id=" + patch.getId() + " not found", HttpStatus.NOT_ACCEPTABLE);
+        }
+    }
+
+
     // for deletion, we use DELETE with id in URL, not PUT,
     // because DELETE is more suitable and RESTful for removing resources
     @DeleteMapping("/delete/{id}")
@@ -133,22 +265,7 @@ public class TaskController {
 
     // search by any parameters in TaskSearchValues
     @PostMapping("/search")
-    public ResponseEntity<Page<Task>> search(@RequestBody TaskSearchValues taskSearchValues) throws ParseException {
-
-        // avoid NullPointerException
-        String title = taskSearchValues.getTitle() != null ? taskSearchValues.getTitle() : null;
-
-        // convert Boolean to Integer
-        Boolean completed = taskSearchValues.getCompleted() != null && taskSearchValues.getCompleted() == 1 ? true : false;
-
-        Long priorityId = taskSearchValues.getPriorityId() != null ? taskSearchValues.getPriorityId() : null;
-        Long categoryId = taskSearchValues.getCategoryId() != null ? taskSearchValues.getCategoryId() : null;
-
-        String sortColumn = taskSearchValues.getSortColumn() != null ? taskSearchValues.getSortColumn() : null;
-        String sortDirection = taskSearchValues.getSortDirection() != null ? taskSearchValues.getSortDirection() : null;
-
-        Integer pageNumber = taskSearchValues.getPageNumber() != null ? taskSearchValues.getPageNumber() : null;
-        Integer pageSize = taskSearchValues.getPageSize() != null ? taskSearchValues.getPageSize() : null;
+    public ResponseEntity<Page<?>> search(@RequestBody TaskSearchValues taskSearchValues) throws ParseException {
 
         String email = taskSearchValues.getEmail() != null ? taskSearchValues.getEmail() : null; // to show tasks for this user only
 
@@ -157,67 +274,50 @@ public class TaskController {
             return new ResponseEntity("missed param: email", HttpStatus.NOT_ACCEPTABLE);
         }
 
-
-        // to capture all tasks within date range regardless of time - set times from 00:00 to 23:59
-
-        Date dateFrom = null;
-        Date dateTo = null;
-
-
-        // set time to 00:01 for start date (if specified)
-        if (taskSearchValues.getDateFrom() != null) {
-            Calendar calendarFrom = Calendar.getInstance();
-            calendarFrom.setTime(taskSearchValues.getDateFrom());
-            calendarFrom.set(Calendar.HOUR_OF_DAY, 0);
-            calendarFrom.set(Calendar.MINUTE, 1);
-            calendarFrom.set(Calendar.SECOND, 1);
-            calendarFrom.set(Calendar.MILLISECOND, 1);
-
-            dateFrom = calendarFrom.getTime(); // set start date time to 00:01
-
+        // only sort columns with an index (a sort by any other column reads all tasks of the user)
+        try {
+            TaskSort.of(taskSearchValues.getSortColumn());
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity(e.getMessage(), HttpStatus.NOT_ACCEPTABLE);
         }
 
+        List<Object> key = searchKey(taskSearchValues);
 
-        // set time to 23:59 for end date (if specified)
-        if (taskSearchValues.getDateTo() != null) {
-
-            Calendar calendarTo = Calendar.getInstance();
-            calendarTo.setTime(taskSearchValues.getDateTo());
-            calendarTo.set(Calendar.HOUR_OF_DAY, 23);
-            calendarTo.set(Calendar.MINUTE, 59);
-            calendarTo.set(Calendar.SECOND, 59);
-            calendarTo.set(Calendar.MILLISECOND, 999);
-
-            dateTo = calendarTo.getTime(); // set end date time to 23:59
-
+        // only the requested fields (e.g. ["id", "title", "completed"]) are read and returned
+        if (taskSearchValues.getFields() != null && !taskSearchValues.getFields().isEmpty()) {
+            try {
+                return ResponseEntity.ok(coalescer.execute(SEARCH_REGION, email, key, () -> taskService.searchFields(taskSearchValues)));
+            } catch (IllegalArgumentException e) {
+                return new ResponseEntity(e.getMessage(), HttpStatus.NOT_ACCEPTABLE);
+            }
         }
 
-
-        // sort direction
-        Sort.Direction direction = sortDirection == null || sortDirection.trim().length() == 0 || sortDirection.trim().equals("asc") ? Sort.Direction.ASC : Sort.Direction.DESC;
-
-        /* We add ID as the second sort field to ensure a consistent order.
-           For example, if two tasks have the same priority and we sort by that field,
-           the order of those two records could vary on each query since no secondary sort is specified.
-           Using ID as the secondary sort field guarantees consistent ordering of tasks with identical priority.
-         */
-
-        // create sort object with column and direction
-        Sort sort = Sort.by(direction, sortColumn, ID_COLUMN);
-
-        // pagination object
-        PageRequest pageRequest = PageRequest.of(pageNumber, pageSize, sort);
-
-        // query result with pagination
-        Page<Task> result = taskService.findByParams(title, completed, priorityId, categoryId, email, dateFrom, dateTo, pageRequest);
-
-        // return query result
-        return ResponseEntity.ok(result);
+        // parameters are converted in the service (the same search is a part of /bootstrap)
+        return ResponseEntity.ok(coalescer.execute(SEARCH_REGION, email, key, () -> taskService.search(taskSearchValues)));
 
     }
 
+    // search parameters as the service sees them: requests that differ only in ignored details execute one query
+    private static List<Object> searchKey(TaskSearchValues values) {
+        String direction = values.getSortDirection() == null || values.getSortDirection().trim().length() == 0
+                || values.getSortDirection().trim().equals("asc") ? "asc" : "desc";
+        return Arrays.asList( // allows nulls, compares elements
+                values.getTitle() != null && !values.getTitle().isEmpty() ? values.getTitle().toLowerCase(Locale.ROOT) : null, // "like" ignores the case
+                values.getCompleted() != null && values.getCompleted() == 1, // null is the same as 0
+                values.getPriorityId(),
+                values.getCategoryId(),
+                day(values.getDateFrom()), // only the day is used
+                day(values.getDateTo()),
+                Boolean.TRUE.equals(values.getArchived()),
+                values.getPageNumber(),
+                values.getPageSize(),
+                values.getSortColumn(),
+                direction,
+                values.getFields());
+    }
 
-
-
+    private static LocalDate day(Date date) {
+        return date != null ? LocalDate.ofInstant(date.toInstant(), ZoneId.systemDefault()) : null;
+    }
 
 }
@@ -0,0 +1,22 @@
+package ru.javabegin.backend.todo.todobackend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Page;
+import ru.javabegin.backend.todo.todobackend.entity.Category;
+import ru.javabegin.backend.todo.todobackend.entity.Priority;
+import ru.javabegin.backend.todo.todobackend.entity.Stat;
+
+import java.util.List;
+
+// everything the frontend loads after login (the same objects as /category/all, /priority/all, /stat and /task/search)
+@Getter
+@AllArgsConstructor
+public class BootstrapResponse {
+
+    private List<Category> categories;
+    private List<Priority> priorities;
+    private Stat stat;
+    private Page<?> tasks; // whole tasks or only the selected fields (TaskSearchValues.fields)
+
+}
@@ -0,0 +1,21 @@
+package ru.javabegin.backend.todo.todobackend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+// result of /import/tasks
+@Getter
+@AllArgsConstructor
+public class ImportResult {
+
+    private long tasks; // imported tasks
+    private long categories; // created categories (titles that the user didn't have)
+    private long priorities; // created priorities
+    private long rejected; // rows that were skipped
+    private List<String> errors; // first errors ("line N: ...")
+    private boolean triggersBypassed; // counters were recalculated once instead of by per-row triggers
+    private long millis;
+
+}
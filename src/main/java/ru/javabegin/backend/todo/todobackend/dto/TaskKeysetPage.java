@@ -0,0 +1,17 @@
+package ru.javabegin.backend.todo.todobackend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.javabegin.backend.todo.todobackend.entity.Task;
+
+import java.util.List;
+
+// one page of tasks in the order (taskDate, id); next is sent as "after" to get the next page (null - no more tasks)
+@Getter
+@AllArgsConstructor
+public class TaskKeysetPage {
+
+    private List<Task> tasks;
+    private String next;
+
+}
@@ -0,0 +1,80 @@
+package ru.javabegin.backend.todo.todobackend.entity;
+
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.type.NumericBooleanConverter;
+
+import java.util.Date;
+import java.util.Objects;
+
+/*
+
+Old completed task moved to the archive (read only)
+
+*/
+
+@Entity
+@Table(name = "task_archive", schema = "todolist", catalog = "postgres")
+@Immutable // rows are written only by TaskArchiveJob (native SQL)
+@NoArgsConstructor
+@Setter
+@Getter
+public class ArchivedTask {
+
+    @Id
+    private Long id; // id of the task before archiving (unique: taken from the task sequence)
+
+    private String title;
+
+    @Convert(converter = NumericBooleanConverter.class)
+    private Boolean completed;
+
+    @Column(name = "task_date")
+    private Date taskDate;
+
+    @ManyToOne
+    @JoinColumn(name = "priority_id", referencedColumnName = "id")
+    private Priority priority;
+
+    @ManyToOne
+    @JoinColumn(name = "category_id", referencedColumnName = "id")
+    private Category category;
+
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", referencedColumnName = "id")
+    private User user;
+
+    private Long version;
+
+    @Column(name = "archived_at")
+    private Date archivedAt;
+
+    // same JSON for the client as a usual task
+    public Task toTask() {
+        return new Task(id, title, completed, taskDate, priority, category, null, version);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ArchivedTask task = (ArchivedTask) o;
+        return id.equals(task.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+}
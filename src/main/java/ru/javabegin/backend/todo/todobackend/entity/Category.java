@@ -9,6 +9,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 
 import java.util.Objects;
@@ -30,6 +31,7 @@ Contains statistics for each category
 @Getter
 @Cacheable
 @org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@DynamicUpdate // UPDATE contains only changed columns
 public class Category {
 
     // specify that the field is populated in the DB
@@ -51,6 +53,10 @@ public class Category {
     @JoinColumn(name = "user_id", referencedColumnName = "id") // which fields link these two objects (foreign key)
     private User user;
 
+    // optimistic locking: an update with an old version is rejected (the client must read the object again)
+    @Version
+    private Long version;
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -8,6 +8,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 
 import java.util.Objects;
@@ -22,6 +23,7 @@ import java.util.Objects;
 @Getter
 @Cacheable
 @org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@DynamicUpdate // UPDATE contains only changed columns
 public class Priority {
 
 
@@ -37,6 +39,10 @@ public class Priority {
     @JoinColumn(name = "user_id", referencedColumnName = "id")
     private User user;
 
+    // optimistic locking: an update with an old version is rejected (the client must read the object again)
+    @Version
+    private Long version;
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
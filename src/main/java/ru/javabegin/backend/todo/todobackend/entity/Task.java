@@ -9,6 +9,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.Type;
 
 import org.hibernate.type.NumericBooleanConverter;
@@ -30,8 +31,13 @@ User tasks
 @Getter
 @Cacheable
 @org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@DynamicUpdate // UPDATE contains only changed columns
 public class Task {
 
+    // the title is a column of the sort index (user_id, title, id): a B-tree entry must fit into ~2700 bytes,
+    // 500 chars are at most 1500 bytes in UTF-8 (longer titles are rejected instead of failing the INSERT)
+    public static final int MAX_TITLE_LENGTH = 500;
+
     // specify that the field is generated in the DB
     // necessary when adding a new object and returning it with a new id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -62,6 +68,10 @@ public class Task {
     @JoinColumn(name = "user_id", referencedColumnName = "id") // fields to join by (foreign key)
     private User user; // for which user the task belongs
 
+    // optimistic locking: an update with an old version is rejected (the client must read the object again)
+    @Version
+    private Long version;
+
 
     @Override
     public boolean equals(Object o) {
@@ -0,0 +1,17 @@
+package ru.javabegin.backend.todo.todobackend.importer;
+
+// a row of the import file that can't be imported
+public class ImportException extends RuntimeException {
+
+    private final long line;
+
+    public ImportException(long line, String message) {
+        super("line " + line + ": " + message);
+        this.line = line;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+}
@@ -0,0 +1,31 @@
+package ru.javabegin.backend.todo.todobackend.importer;
+
+import org.springframework.http.MediaType;
+
+// formats of /import/tasks, chosen by Content-Type
+public enum ImportFormat {
+
+    CSV("text/csv"),
+    NDJSON("application/x-ndjson");
+
+    private final MediaType mediaType;
+
+    ImportFormat(String mediaType) {
+        this.mediaType = MediaType.parseMediaType(mediaType);
+    }
+
+    // null if the content type is not supported
+    public static ImportFormat of(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        MediaType type = MediaType.parseMediaType(contentType);
+        for (ImportFormat format : values()) {
+            if (format.mediaType.includes(type)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,7 @@
+package ru.javabegin.backend.todo.todobackend.importer;
+
+import java.time.LocalDateTime;
+
+// one task of an import file; priority and category are given by title (null - without)
+record ImportRow(long line, String title, boolean completed, LocalDateTime taskDate, String priority, String category) {
+}
@@ -0,0 +1,234 @@
+package ru.javabegin.backend.todo.todobackend.importer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ru.javabegin.backend.todo.todobackend.entity.Task;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+
+Reads the rows of an import file one by one (the file is never loaded into memory as a whole).
+
+CSV: first line is the header with column names title, completed, taskDate, priority, category (any order, only title
+is required), values may be quoted ("..." with "" for a quote, line breaks inside quotes are allowed).
+NDJSON: one JSON object per line with the same names.
+
+completed: 1/0, true/false, yes/no (empty - false)
+taskDate: 2024-05-31, 2024-05-31 10:00[:00], 2024-05-31T10:00:00[.000][Z|+03:00] or epoch milliseconds
+
+*/
+
+abstract class ImportRowReader {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault(); // task_date has no time zone, as dates written by the application
+
+    protected final BufferedReader reader;
+    protected long line;
+
+    ImportRowReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    static ImportRowReader csv(BufferedReader reader) {
+        return new Csv(reader);
+    }
+
+    static ImportRowReader ndjson(BufferedReader reader, ObjectMapper objectMapper) {
+        return new Ndjson(reader, objectMapper);
+    }
+
+    // next row or null at the end; ImportException for a row that can't be imported (reading may continue)
+    abstract ImportRow next() throws IOException;
+
+    long line() {
+        return line;
+    }
+
+    protected ImportRow row(long rowLine, String title, String completed, String taskDate, String priority, String category) {
+        if (title == null || title.trim().isEmpty()) {
+            throw new ImportException(rowLine, "missed value: title");
+        }
+        if (title.trim().length() > Task.MAX_TITLE_LENGTH) {
+            throw new ImportException(rowLine, "title is longer than " + Task.MAX_TITLE_LENGTH + " characters");
+        }
+        return new ImportRow(rowLine, title.trim(), completed(rowLine, completed), date(rowLine, taskDate),
+                blankToNull(priority), blankToNull(category));
+    }
+
+    private static boolean completed(long rowLine, String value) {
+        if (value == null || value.isBlank()) {
+            return false;
+        }
+        return switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "1", "true", "yes" -> true;
+            case "0", "false", "no" -> false;
+            default -> throw new ImportException(rowLine, "wrong value of completed: " + value);
+        };
+    }
+
+    private static LocalDateTime date(long rowLine, String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String text = value.trim();
+        try {
+            if (text.chars().allMatch(Character::isDigit)) {
+                return LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(text)), ZONE);
+            }
+            if (text.length() == 10) {
+                return LocalDate.parse(text).atStartOfDay();
+            }
+            String iso = text.replace(' ', 'T');
+            if (iso.endsWith("Z") || iso.matches(".*[+-]\\d\\d:\\d\\d$")) {
+                return OffsetDateTime.parse(iso).atZoneSameInstant(ZONE).toLocalDateTime();
+            }
+            return LocalDateTime.parse(iso);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new ImportException(rowLine, "wrong value of taskDate: " + value);
+        }
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private static final class Csv extends ImportRowReader {
+
+        private Map<String, Integer> columns; // name -> index (from the header)
+
+        Csv(BufferedReader reader) {
+            super(reader);
+        }
+
+        @Override
+        ImportRow next() throws IOException {
+            if (columns == null) {
+                List<String> header = record();
+                if (header == null) {
+                    return null;
+                }
+                columns = new HashMap<>();
+                for (int i = 0; i < header.size(); i++) {
+                    columns.put(header.get(i).trim().toLowerCase(Locale.ROOT).replace("_", ""), i);
+                }
+                if (!columns.containsKey("title")) {
+                    throw new IllegalArgumentException("no column title in the CSV header"); // nothing can be imported
+                }
+            }
+
+            List<String> values;
+            do {
+                values = record();
+                if (values == null) {
+                    return null;
+                }
+            } while (values.size() == 1 && values.get(0).isEmpty()); // empty line
+
+            long rowLine = line;
+            return row(rowLine, value(values, "title"), value(values, "completed"), value(values, "taskdate"),
+                    value(values, "priority"), value(values, "category"));
+        }
+
+        private String value(List<String> values, String column) {
+            Integer index = columns.get(column);
+            return index != null && index < values.size() ? values.get(index) : null;
+        }
+
+        // one CSV record (may take several lines if a quoted value has line breaks), null at the end
+        private List<String> record() throws IOException {
+            int c = reader.read();
+            if (c < 0) {
+                return null;
+            }
+            line++;
+
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            while (c >= 0) {
+                if (quoted) {
+                    if (c == '"') {
+                        reader.mark(1);
+                        int following = reader.read();
+                        if (following == '"') {
+                            value.append('"');
+                        } else {
+                            quoted = false;
+                            reader.reset();
+                        }
+                    } else {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        value.append((char) c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else if (c == '\n') {
+                    break;
+                } else if (c != '\r') {
+                    value.append((char) c);
+                }
+                c = reader.read();
+            }
+            values.add(value.toString());
+            return values;
+        }
+    }
+
+    private static final class Ndjson extends ImportRowReader {
+
+        private final ObjectMapper objectMapper;
+
+        Ndjson(BufferedReader reader, ObjectMapper objectMapper) {
+            super(reader);
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        ImportRow next() throws IOException {
+            String text;
+            do {
+                text = reader.readLine();
+                if (text == null) {
+                    return null;
+                }
+                line++;
+            } while (text.isBlank());
+
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(text);
+            } catch (IOException e) {
+                throw new ImportException(line, "not a JSON object");
+            }
+            if (!node.isObject()) {
+                throw new ImportException(line, "not a JSON object");
+            }
+            return row(line, text(node, "title"), text(node, "completed"), text(node, "taskDate"),
+                    text(node, "priority"), text(node, "category"));
+        }
+
+        private static String text(JsonNode node, String field) {
+            JsonNode value = node.get(field);
+            return value == null || value.isNull() ? null : value.asText();
+        }
+    }
+
+}
@@ -0,0 +1,297 @@
+package ru.javabegin.backend.todo.todobackend.importer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.java.Log;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.javabegin.backend.todo.todobackend.cache.UserCacheEvictor;
+import ru.javabegin.backend.todo.todobackend.dto.ImportResult;
+import ru.javabegin.backend.todo.todobackend.outbox.OutboxWriter;
+import ru.javabegin.backend.todo.todobackend.repo.CategoryRepository;
+import ru.javabegin.backend.todo.todobackend.repo.TaskArchiveRepository;
+import ru.javabegin.backend.todo.todobackend.service.RowTriggers;
+import ru.javabegin.backend.todo.todobackend.shard.ShardRouter;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+
+Import of many tasks at once (customers moving from other tools), in one transaction:
+
+1. rows are read from the uploaded stream one by one, category/priority titles are resolved to ids from the user's
+   existing categories/priorities (loaded into memory once), rows are sent with COPY into a temporary staging table;
+2. titles the user doesn't have yet become new categories/priorities (one INSERT ... SELECT DISTINCT each);
+3. one INSERT ... SELECT moves the staged rows into todolist.task.
+
+The counter triggers of todolist.task would run once per row. If the DB user may set session_replication_role
+(todo.import.bypass-triggers), triggers are off for this transaction (RowTriggers) and the counters of the user and of the touched
+categories are recalculated once at the end; the cache invalidation notification is then sent by hand.
+Otherwise the import still works, with the triggers.
+
+*/
+
+@Service
+@Log
+public class TaskImportService {
+
+    private static final int MAX_ERRORS = 20; // errors returned to the client
+    private static final int COPY_BUFFER_CHARS = 64 * 1024;
+    private static final String DEFAULT_PRIORITY_COLOR = "#ffffff";
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final CategoryRepository categoryRepository;
+    private final TaskArchiveRepository archiveRepository; // recalculateStat (totals include archived tasks)
+    private final UserCacheEvictor cacheEvictor;
+    private final ShardRouter router;
+    private final OutboxWriter outbox; // created events of the imported rows (one INSERT ... SELECT each)
+    private final ObjectMapper objectMapper;
+    private final RowTriggers rowTriggers;
+
+    private final boolean bypassTriggers;
+    private final long maxRows;
+
+    public TaskImportService(DataSource dataSource,
+                             JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             CategoryRepository categoryRepository,
+                             TaskArchiveRepository archiveRepository,
+                             UserCacheEvictor cacheEvictor,
+                             ShardRouter router,
+                             OutboxWriter outbox,
+                             ObjectMapper objectMapper,
+                             RowTriggers rowTriggers,
+                             @Value("${todo.import.bypass-triggers:true}") boolean bypassTriggers,
+                             @Value("${todo.import.max-rows:1000000}") long maxRows) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.categoryRepository = categoryRepository;
+        this.archiveRepository = archiveRepository;
+        this.cacheEvictor = cacheEvictor;
+        this.router = router;
+        this.outbox = outbox;
+        this.objectMapper = objectMapper;
+        this.rowTriggers = rowTriggers;
+        this.bypassTriggers = bypassTriggers;
+        this.maxRows = maxRows;
+    }
+
+    // IllegalArgumentException: unknown user, wrong CSV header or too many rows (nothing is imported)
+    public ImportResult importTasks(String email, ImportFormat format, InputStream body) {
+        long started = System.nanoTime();
+
+        // the email is a request parameter, so the shard of the user is chosen here
+        ImportResult result = router.forUser(email, () -> transaction.execute(status -> {
+            Connection connection = DataSourceUtils.getConnection(dataSource); // the connection of this transaction
+            try {
+                return importTasks(connection, email, format, body, started);
+            } catch (SQLException e) {
+                throw jdbcTemplate.getExceptionTranslator().translate("task import", null, e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                DataSourceUtils.releaseConnection(connection, dataSource);
+            }
+        }));
+
+        log.info("Imported " + result.getTasks() + " tasks for " + email + " in " + result.getMillis() + " ms (" +
+                result.getRejected() + " rows rejected, triggers bypassed: " + result.isTriggersBypassed() + ")");
+        return result;
+    }
+
+    private ImportResult importTasks(Connection connection, String email, ImportFormat format, InputStream body, long started)
+            throws SQLException, IOException {
+        Long userId = jdbcTemplate.query("select id from todolist.user_data where email = ?",
+                rs -> rs.next() ? rs.getLong(1) : null, email);
+        if (userId == null) {
+            throw new IllegalArgumentException("user not found: " + email);
+        }
+
+        boolean triggersBypassed = bypassTriggers && rowTriggers.disable();
+
+        Map<String, Long> categories = titles("select title, id from todolist.category where user_id = ? order by id", userId);
+        Map<String, Long> priorities = titles("select title, id from todolist.priority where user_id = ? order by id", userId);
+
+        jdbcTemplate.execute("create temporary table task_import (line bigint, title text, completed integer, task_date timestamp, " +
+                "priority_id bigint, category_id bigint, priority_title text, category_title text) on commit drop");
+
+        // 1. rows -> staging table
+        long rows = 0;
+        long rejected = 0;
+        List<String> errors = new ArrayList<>();
+
+        BufferedReader input = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        ImportRowReader reader = format == ImportFormat.CSV ? ImportRowReader.csv(input) : ImportRowReader.ndjson(input, objectMapper);
+
+        CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn("copy task_import " +
+                "(line, title, completed, task_date, priority_id, category_id, priority_title, category_title) from stdin with (format csv)");
+        try {
+            StringBuilder buffer = new StringBuilder(COPY_BUFFER_CHARS + 1024);
+            while (true) {
+                ImportRow row;
+                try {
+                    row = reader.next();
+                } catch (ImportException e) {
+                    if (rejected++ < MAX_ERRORS) {
+                        errors.add(e.getMessage());
+                    }
+                    continue;
+                }
+                if (row == null) {
+                    break;
+                }
+                if (++rows > maxRows) {
+                    throw new IllegalArgumentException("more than " + maxRows + " rows (todo.import.max-rows)");
+                }
+
+                append(buffer, row, priorities.get(row.priority()), categories.get(row.category()));
+                if (buffer.length() >= COPY_BUFFER_CHARS) {
+                    write(copy, buffer);
+                }
+            }
+            write(copy, buffer);
+            copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+
+        // 2. new categories and priorities (titles that were not found in memory)
+        long newCategories = jdbcTemplate.update(outbox.withCreatedEvents("category",
+                "insert into todolist.category (title, completed_count, uncompleted_count, user_id) " +
+                "select distinct category_title, 0, 0, ? from task_import where category_title is not null"), userId);
+        if (newCategories > 0) {
+            jdbcTemplate.update("update task_import s set category_id = c.id from todolist.category c " +
+                    "where s.category_title is not null and c.user_id = ? and c.title = s.category_title", userId);
+        }
+        long newPriorities = jdbcTemplate.update(outbox.withCreatedEvents("priority",
+                "insert into todolist.priority (title, color, user_id) " +
+                "select distinct priority_title, ?, ? from task_import where priority_title is not null"), DEFAULT_PRIORITY_COLOR, userId);
+        if (newPriorities > 0) {
+            jdbcTemplate.update("update task_import s set priority_id = p.id from todolist.priority p " +
+                    "where s.priority_title is not null and p.user_id = ? and p.title = s.priority_title", userId);
+        }
+
+        if (triggersBypassed) {
+            checkReferences(userId);
+        }
+
+        // 3. staging -> tasks (in the order of the file)
+        long tasks = jdbcTemplate.update(outbox.withCreatedEvents("task",
+                "insert into todolist.task (title, completed, task_date, priority_id, category_id, user_id) " +
+                "select title, completed, task_date, priority_id, category_id, ? from task_import order by line"), userId);
+
+        if (triggersBypassed) {
+            // what the row triggers would have done, once for all rows
+            List<Long> categoryIds = jdbcTemplate.queryForList(
+                    "select distinct category_id from task_import where category_id is not null", Long.class);
+            if (!categoryIds.isEmpty()) {
+                categoryRepository.recalculateCounters(categoryIds);
+            }
+            archiveRepository.recalculateStat(List.of(userId));
+            // other nodes drop their caches of the user (as after the notification trigger)
+            rowTriggers.notifyChanged("task", userId);
+        }
+
+        // this node ignores its own notifications
+        cacheEvictor.evictByUserId(userId);
+
+        return new ImportResult(tasks, newCategories, newPriorities, rejected, errors, triggersBypassed,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // title -> id of the user's categories/priorities (the oldest one for equal titles)
+    private Map<String, Long> titles(String sql, Long userId) {
+        Map<String, Long> titles = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            titles.putIfAbsent(rs.getString(1), rs.getLong(2));
+        }, userId);
+        return titles;
+    }
+
+    // replica mode turns off the foreign key triggers too: what they would check (and lock) for every row is done here
+    // once - the user, categories and priorities of the staging rows exist and belong to the user; they are locked
+    // (FOR KEY SHARE, as the foreign key check does) so that they can't be deleted before the import commits
+    private void checkReferences(Long userId) {
+        jdbcTemplate.query("select id from todolist.user_data where id = ? for key share", rs -> {
+        }, userId);
+        jdbcTemplate.query("select id from todolist.category where user_id = ? and id in " +
+                "(select category_id from task_import) for key share", rs -> {
+        }, userId);
+        jdbcTemplate.query("select id from todolist.priority where user_id = ? and id in " +
+                "(select priority_id from task_import) for key share", rs -> {
+        }, userId);
+
+        Long invalid = jdbcTemplate.queryForObject("select count(*) from task_import s where " +
+                "(s.category_id is not null and not exists (select 1 from todolist.category c where c.id = s.category_id and c.user_id = ?)) or " +
+                "(s.priority_id is not null and not exists (select 1 from todolist.priority p where p.id = s.priority_id and p.user_id = ?))",
+                Long.class, userId, userId);
+        if (invalid != null && invalid > 0) {
+            // a category or priority was deleted after its id was taken for the staging rows (nothing is imported)
+            throw new IllegalArgumentException(invalid + " rows reference a category or priority that no longer exists, retry the import");
+        }
+    }
+
+    // one staging row in CSV: empty unquoted value is NULL, text is always quoted
+    private static void append(StringBuilder buffer, ImportRow row, Long priorityId, Long categoryId) {
+        buffer.append(row.line()).append(',');
+        quote(buffer, row.title());
+        buffer.append(',').append(row.completed() ? 1 : 0).append(',');
+        if (row.taskDate() != null) {
+            buffer.append(TIMESTAMP.format(row.taskDate()));
+        }
+        buffer.append(',');
+        if (priorityId != null) {
+            buffer.append(priorityId);
+        }
+        buffer.append(',');
+        if (categoryId != null) {
+            buffer.append(categoryId);
+        }
+        buffer.append(',');
+        if (row.priority() != null && priorityId == null) {
+            quote(buffer, row.priority()); // resolved after COPY
+        }
+        buffer.append(',');
+        if (row.category() != null && categoryId == null) {
+            quote(buffer, row.category());
+        }
+        buffer.append('\n');
+    }
+
+    private static void quote(StringBuilder buffer, String value) {
+        buffer.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static void write(CopyIn copy, StringBuilder buffer) throws SQLException {
+        if (buffer.length() > 0) {
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copy.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+        }
+    }
+
+}
@@ -0,0 +1,308 @@
+package ru.javabegin.backend.todo.todobackend.jdbc;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+
+JDK proxies around DataSource -> Connection -> Statement -> ResultSet.
+Every execute* call is timed and counted in QueryStatistics, rows are counted while the ResultSet is read.
+Statements of a request with a QueryDeadline get the remaining time as query timeout; a statement stopped by it
+fails with SQLTimeoutException (QueryTimeoutException in Spring and JPA).
+
+*/
+
+public final class JdbcProxyFactory {
+
+    private static final String QUERY_CANCELED = "57014"; // PostgreSQL SQLSTATE of a cancelled or timed out statement
+
+    // fixed list whatever the wrapped DataSource is (a Hikari pool, the routing DataSource of the shards):
+    // the native image knows only proxy classes registered at build time (TodoRuntimeHints), in this order.
+    // Pool specific interfaces are reached with unwrap()
+    public static final List<Class<?>> DATA_SOURCE_INTERFACES = List.of(DataSource.class, Closeable.class);
+
+    private JdbcProxyFactory() {
+    }
+
+    public static DataSource wrap(DataSource dataSource, QueryStatistics statistics) {
+        return (DataSource) Proxy.newProxyInstance(
+                JdbcProxyFactory.class.getClassLoader(),
+                DATA_SOURCE_INTERFACES.toArray(new Class<?>[0]),
+                new DataSourceHandler(dataSource, statistics));
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    // equals/hashCode of a proxy must not be delegated: the target never equals its proxy
+    private static boolean isIdentityMethod(Method method) {
+        return (method.getName().equals("equals") && method.getParameterCount() == 1)
+                || (method.getName().equals("hashCode") && method.getParameterCount() == 0);
+    }
+
+    private static Object identityResult(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("equals")) {
+            return proxy == args[0];
+        }
+        return System.identityHashCode(proxy);
+    }
+
+    private static final class DataSourceHandler implements InvocationHandler {
+
+        private final DataSource target;
+        private final QueryStatistics statistics;
+
+        DataSourceHandler(DataSource target, QueryStatistics statistics) {
+            this.target = target;
+            this.statistics = statistics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (isIdentityMethod(method)) {
+                return identityResult(proxy, method, args);
+            }
+            if (method.getDeclaringClass() == Closeable.class && !(target instanceof Closeable)) {
+                return null; // e.g. the routing DataSource: its pools are closed by ShardDataSources
+            }
+
+            Object result = invokeTarget(target, method, args);
+
+            if (method.getName().equals("getConnection")) {
+                return Proxy.newProxyInstance(
+                        JdbcProxyFactory.class.getClassLoader(),
+                        new Class<?>[]{Connection.class},
+                        new ConnectionHandler((Connection) result, statistics));
+            }
+            return result;
+        }
+    }
+
+    private static final class ConnectionHandler implements InvocationHandler {
+
+        private final Connection target;
+        private final QueryStatistics statistics;
+
+        ConnectionHandler(Connection target, QueryStatistics statistics) {
+            this.target = target;
+            this.statistics = statistics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (isIdentityMethod(method)) {
+                return identityResult(proxy, method, args);
+            }
+
+            Object result = invokeTarget(target, method, args);
+
+            switch (method.getName()) {
+                case "createStatement":
+                    return statementProxy(Statement.class, (Statement) result, null);
+                case "prepareStatement":
+                    return statementProxy(PreparedStatement.class, (Statement) result, (String) args[0]);
+                case "prepareCall":
+                    return statementProxy(CallableStatement.class, (Statement) result, (String) args[0]);
+                default:
+                    return result;
+            }
+        }
+
+        private Object statementProxy(Class<? extends Statement> type, Statement statement, String sql) {
+            return Proxy.newProxyInstance(
+                    JdbcProxyFactory.class.getClassLoader(),
+                    new Class<?>[]{type},
+                    new StatementHandler(statement, sql, statistics));
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+
+        private final Statement target;
+        private final String preparedSql; // null for a plain Statement (SQL is passed to execute)
+        private final QueryStatistics statistics;
+
+        private String batchSql; // plain Statement.addBatch(sql)
+        private StatementStats lastStats; // rows of getResultSet() belong to the last executed statement
+
+        StatementHandler(Statement target, String preparedSql, QueryStatistics statistics) {
+            this.target = target;
+            this.preparedSql = preparedSql;
+            this.statistics = statistics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (isIdentityMethod(method)) {
+                return identityResult(proxy, method, args);
+            }
+
+            String name = method.getName();
+
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+
+            if (name.equals("addBatch") && args != null && args.length == 1) {
+                batchSql = (String) args[0];
+            }
+
+            Object result = invokeTarget(target, method, args);
+
+            if (name.equals("getResultSet") && result != null && lastStats != null) {
+                return resultSetProxy((ResultSet) result, lastStats);
+            }
+            return result;
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            String sql = preparedSql;
+            if (sql == null) {
+                sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : batchSql;
+            }
+
+            StatementStats stats = statistics.statsFor(sql);
+            lastStats = stats;
+
+            QueryDeadline deadline = QueryDeadline.current();
+            if (deadline != null) {
+                deadline.started(target);
+            }
+
+            long start = System.nanoTime();
+            Object result;
+            try {
+                if (deadline != null) {
+                    applyDeadline(deadline);
+                }
+                result = invokeTarget(target, method, args);
+            } catch (Throwable e) {
+                statistics.recordExecution(stats, System.nanoTime() - start, 0, true);
+                if (deadline != null && e instanceof SQLException sqlException && QUERY_CANCELED.equals(sqlException.getSQLState())) {
+                    throw timeout(deadline, sqlException);
+                }
+                throw e;
+            } finally {
+                if (deadline != null) {
+                    deadline.finished(target);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            if (result instanceof ResultSet) {
+                statistics.recordExecution(stats, elapsed, 0, false);
+                return resultSetProxy((ResultSet) result, stats);
+            }
+
+            statistics.recordExecution(stats, elapsed, updatedRows(result), false);
+            return result;
+        }
+
+        // the timeout of the statement is never longer than the rest of the request's budget (JDBC timeouts are in seconds)
+        private void applyDeadline(QueryDeadline deadline) throws SQLException {
+            long remaining = deadline.remainingNanos();
+            if (deadline.isCancelled() || remaining <= 0) {
+                throw new SQLTimeoutException(deadline.isCancelled() ? "client disconnected" : "request deadline exceeded", QUERY_CANCELED);
+            }
+            int seconds = (int) Math.min(Integer.MAX_VALUE, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + TimeUnit.SECONDS.toNanos(1) - 1)));
+            int current = target.getQueryTimeout();
+            if (current == 0 || current > seconds) {
+                target.setQueryTimeout(seconds);
+            }
+        }
+
+        private SQLTimeoutException timeout(QueryDeadline deadline, SQLException cause) {
+            statistics.recordTimeout(deadline.isCancelled() ? "disconnect" : "deadline");
+            return cause instanceof SQLTimeoutException timeout ? timeout
+                    : new SQLTimeoutException(cause.getMessage(), QUERY_CANCELED, cause);
+        }
+
+        private static long updatedRows(Object result) {
+            if (result instanceof Integer) {
+                return (Integer) result;
+            }
+            if (result instanceof Long) {
+                return (Long) result;
+            }
+            long total = 0;
+            if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    total += Math.max(count, 0);
+                }
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    total += Math.max(count, 0);
+                }
+            }
+            return total; // boolean execute(): rows are counted by getResultSet()/getUpdateCount() callers
+        }
+
+        private static Object resultSetProxy(ResultSet resultSet, StatementStats stats) {
+            return Proxy.newProxyInstance(
+                    JdbcProxyFactory.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class},
+                    new ResultSetHandler(resultSet, stats));
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+
+        private final ResultSet target;
+        private final StatementStats stats;
+
+        private long rows;
+        private boolean flushed;
+
+        ResultSetHandler(ResultSet target, StatementStats stats) {
+            this.target = target;
+            this.stats = stats;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (isIdentityMethod(method)) {
+                return identityResult(proxy, method, args);
+            }
+
+            Object result = invokeTarget(target, method, args);
+
+            String name = method.getName();
+            if (name.equals("next")) {
+                if (Boolean.TRUE.equals(result)) {
+                    rows++;
+                } else {
+                    flush();
+                }
+            } else if (name.equals("close")) {
+                flush();
+            }
+            return result;
+        }
+
+        private void flush() {
+            if (!flushed) {
+                flushed = true;
+                stats.addRows(rows);
+            }
+        }
+    }
+
+}
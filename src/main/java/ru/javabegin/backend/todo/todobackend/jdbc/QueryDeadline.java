@@ -0,0 +1,104 @@
+package ru.javabegin.backend.todo.todobackend.jdbc;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+
+Time budget of the current request for its SQL statements (started by RequestDeadlineFilter).
+The JDBC proxy gives every statement of the request the remaining time as query timeout
+(and doesn't send it at all when nothing is left). cancel() stops the running statements at once
+(the client has disconnected).
+
+*/
+
+public final class QueryDeadline {
+
+    private static final ThreadLocal<QueryDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final Set<Statement> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    private QueryDeadline(long budgetMillis) {
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    public static QueryDeadline start(long budgetMillis) {
+        QueryDeadline deadline = new QueryDeadline(budgetMillis);
+        CURRENT.set(deadline);
+        return deadline;
+    }
+
+    public static QueryDeadline current() {
+        return CURRENT.get();
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    // for work of the request handed over to another thread
+    public static Runnable wrap(Runnable action) {
+        if (current() == null) {
+            return action;
+        }
+        Supplier<Void> wrapped = wrap(() -> {
+            action.run();
+            return null;
+        });
+        return wrapped::get;
+    }
+
+    public static <T> Supplier<T> wrap(Supplier<T> action) {
+        QueryDeadline deadline = current();
+        if (deadline == null) {
+            return action;
+        }
+        return () -> {
+            QueryDeadline previous = CURRENT.get();
+            CURRENT.set(deadline);
+            try {
+                return action.get();
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (Statement statement : running) {
+            try {
+                statement.cancel();
+            } catch (SQLException ignored) {
+                // the statement has just finished
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    void started(Statement statement) {
+        running.add(statement);
+    }
+
+    void finished(Statement statement) {
+        running.remove(statement);
+    }
+
+}
@@ -0,0 +1,145 @@
+package ru.javabegin.backend.todo.todobackend.jdbc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/*
+
+Per-statement statistics of all SQL sent through the DataSource (see QueryStatsDataSourceWrapper).
+Statements are grouped by normalized SQL: literals and IN-lists are replaced with "?".
+
+*/
+
+@Component
+@Log
+public class QueryStatistics {
+
+    private static final String OTHER = "<other statements>";
+    private static final int MAX_NORMALIZED_CACHE = 10_000;
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.$])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+
+    private final int maxStatements;
+    private final int nPlusOneThreshold;
+    private final ObjectProvider<MeterRegistry> meterRegistry; // looked up at the first timeout (see QueryStatsDataSourceWrapper)
+
+    private final Map<String, StatementStats> statements = new ConcurrentHashMap<>();
+
+    // Hibernate sends the same SQL strings again and again - normalize each of them only once
+    private final Map<String, String> normalized = new ConcurrentHashMap<>();
+
+    // statements executed by the current request: statement -> number of executions
+    private final ThreadLocal<Map<StatementStats, int[]>> requestStatements = new ThreadLocal<>();
+
+    public QueryStatistics(ObjectProvider<MeterRegistry> meterRegistry,
+                           @Value("${todo.query-stats.max-statements:2000}") int maxStatements,
+                           @Value("${todo.query-stats.n-plus-one-threshold:10}") int nPlusOneThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.maxStatements = maxStatements;
+        this.nPlusOneThreshold = nPlusOneThreshold;
+    }
+
+    StatementStats statsFor(String sql) {
+        String key = normalize(sql);
+
+        StatementStats stats = statements.get(key);
+        if (stats != null) {
+            return stats;
+        }
+        if (statements.size() >= maxStatements) {
+            key = OTHER; // protection against unbounded growth (e.g. SQL with inlined values)
+        }
+        return statements.computeIfAbsent(key, StatementStats::new);
+    }
+
+    void recordExecution(StatementStats stats, long nanos, long rows, boolean failed) {
+        stats.record(nanos, rows, failed);
+
+        Map<StatementStats, int[]> executed = requestStatements.get();
+        if (executed != null) {
+            executed.computeIfAbsent(stats, s -> new int[1])[0]++;
+        }
+    }
+
+    // a statement stopped by the request deadline; reason: deadline (budget used up) or disconnect (client gone)
+    void recordTimeout(String reason) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            registry.counter("todo.query.timeouts", "reason", reason).increment();
+        }
+    }
+
+    // called at the start of a web request
+    public void beginRequest() {
+        requestStatements.set(new HashMap<>());
+    }
+
+    // called at the end of a web request: repeated statements are reported as possible N+1 selects
+    public void endRequest(String requestName) {
+        Map<StatementStats, int[]> executed = requestStatements.get();
+        requestStatements.remove();
+        if (executed == null) {
+            return;
+        }
+
+        for (Map.Entry<StatementStats, int[]> entry : executed.entrySet()) {
+            int calls = entry.getValue()[0];
+            boolean nPlusOne = calls >= nPlusOneThreshold;
+
+            entry.getKey().recordRequest(calls, nPlusOne);
+
+            if (nPlusOne) {
+                log.warning("Possible N+1: statement executed " + calls + " times in " + requestName + ": " + entry.getKey().getSql());
+            }
+        }
+    }
+
+    // statements with the biggest total time first
+    public List<QueryStatsSnapshot> snapshot(int limit) {
+        return statements.values().stream()
+                .sorted(Comparator.comparingLong(StatementStats::totalNanos).reversed())
+                .limit(limit)
+                .map(StatementStats::snapshot)
+                .toList();
+    }
+
+    public void reset() {
+        statements.clear();
+    }
+
+    String normalize(String sql) {
+        if (sql == null) {
+            return OTHER;
+        }
+
+        String result = normalized.get(sql);
+        if (result != null) {
+            return result;
+        }
+
+        result = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        result = STRING_LITERAL.matcher(result).replaceAll("?");
+        result = NUMBER_LITERAL.matcher(result).replaceAll("?");
+        result = IN_LIST.matcher(result).replaceAll("in (?)");
+
+        if (normalized.size() >= MAX_NORMALIZED_CACHE) {
+            normalized.clear();
+        }
+        normalized.put(sql, result);
+        return result;
+    }
+
+}
@@ -0,0 +1,31 @@
+package ru.javabegin.backend.todo.todobackend.jdbc;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+// puts the statistics proxy around every DataSource created by Spring Boot
+// (off only with todo.query-stats.enabled=false and todo.deadline.enabled=false: the proxy also applies request deadlines)
+@Component
+@ConditionalOnExpression("${todo.query-stats.enabled:true} or ${todo.deadline.enabled:true}")
+public class QueryStatsDataSourceWrapper implements BeanPostProcessor {
+
+    // looked up lazily: post processors are created before other beans
+    private final ObjectProvider<QueryStatistics> statistics;
+
+    public QueryStatsDataSourceWrapper(ObjectProvider<QueryStatistics> statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource) {
+            return JdbcProxyFactory.wrap((DataSource) bean, statistics.getObject());
+        }
+        return bean;
+    }
+
+}
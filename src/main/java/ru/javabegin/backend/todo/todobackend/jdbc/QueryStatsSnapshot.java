@@ -0,0 +1,29 @@
+package ru.javabegin.backend.todo.todobackend.jdbc;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// statistics of one normalized SQL statement at the moment of the request (times in milliseconds)
+@Getter
+@AllArgsConstructor
+public class QueryStatsSnapshot {
+
+    private String sql;
+
+    private long calls;
+    private long errors;
+    private long rows; // rows read (SELECT) or changed (INSERT/UPDATE/DELETE)
+
+    private double totalMs;
+    private double avgMs;
+    private double maxMs;
+
+    // calculated from the latest executions
+    private double p50Ms;
+    private double p95Ms;
+    private double p99Ms;
+
+    private long maxCallsPerRequest;
+    private long nPlusOneRequests; // requests where the statement was executed at least todo.query-stats.n-plus-one-threshold times
+
+}
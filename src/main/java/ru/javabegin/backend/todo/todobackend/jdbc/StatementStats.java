@@ -0,0 +1,106 @@
+package ru.javabegin.backend.todo.todobackend.jdbc;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// counters of one normalized SQL statement (updated concurrently by all request threads)
+public class StatementStats {
+
+    private static final int RESERVOIR_SIZE = 512; // latest durations used for percentiles
+
+    private final String sql;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder nPlusOneRequests = new LongAdder(); // requests where the statement was repeated many times
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong maxCallsPerRequest = new AtomicLong();
+
+    private final long[] reservoir = new long[RESERVOIR_SIZE];
+    private int reservoirPosition;
+    private int reservoirCount;
+
+    StatementStats(String sql) {
+        this.sql = sql;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    void record(long nanos, long rowCount, boolean failed) {
+        calls.increment();
+        totalNanos.add(nanos);
+        if (rowCount > 0) {
+            rows.add(rowCount);
+        }
+        if (failed) {
+            errors.increment();
+        }
+        maxNanos.accumulateAndGet(nanos, Math::max);
+
+        synchronized (reservoir) {
+            reservoir[reservoirPosition] = nanos;
+            reservoirPosition = (reservoirPosition + 1) % RESERVOIR_SIZE;
+            if (reservoirCount < RESERVOIR_SIZE) {
+                reservoirCount++;
+            }
+        }
+    }
+
+    void addRows(long rowCount) {
+        rows.add(rowCount);
+    }
+
+    void recordRequest(int callsInRequest, boolean nPlusOne) {
+        maxCallsPerRequest.accumulateAndGet(callsInRequest, Math::max);
+        if (nPlusOne) {
+            nPlusOneRequests.increment();
+        }
+    }
+
+    long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    public QueryStatsSnapshot snapshot() {
+        long[] latest;
+        synchronized (reservoir) {
+            latest = Arrays.copyOf(reservoir, reservoirCount);
+        }
+        Arrays.sort(latest);
+
+        long count = calls.sum();
+        long total = totalNanos.sum();
+
+        return new QueryStatsSnapshot(
+                sql,
+                count,
+                errors.sum(),
+                rows.sum(),
+                toMillis(total),
+                count == 0 ? 0 : toMillis(total / count),
+                toMillis(maxNanos.get()),
+                toMillis(percentile(latest, 0.50)),
+                toMillis(percentile(latest, 0.95)),
+                toMillis(percentile(latest, 0.99)),
+                maxCallsPerRequest.get(),
+                nPlusOneRequests.sum());
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+}
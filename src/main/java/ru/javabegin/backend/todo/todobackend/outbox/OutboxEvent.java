@@ -0,0 +1,13 @@
+package ru.javabegin.backend.todo.todobackend.outbox;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import java.time.Instant;
+
+// one change: aggregate task|category|priority, type created|updated|deleted, payload = the row (JSON, columns as in the DB)
+// id is unique per database (with sharding: per shard, the shard is set)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record OutboxEvent(long id, String shard, Long userId, String aggregate, long aggregateId, String type,
+                          @JsonRawValue String payload, Instant createdAt) {
+}
@@ -0,0 +1,119 @@
+package ru.javabegin.backend.todo.todobackend.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.javabegin.backend.todo.todobackend.shard.ShardContext;
+import ru.javabegin.backend.todo.todobackend.shard.ShardRouter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+
+Publishes the outbox to the sink in batches of todo.outbox.batch-size, oldest events first.
+A batch is one transaction: DELETE ... RETURNING takes the events, the sink stores them, commit.
+If the sink fails the transaction is rolled back and the events are published by the next run.
+If the commit fails after the sink stored them, they are published again: delivery is at least once
+(consumers skip event ids they have already seen).
+
+One relay at a time per database (transaction-level advisory lock; other instances skip the run),
+so the events of a user come in the order of their commits: OutboxWriter locks the user before an event id is taken,
+so ids of one user never commit out of order and ORDER BY id has no later-filled gaps per user.
+
+*/
+
+@Component
+@Log
+public class OutboxRelay {
+
+    private static final long LOCK_KEY = 0x6f7574626f78L; // "outbox"
+
+    private static final String TAKE_BATCH = "delete from todolist.outbox where id in " +
+            "(select id from todolist.outbox order by id limit ?) " +
+            "returning id, user_id, aggregate, aggregate_id, type, payload::text, created_at";
+
+    private final OutboxWriter writer;
+    private final OutboxSink sink;
+    private final ShardRouter router;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final Counter published;
+    private final int batchSize;
+
+    public OutboxRelay(OutboxWriter writer,
+                       OutboxSink sink,
+                       ShardRouter router,
+                       JdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager,
+                       MeterRegistry meterRegistry,
+                       @Value("${todo.outbox.batch-size:500}") int batchSize) {
+        this.writer = writer;
+        this.sink = sink;
+        this.router = router;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.published = Counter.builder("todo.outbox.published").description("change events published").register(meterRegistry);
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${todo.outbox.relay-interval-ms:1000}")
+    public void run() {
+        if (!writer.isEnabled()) {
+            return;
+        }
+        router.forEachShard(() -> {
+            try {
+                relay();
+            } catch (RuntimeException e) {
+                // the events stay in the outbox; the other shards are published anyway
+                log.warning("Outbox relay failed" + (ShardContext.current() != null ? " on shard " + ShardContext.current() : "") +
+                        ": " + e.getMessage());
+            }
+        });
+    }
+
+    // returns the number of published events
+    public int relay() {
+        int total = 0;
+        int count;
+        do {
+            count = transaction.execute(status -> relayBatch());
+            total += count;
+        } while (count == batchSize);
+        return total;
+    }
+
+    private int relayBatch() {
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject("select pg_try_advisory_xact_lock(?)", Boolean.class, LOCK_KEY))) {
+            return 0; // another instance is publishing
+        }
+
+        String shard = ShardContext.current();
+        List<OutboxEvent> events = new ArrayList<>(jdbcTemplate.query(TAKE_BATCH, (rs, rowNum) -> new OutboxEvent(
+                rs.getLong(1), shard, rs.getObject(2, Long.class), rs.getString(3), rs.getLong(4), rs.getString(5),
+                rs.getString(6), rs.getTimestamp(7).toInstant()), batchSize));
+        if (events.isEmpty()) {
+            return 0;
+        }
+        events.sort(Comparator.comparingLong(OutboxEvent::id)); // RETURNING has no order
+
+        try {
+            sink.publish(events);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        published.increment(events.size());
+        return events.size();
+    }
+
+}
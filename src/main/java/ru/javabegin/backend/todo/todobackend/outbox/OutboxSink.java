@@ -0,0 +1,12 @@
+package ru.javabegin.backend.todo.todobackend.outbox;
+
+import java.io.IOException;
+import java.util.List;
+
+// receiver of change events (todo.outbox.sink); the events are deleted from the outbox only after publish returns,
+// so it must have stored them durably (an exception keeps them for the next try)
+public interface OutboxSink {
+
+    void publish(List<OutboxEvent> events) throws IOException;
+
+}
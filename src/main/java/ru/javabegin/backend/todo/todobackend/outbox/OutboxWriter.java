@@ -0,0 +1,112 @@
+package ru.javabegin.backend.todo.todobackend.outbox;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/*
+
+Writes change events into todolist.outbox in the transaction of the change (called by TaskWriter and the services),
+so an event exists exactly when its change is committed. The payload is the row as it is in the DB after the change
+(before it for deletes), taken with INSERT ... SELECT - no extra round trip to read the row.
+
+Events of one user get their ids in commit order: before an event id is taken the transaction locks its user
+(transaction-level advisory lock), so a concurrent change of the same user gets its ids only after this commit.
+Without it a transaction with a smaller id could commit after one with a bigger id and the relay (ORDER BY id)
+would publish the user's events out of order.
+
+Off by default (todo.outbox.enabled=false): then nothing is written.
+
+*/
+
+@Component
+public class OutboxWriter {
+
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+
+    private static final Set<String> TABLES = Set.of("task", "category", "priority");
+
+    // advisory lock of the user's events: (class, user id) - the two-key locks don't overlap with the relay lock
+    private static final int USER_LOCK_CLASS = 0x6f757462; // "outb"
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final boolean enabled;
+
+    public OutboxWriter(JdbcTemplate jdbcTemplate, EntityManager entityManager,
+                        @Value("${todo.outbox.enabled:false}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManager = entityManager;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // after the row was inserted or updated
+    public void rowSaved(String table, Long id, boolean created) {
+        if (!enabled || id == null) {
+            return;
+        }
+        entityManager.flush(); // changes of JPA entities are written at flush, the row is read by SQL
+        jdbcTemplate.update(insertSelect(table, "to_jsonb(r)"), created ? CREATED : UPDATED, id);
+    }
+
+    // before the row is deleted
+    public void rowDeleted(String table, Long id) {
+        if (!enabled || id == null) {
+            return;
+        }
+        entityManager.flush();
+        jdbcTemplate.update(insertSelect(table, "to_jsonb(r)"), DELETED, id);
+    }
+
+    // category/priority: tasksMovedTo got its tasks (null: the tasks are detached, their column is set to null)
+    public void rowDeleted(String table, Long id, Long tasksMovedTo) {
+        if (!enabled || id == null) {
+            return;
+        }
+        entityManager.flush();
+        jdbcTemplate.update(insertSelect(table, "to_jsonb(r) || jsonb_build_object('tasks_moved_to', ?::bigint)"),
+                DELETED, tasksMovedTo, id);
+    }
+
+    // the insert of many rows (INSERT ... SELECT without RETURNING) with a created event per inserted row;
+    // the statement returns the number of inserted rows as before
+    public String withCreatedEvents(String table, String insert) {
+        if (!enabled) {
+            return insert;
+        }
+        checkTable(table);
+        return "with r as (" + insert + " returning *) " +
+                "insert into todolist.outbox (user_id, aggregate, aggregate_id, type, payload) " +
+                "select r.user_id, '" + table + "', r.id, '" + CREATED + "', to_jsonb(r) " +
+                "from r cross join lateral (" + lockUser("r.user_id") + ") l order by r.id";
+    }
+
+    // table is one of TABLES (put into SQL text), the other values are parameters
+    private static String insertSelect(String table, String payload) {
+        checkTable(table);
+        return "insert into todolist.outbox (user_id, aggregate, aggregate_id, type, payload) " +
+                "select r.user_id, '" + table + "', r.id, ?, " + payload + " from todolist." + table + " r " +
+                "cross join lateral (" + lockUser("r.user_id") + ") l where r.id = ?";
+    }
+
+    // taken for the row before its event id (the locks of the same user in one transaction are counted, not waited for)
+    private static String lockUser(String userId) {
+        return "select pg_advisory_xact_lock(" + USER_LOCK_CLASS + ", (" + userId + " % 2147483647)::int)";
+    }
+
+    private static void checkTable(String table) {
+        if (!TABLES.contains(table)) {
+            throw new IllegalArgumentException("no outbox events for table " + table);
+        }
+    }
+
+}
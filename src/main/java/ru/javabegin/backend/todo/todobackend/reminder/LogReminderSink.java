@@ -0,0 +1,18 @@
+package ru.javabegin.backend.todo.todobackend.reminder;
+
+import lombok.extern.java.Log;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// reminders are only written to the log
+@Component
+@ConditionalOnProperty(name = "todo.reminder.sink", havingValue = "log", matchIfMissing = true)
+@Log
+public class LogReminderSink implements ReminderSink {
+
+    @Override
+    public void fire(Reminder reminder) {
+        log.info("Reminder: task " + reminder.taskId() + " of user " + reminder.userId() + " is due at " + reminder.due());
+    }
+
+}
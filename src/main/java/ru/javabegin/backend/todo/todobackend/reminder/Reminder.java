@@ -0,0 +1,7 @@
+package ru.javabegin.backend.todo.todobackend.reminder;
+
+import java.time.Instant;
+
+// a task that is due now (sent to ReminderSink)
+public record Reminder(long taskId, long userId, Instant due) {
+}
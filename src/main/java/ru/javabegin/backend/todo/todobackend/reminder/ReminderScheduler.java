@@ -0,0 +1,343 @@
+package ru.javabegin.backend.todo.todobackend.reminder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.javabegin.backend.todo.todobackend.cache.UserScopedCache;
+import ru.javabegin.backend.todo.todobackend.service.TransactionHooks;
+import ru.javabegin.backend.todo.todobackend.shard.ShardRouter;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+
+Sends a reminder (ReminderSink) when the date of an uncompleted task comes, instead of polling the DB for due tasks.
+
+Uncompleted tasks due within todo.reminder.horizon-hours are kept in a hierarchical timing wheel (TimingWheel).
+The window is extended every todo.reminder.refill-minutes with one index range query (V6__task_due_index.sql).
+Task changes of this instance come from TaskWriter after commit; changes made by other instances arrive through
+the cache invalidation notifications (the reminders of that user are read again), so one instance with
+todo.reminder.enabled=true is enough - every instance with it enabled sends all reminders.
+
+All the data is owned by one thread: callers only put commands into a queue, which the thread applies before
+every tick. Reminders of tasks that became due while the instance was down are not sent.
+
+*/
+
+@Component
+@Log
+public class ReminderScheduler implements SmartLifecycle, UserScopedCache {
+
+    private static final int LEVELS = 4; // 64^4 ticks: 194 days with 1 s ticks (later dates wait in the overflow list)
+    private static final int FETCH_SIZE = 10_000; // window queries are read with a cursor, not into memory at once
+
+    private static final String DUE_TASKS = "select id, user_id, task_date from todolist.task " +
+            "where coalesce(completed, 0) = 0 and task_date >= ? and task_date < ?";
+    private static final String DUE_TASKS_OF_USER = "select u.id, t.id, t.task_date from todolist.user_data u " +
+            "left join todolist.task t on t.user_id = u.id and coalesce(t.completed, 0) = 0 and t.task_date >= ? and t.task_date < ? " +
+            "where u.email = ?";
+    private static final String TASK = "select user_id, task_date, completed from todolist.task where id = ?";
+
+    // pending reminder: the node of the wheel and of the list of the user's reminders
+    private static final class PendingReminder extends TimingWheel.Timer {
+
+        final long taskId;
+        final long userId;
+        final long dueMillis;
+        PendingReminder userPrev;
+        PendingReminder userNext;
+
+        PendingReminder(long taskId, long userId, long dueMillis) {
+            this.taskId = taskId;
+            this.userId = userId;
+            this.dueMillis = dueMillis;
+        }
+    }
+
+    private final ReminderSink sink;
+    private final ShardRouter router; // tasks of all shards are in one wheel
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final Counter fired;
+
+    private final boolean enabled;
+    private final long tickMs;
+    private final long horizonMs;
+    private final long refillMs;
+
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>(); // applied by the reminder thread
+    private final Set<String> usersToReload = ConcurrentHashMap.newKeySet(); // one reload per user in the queue
+
+    // owned by the reminder thread
+    private TimingWheel<PendingReminder> wheel;
+    private final Map<Long, PendingReminder> byTask = new HashMap<>();
+    private final Map<Long, PendingReminder> byUser = new HashMap<>(); // first reminder of the user
+    private long loadedUntil; // tasks due before this time are in the wheel
+    private long nextRefill;
+
+    private volatile int pending;
+    private volatile boolean running;
+    private Thread thread;
+
+    public ReminderScheduler(ReminderSink sink,
+                             ShardRouter router,
+                             DataSource dataSource,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry,
+                             @Value("${todo.reminder.enabled:false}") boolean enabled,
+                             @Value("${todo.reminder.tick-ms:1000}") long tickMs,
+                             @Value("${todo.reminder.horizon-hours:168}") long horizonHours,
+                             @Value("${todo.reminder.refill-minutes:10}") long refillMinutes) {
+        this.sink = sink;
+        this.router = router;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.transaction.setReadOnly(true); // a cursor (fetch size) works only inside a transaction
+        this.enabled = enabled;
+        this.tickMs = tickMs;
+        this.horizonMs = TimeUnit.HOURS.toMillis(horizonHours);
+        this.refillMs = TimeUnit.MINUTES.toMillis(refillMinutes);
+
+        this.fired = Counter.builder("todo.reminder.fired").description("reminders sent").register(meterRegistry);
+        meterRegistry.gauge("todo.reminder.pending", this, scheduler -> scheduler.pending);
+    }
+
+    // called by TaskWriter: the task was added or fully updated
+    public void taskSaved(Long taskId, Long userId, Boolean completed, Date taskDate) {
+        if (!enabled || taskId == null) {
+            return;
+        }
+        TransactionHooks.afterCommit(() -> commands.add(() -> {
+            remove(taskId);
+            if (userId != null && !Boolean.TRUE.equals(completed) && taskDate != null) {
+                scheduleIfInWindow(taskId, userId, taskDate.getTime());
+            }
+        }));
+    }
+
+    // called by TaskWriter: completed or date may have changed, the task is read again
+    public void taskChanged(Long taskId) {
+        if (enabled && taskId != null) {
+            TransactionHooks.afterCommit(() -> commands.add(() -> reloadTask(taskId)));
+        }
+    }
+
+    public void taskDeleted(Long taskId) {
+        if (enabled && taskId != null) {
+            TransactionHooks.afterCommit(() -> commands.add(() -> remove(taskId)));
+        }
+    }
+
+    // data of the user was changed elsewhere (another instance, import, archive job)
+    @Override
+    public void evict(String email) {
+        if (running && usersToReload.add(email)) {
+            commands.add(() -> {
+                usersToReload.remove(email);
+                reloadUser(email);
+            });
+        }
+    }
+
+    @Override
+    public void evictAll() {
+        if (running) {
+            commands.add(this::reset);
+        }
+    }
+
+    // task changes of this instance come from TaskWriter
+    @Override
+    public void tasksChanged(String email) {
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        commands.add(this::reset); // before any other command
+        running = true;
+        thread = new Thread(this::run, "reminder-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        while (running) {
+            long now = System.currentTimeMillis();
+            try {
+                Runnable command;
+                while ((command = commands.poll()) != null) {
+                    command.run();
+                }
+
+                if (now >= nextRefill) {
+                    nextRefill = now + refillMs; // also after a failure: the DB is not asked every tick
+                    load(now + horizonMs);
+                }
+
+                wheel.advance(Math.floorDiv(now, tickMs), this::fire);
+                pending = wheel.size();
+            } catch (RuntimeException e) {
+                // a failed query or sink must not stop the reminders
+                log.warning("Reminder scheduler: " + e.getMessage());
+            }
+
+            try {
+                Thread.sleep(tickMs - Math.floorMod(System.currentTimeMillis(), tickMs));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void fire(PendingReminder reminder) {
+        byTask.remove(reminder.taskId);
+        unlinkUser(reminder);
+        fired.increment();
+        try {
+            sink.fire(new Reminder(reminder.taskId, reminder.userId, Instant.ofEpochMilli(reminder.dueMillis)));
+        } catch (RuntimeException e) {
+            log.warning("Reminder of task " + reminder.taskId + " is not sent: " + e.getMessage()); // the others of the tick are
+        }
+    }
+
+    // all reminders are read again (at start and when the changes of other instances could have been missed)
+    private void reset() {
+        long now = System.currentTimeMillis();
+        wheel = new TimingWheel<>(LEVELS, Math.floorDiv(now, tickMs));
+        byTask.clear();
+        byUser.clear();
+        loadedUntil = now;
+        nextRefill = 0; // loaded before the next tick
+    }
+
+    // tasks due in [loadedUntil, until); a window left behind after a failure is loaded late rather than lost
+    private void load(long until) {
+        if (until <= loadedUntil) {
+            return;
+        }
+        long from = loadedUntil;
+        router.forEachShard(() -> transaction.executeWithoutResult(status -> jdbcTemplate.query(DUE_TASKS, rs -> {
+            long taskId = rs.getLong(1);
+            remove(taskId);
+            schedule(taskId, rs.getLong(2), rs.getTimestamp(3).getTime());
+        }, new Timestamp(from), new Timestamp(until))));
+        loadedUntil = until;
+    }
+
+    private void reloadUser(String email) {
+        long now = System.currentTimeMillis();
+        Map<Long, Long> tasks = new HashMap<>(); // task id -> due
+        Long[] userId = new Long[1];
+        router.forUser(email, () -> {
+            transaction.executeWithoutResult(status -> jdbcTemplate.query(DUE_TASKS_OF_USER, rs -> {
+                userId[0] = rs.getLong(1);
+                long taskId = rs.getLong(2);
+                if (!rs.wasNull()) {
+                    tasks.put(taskId, rs.getTimestamp(3).getTime());
+                }
+            }, new Timestamp(now), new Timestamp(loadedUntil), email));
+            return null;
+        });
+
+        if (userId[0] == null) {
+            return; // unknown user
+        }
+        PendingReminder reminder = byUser.get(userId[0]);
+        while (reminder != null) {
+            PendingReminder next = reminder.userNext;
+            remove(reminder.taskId);
+            reminder = next;
+        }
+        tasks.forEach((taskId, due) -> schedule(taskId, userId[0], due));
+    }
+
+    private void reloadTask(Long taskId) {
+        remove(taskId);
+        router.forRow("task", taskId, () -> {
+            transaction.executeWithoutResult(status -> jdbcTemplate.query(TASK, rs -> {
+                Timestamp taskDate = rs.getTimestamp(2);
+                if (rs.getInt(3) == 0 && taskDate != null) {
+                    scheduleIfInWindow(taskId, rs.getLong(1), taskDate.getTime());
+                }
+            }, taskId));
+            return null;
+        });
+    }
+
+    // a date in the past (set by the user) is not reminded, a date after the window is loaded with the window
+    private void scheduleIfInWindow(long taskId, long userId, long dueMillis) {
+        if (dueMillis > System.currentTimeMillis() && dueMillis < loadedUntil) {
+            schedule(taskId, userId, dueMillis);
+        }
+    }
+
+    private void schedule(long taskId, long userId, long dueMillis) {
+        PendingReminder reminder = new PendingReminder(taskId, userId, dueMillis);
+        wheel.schedule(reminder, Math.floorDiv(dueMillis + tickMs - 1, tickMs)); // never earlier than the date
+        byTask.put(taskId, reminder);
+
+        PendingReminder first = byUser.put(userId, reminder);
+        if (first != null) {
+            reminder.userNext = first;
+            first.userPrev = reminder;
+        }
+    }
+
+    private void remove(long taskId) {
+        PendingReminder reminder = byTask.remove(taskId);
+        if (reminder != null) {
+            wheel.cancel(reminder);
+            unlinkUser(reminder);
+        }
+    }
+
+    private void unlinkUser(PendingReminder reminder) {
+        if (reminder.userPrev != null) {
+            reminder.userPrev.userNext = reminder.userNext;
+        } else if (reminder.userNext != null) {
+            byUser.put(reminder.userId, reminder.userNext);
+        } else {
+            byUser.remove(reminder.userId);
+        }
+        if (reminder.userNext != null) {
+            reminder.userNext.userPrev = reminder.userPrev;
+        }
+        reminder.userPrev = null;
+        reminder.userNext = null;
+    }
+
+}
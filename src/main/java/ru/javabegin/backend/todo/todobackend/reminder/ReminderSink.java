@@ -0,0 +1,8 @@
+package ru.javabegin.backend.todo.todobackend.reminder;
+
+// receiver of due reminders (todo.reminder.sink=log|webhook); called by the reminder thread, so it must not block long
+public interface ReminderSink {
+
+    void fire(Reminder reminder);
+
+}
@@ -0,0 +1,169 @@
+package ru.javabegin.backend.todo.todobackend.reminder;
+
+import java.util.function.Consumer;
+
+/*
+
+Hierarchical timing wheel (as the timers of the Linux kernel): schedule and cancel are O(1) for any number of timers,
+a tick costs O(1) plus the timers that expire or move to a lower level.
+
+Time is counted in ticks. Level 0 has 64 slots of one tick, level 1 has 64 slots of 64 ticks and so on.
+A timer is put into the lowest level that covers its distance from the current tick; when the time reaches
+the start of its slot on a higher level, it moves down (cascades) until it expires in a level 0 slot.
+Timers further than all levels wait in the overflow list, which is looked at once per turn of the top level.
+
+Timers are intrusive (a subclass of Timer is the list node), so a pending timer costs one object.
+Not thread-safe: used by one thread.
+
+*/
+
+final class TimingWheel<T extends TimingWheel.Timer> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final long MASK = SLOTS - 1;
+
+    // node of a slot list; the data of the timer is in the subclass
+    abstract static class Timer {
+
+        private long deadline; // tick
+        private Timer prev;
+        private Timer next;
+
+        final long deadline() {
+            return deadline;
+        }
+
+        final boolean isScheduled() {
+            return prev != null;
+        }
+    }
+
+    // list head of a slot (circular list)
+    private static final class Head extends Timer {
+        Head() {
+            super.prev = this;
+            super.next = this;
+        }
+    }
+
+    private final int levels;
+    private final long span; // ticks covered by all levels
+    private final Head[][] slots;
+    private final Head overflow = new Head();
+
+    private long current; // last processed tick
+    private int size;
+
+    TimingWheel(int levels, long currentTick) {
+        if (levels < 1 || levels * SLOT_BITS > 60) {
+            throw new IllegalArgumentException("levels must be 1.." + 60 / SLOT_BITS);
+        }
+        this.levels = levels;
+        this.span = 1L << (levels * SLOT_BITS);
+        this.slots = new Head[levels][SLOTS];
+        for (Head[] level : slots) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = new Head();
+            }
+        }
+        this.current = currentTick;
+    }
+
+    long currentTick() {
+        return current;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // a deadline that has passed expires with the next tick; a scheduled timer is moved
+    void schedule(T timer, long deadline) {
+        if (timer.isScheduled()) {
+            unlink(timer);
+        } else {
+            size++;
+        }
+        timer.deadline = Math.max(deadline, current + 1);
+        insert(timer);
+    }
+
+    void cancel(T timer) {
+        if (timer.isScheduled()) {
+            unlink(timer);
+            size--;
+        }
+    }
+
+    // processes the ticks up to the given one (inclusive); the consumer may schedule timers again
+    @SuppressWarnings("unchecked")
+    void advance(long tick, Consumer<? super T> expired) {
+        while (current < tick) {
+            if (size == 0) {
+                current = tick; // nothing to move or expire on the way
+                return;
+            }
+
+            long now = ++current;
+            cascade(now);
+
+            Head head = slots[0][(int) (now & MASK)];
+            while (head.next != head) {
+                Timer timer = head.next;
+                unlink(timer);
+                size--;
+                expired.accept((T) timer);
+            }
+        }
+    }
+
+    // from the top level down: timers of a higher level never land in a slot that is cascaded in the same tick
+    private void cascade(long now) {
+        if ((now & (span - 1)) == 0) {
+            reinsert(overflow);
+        }
+        for (int level = levels - 1; level >= 1; level--) {
+            int shift = level * SLOT_BITS;
+            if ((now & ((1L << shift) - 1)) == 0) {
+                reinsert(slots[level][(int) ((now >>> shift) & MASK)]);
+            }
+        }
+    }
+
+    private void reinsert(Head head) {
+        Timer timer = head.next;
+        head.next = head;
+        head.prev = head;
+        while (timer != head) {
+            Timer next = timer.next;
+            insert(timer);
+            timer = next;
+        }
+    }
+
+    // deadline >= current; the slot is chosen by the deadline itself, the level by the distance to it
+    private void insert(Timer timer) {
+        long delta = timer.deadline - current;
+        Head head;
+        if (delta >= span) {
+            head = overflow;
+        } else {
+            int level = delta == 0 ? 0 : (63 - Long.numberOfLeadingZeros(delta)) / SLOT_BITS;
+            head = slots[level][(int) ((timer.deadline >>> (level * SLOT_BITS)) & MASK)];
+        }
+
+        timer.prev = head.prev;
+        timer.next = head;
+        head.prev.next = timer;
+        head.prev = timer;
+    }
+
+    private static void unlink(Timer timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+
+}
@@ -0,0 +1,63 @@
+package ru.javabegin.backend.todo.todobackend.reminder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+
+// every reminder is POSTed as JSON to todo.reminder.webhook-url (asynchronously, failures are only logged);
+// when todo.reminder.webhook-max-in-flight requests wait for an answer, the reminder thread waits too
+@Component
+@ConditionalOnProperty(name = "todo.reminder.sink", havingValue = "webhook")
+@Log
+public class WebhookReminderSink implements ReminderSink {
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final URI url;
+    private final ObjectMapper objectMapper;
+    private final Semaphore inFlight;
+
+    public WebhookReminderSink(ObjectMapper objectMapper,
+                               @Value("${todo.reminder.webhook-url}") String url,
+                               @Value("${todo.reminder.webhook-max-in-flight:64}") int maxInFlight) {
+        this.objectMapper = objectMapper;
+        this.url = URI.create(url);
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    @Override
+    public void fire(Reminder reminder) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(reminder);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+
+        HttpRequest request = HttpRequest.newBuilder(url)
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        inFlight.acquireUninterruptibly();
+        http.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, e) -> {
+            inFlight.release();
+            if (e != null) {
+                log.warning("Reminder webhook failed for task " + reminder.taskId() + ": " + e.getMessage());
+            } else if (response.statusCode() / 100 != 2) {
+                log.warning("Reminder webhook answered " + response.statusCode() + " for task " + reminder.taskId());
+            }
+        });
+    }
+
+}
@@ -1,12 +1,15 @@
 package ru.javabegin.backend.todo.todobackend.repo;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.javabegin.backend.todo.todobackend.entity.Category;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 
 // You can immediately use all CRUD methods (Create, Read, Update, Delete)
@@ -24,4 +27,39 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
             " and c.user.email=:email  " + // filtering for a specific user
             " order by c.title asc") // sorting by title
     List<Category> findByTitle(@Param("title") String title, @Param("email") String email);
+
+    // titles with the number of tasks (autocomplete); the counters are kept by triggers
+    @Query("select c.title, coalesce(c.completedCount, 0) + coalesce(c.uncompletedCount, 0) from Category c where c.user.email = :email")
+    List<Object[]> findTitleCounts(@Param("email") String email);
+
+    // owner of the category without loading the entity
+    @Query("select c.user.id from Category c where c.id = :id")
+    Optional<Long> findUserIdById(@Param("id") Long id);
+
+    // current version for clients that don't send it (optimistic locking)
+    @Query("select c.version from Category c where c.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    // update without reading the category first; no version - the last write wins, no userId - any owner
+    // returns 0 if there is no such category, the version differs or it belongs to another user
+    @Modifying
+    @Query("update Category c set c.title = :title, c.version = c.version + 1 where c.id = :id " +
+            "and (:version is null or c.version = :version) and (:userId is null or c.user.id = :userId)")
+    int updateTitle(@Param("id") Long id, @Param("version") Long version, @Param("userId") Long userId,
+                    @Param("title") String title);
+
+    // delete without loading the entity first (as deleteById does)
+    @Modifying
+    @Query("delete from Category c where c.id = :id")
+    int deleteInBulk(@Param("id") Long id);
+
+    // counters are recalculated from the tasks in one statement (after moving many tasks at once)
+    // archived tasks (all of them are completed) are counted too
+    @Modifying
+    @Query(value = "update todolist.category c set " +
+            "completed_count = (select count(*) from todolist.task t where t.category_id = c.id and t.completed = 1) " +
+            "                + (select count(*) from todolist.task_archive a where a.category_id = c.id and a.completed = 1), " +
+            "uncompleted_count = (select count(*) from todolist.task t where t.category_id = c.id and coalesce(t.completed, 0) = 0) " +
+            "where c.id in (:ids)", nativeQuery = true)
+    int recalculateCounters(@Param("ids") Collection<Long> ids);
 }
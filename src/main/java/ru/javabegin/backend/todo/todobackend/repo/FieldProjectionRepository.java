@@ -0,0 +1,68 @@
+package ru.javabegin.backend.todo.todobackend.repo;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// queries that read only the selected fields (see FieldSet); conditions are the same JPQL as in the repositories
+@Repository
+public class FieldProjectionRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // fields - resolved by fieldSet.resolve(...), entity - JPQL entity name, where - conditions with named parameters
+    public <E> List<Map<String, Object>> findAll(FieldSet<E> fieldSet, List<String> fields, String entity,
+                                                 String where, Map<String, ?> params, Sort sort) {
+        String jpql = QueryUtils.applySorting(selectQuery(fieldSet, fields, entity, where), sort, fieldSet.getAlias());
+        return rows(fieldSet, fields, query(jpql, params));
+    }
+
+    public <E> Page<Map<String, Object>> findPage(FieldSet<E> fieldSet, List<String> fields, String entity,
+                                                  String where, Map<String, ?> params, Pageable pageable) {
+        String jpql = QueryUtils.applySorting(selectQuery(fieldSet, fields, entity, where), pageable.getSort(), fieldSet.getAlias());
+
+        Query query = query(jpql, params);
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize());
+        List<Map<String, Object>> content = rows(fieldSet, fields, query);
+
+        // count only if the page doesn't show that it is the last one (as Spring Data does)
+        String alias = fieldSet.getAlias();
+        return PageableExecutionUtils.getPage(content, pageable, () -> ((Number) query(
+                "select count(" + alias + ") from " + entity + " " + alias + " where " + where, params)
+                .getSingleResult()).longValue());
+    }
+
+    private static <E> String selectQuery(FieldSet<E> fieldSet, List<String> fields, String entity, String where) {
+        return "select " + fieldSet.select(fields) + " from " + entity + " " + fieldSet.getAlias() + " "
+                + fieldSet.joins(fields) + " where " + where;
+    }
+
+    private Query query(String jpql, Map<String, ?> params) {
+        Query query = entityManager.createQuery(jpql);
+        params.forEach(query::setParameter);
+        return query;
+    }
+
+    private static <E> List<Map<String, Object>> rows(FieldSet<E> fieldSet, List<String> fields, Query query) {
+        List<?> result = query.getResultList();
+        List<Map<String, Object>> rows = new ArrayList<>(result.size());
+        for (Object row : result) {
+            // one selected column comes as the value itself
+            rows.add(fieldSet.toMap(row instanceof Object[] values ? values : new Object[]{row}, fields));
+        }
+        return rows;
+    }
+
+}
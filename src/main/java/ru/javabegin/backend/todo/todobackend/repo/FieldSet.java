@@ -0,0 +1,144 @@
+package ru.javabegin.backend.todo.todobackend.repo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/*
+
+Fields of an entity that a client can select instead of the whole object (like in GraphQL):
+"fields": ["id", "title", "priority.title"] -> {"id": 1, "title": "...", "priority": {"id": 2, "title": "..."}}
+
+Every field knows its JPQL path (only selected columns are read, joins are added only when needed)
+and how to read it from a loaded entity (for results from the in-memory caches).
+A name of a reference ("priority") selects all its fields; the id of a reference is always selected,
+a reference with id null (task without priority) is written as null like in the full object.
+
+*/
+
+public final class FieldSet<E> {
+
+    private record Field<E>(String name, String path, String join, Function<E, Object> accessor) {
+    }
+
+    private final String alias; // alias of the entity in the query
+    private final Map<String, Field<E>> fields = new LinkedHashMap<>();
+
+    public FieldSet(String alias) {
+        this.alias = alias;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    // column of the entity itself
+    public FieldSet<E> field(String name, Function<E, Object> accessor) {
+        fields.put(name, new Field<>(name, alias + "." + name, null, accessor));
+        return this;
+    }
+
+    // field of a reference ("priority.title"), read through the join (left join: the reference can be null)
+    public FieldSet<E> field(String name, String path, String join, Function<E, Object> accessor) {
+        fields.put(name, new Field<>(name, path, join, accessor));
+        return this;
+    }
+
+    // requested names -> selected fields in declaration order; IllegalArgumentException for an unknown name
+    public List<String> resolve(Collection<String> requested) {
+        Set<String> selected = new LinkedHashSet<>();
+        for (String name : requested) {
+            String trimmed = name.trim();
+            boolean found = false;
+            for (String field : fields.keySet()) {
+                if (field.equals(trimmed) || field.startsWith(trimmed + ".")) {
+                    selected.add(field);
+                    found = true;
+                }
+            }
+            if (!found) {
+                throw new IllegalArgumentException("unknown field: " + trimmed);
+            }
+        }
+        // id of every selected reference (to write a missing reference as null)
+        for (String field : List.copyOf(selected)) {
+            int dot = field.indexOf('.');
+            if (dot > 0) {
+                selected.add(field.substring(0, dot) + ".id");
+            }
+        }
+
+        List<String> result = new ArrayList<>();
+        for (String field : fields.keySet()) {
+            if (selected.contains(field)) {
+                result.add(field);
+            }
+        }
+        return result;
+    }
+
+    // select clause for the resolved fields
+    String select(List<String> names) {
+        List<String> paths = new ArrayList<>(names.size());
+        for (String name : names) {
+            paths.add(fields.get(name).path());
+        }
+        return String.join(", ", paths);
+    }
+
+    // joins needed by the resolved fields
+    String joins(List<String> names) {
+        Set<String> joins = new LinkedHashSet<>();
+        for (String name : names) {
+            String join = fields.get(name).join();
+            if (join != null) {
+                joins.add(join);
+            }
+        }
+        return String.join(" ", joins);
+    }
+
+    // one row of the query (values in the order of names)
+    Map<String, Object> toMap(Object[] row, List<String> names) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            put(map, names.get(i), row[i]);
+        }
+        return nullReferences(map);
+    }
+
+    // entity that is already loaded
+    public Map<String, Object> toMap(E entity, List<String> names) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (String name : names) {
+            put(map, name, fields.get(name).accessor().apply(entity));
+        }
+        return nullReferences(map);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void put(Map<String, Object> map, String name, Object value) {
+        int dot = name.indexOf('.');
+        if (dot < 0) {
+            map.put(name, value);
+        } else {
+            Map<String, Object> reference = (Map<String, Object>) map.computeIfAbsent(name.substring(0, dot), key -> new LinkedHashMap<>());
+            reference.put(name.substring(dot + 1), value);
+        }
+    }
+
+    private static Map<String, Object> nullReferences(Map<String, Object> map) {
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (entry.getValue() instanceof Map<?, ?> reference && reference.get("id") == null) {
+                entry.setValue(null);
+            }
+        }
+        return map;
+    }
+
+}
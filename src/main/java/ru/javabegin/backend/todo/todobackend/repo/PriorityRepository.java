@@ -1,6 +1,7 @@
 package ru.javabegin.backend.todo.todobackend.repo;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -8,6 +9,7 @@ import ru.javabegin.backend.todo.todobackend.entity.Priority;
 
 
 import java.util.List;
+import java.util.Optional;
 
 // OOP principle: abstraction-implementation — here we describe all available ways to access data
 @Repository
@@ -24,5 +26,30 @@ public interface PriorityRepository extends JpaRepository<Priority, Long> {
             "order by p.title asc") // sorting by title
     List<Priority> findByTitle(@Param("title") String title, @Param("email") String email);
 
+    // titles with the number of tasks (autocomplete)
+    @Query("select p.title, count(t) from Priority p left join Task t on t.priority = p where p.user.email = :email group by p.id, p.title")
+    List<Object[]> findTitleCounts(@Param("email") String email);
+
+    // owner of the priority without loading the entity
+    @Query("select p.user.id from Priority p where p.id = :id")
+    Optional<Long> findUserIdById(@Param("id") Long id);
+
+    // current version for clients that don't send it (optimistic locking)
+    @Query("select p.version from Priority p where p.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    // update without reading the priority first; no version - the last write wins, no userId - any owner
+    // returns 0 if there is no such priority, the version differs or it belongs to another user
+    @Modifying
+    @Query("update Priority p set p.title = :title, p.color = :color, p.version = p.version + 1 where p.id = :id " +
+            "and (:version is null or p.version = :version) and (:userId is null or p.user.id = :userId)")
+    int updateValues(@Param("id") Long id, @Param("version") Long version, @Param("userId") Long userId,
+                     @Param("title") String title, @Param("color") String color);
+
+    // delete without loading the entity first (as deleteById does)
+    @Modifying
+    @Query("delete from Priority p where p.id = :id")
+    int deleteInBulk(@Param("id") Long id);
+
 }
 
@@ -0,0 +1,46 @@
+package ru.javabegin.backend.todo.todobackend.repo;
+
+import ru.javabegin.backend.todo.todobackend.entity.Category;
+import ru.javabegin.backend.todo.todobackend.entity.Priority;
+import ru.javabegin.backend.todo.todobackend.entity.Task;
+
+// fields a client can select for tasks, categories and priorities (the same names as in the JSON of the entities)
+public final class SelectableFields {
+
+    private static final String JOIN_PRIORITY = "left join t.priority p";
+    private static final String JOIN_CATEGORY = "left join t.category c";
+
+    // also used for the archive (ArchivedTask has the same fields)
+    public static final FieldSet<Task> TASK = new FieldSet<Task>("t")
+            .field("id", Task::getId)
+            .field("title", Task::getTitle)
+            .field("completed", Task::getCompleted)
+            .field("taskDate", Task::getTaskDate)
+            .field("version", Task::getVersion)
+            .field("priority.id", "p.id", JOIN_PRIORITY, t -> t.getPriority() == null ? null : t.getPriority().getId())
+            .field("priority.title", "p.title", JOIN_PRIORITY, t -> t.getPriority() == null ? null : t.getPriority().getTitle())
+            .field("priority.color", "p.color", JOIN_PRIORITY, t -> t.getPriority() == null ? null : t.getPriority().getColor())
+            .field("priority.version", "p.version", JOIN_PRIORITY, t -> t.getPriority() == null ? null : t.getPriority().getVersion())
+            .field("category.id", "c.id", JOIN_CATEGORY, t -> t.getCategory() == null ? null : t.getCategory().getId())
+            .field("category.title", "c.title", JOIN_CATEGORY, t -> t.getCategory() == null ? null : t.getCategory().getTitle())
+            .field("category.completedCount", "c.completedCount", JOIN_CATEGORY, t -> t.getCategory() == null ? null : t.getCategory().getCompletedCount())
+            .field("category.uncompletedCount", "c.uncompletedCount", JOIN_CATEGORY, t -> t.getCategory() == null ? null : t.getCategory().getUncompletedCount())
+            .field("category.version", "c.version", JOIN_CATEGORY, t -> t.getCategory() == null ? null : t.getCategory().getVersion());
+
+    public static final FieldSet<Category> CATEGORY = new FieldSet<Category>("c")
+            .field("id", Category::getId)
+            .field("title", Category::getTitle)
+            .field("completedCount", Category::getCompletedCount)
+            .field("uncompletedCount", Category::getUncompletedCount)
+            .field("version", Category::getVersion);
+
+    public static final FieldSet<Priority> PRIORITY = new FieldSet<Priority>("p")
+            .field("id", Priority::getId)
+            .field("title", Priority::getTitle)
+            .field("color", Priority::getColor)
+            .field("version", Priority::getVersion);
+
+    private SelectableFields() {
+    }
+
+}
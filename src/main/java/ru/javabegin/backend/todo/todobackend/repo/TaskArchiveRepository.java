@@ -0,0 +1,76 @@
+package ru.javabegin.backend.todo.todobackend.repo;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import ru.javabegin.backend.todo.todobackend.entity.ArchivedTask;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+// archive of old completed tasks (filled by TaskArchiveJob)
+@Repository
+public interface TaskArchiveRepository extends JpaRepository<ArchivedTask, Long> {
+
+    // same conditions as TaskRepository.findByParams
+    @Query("SELECT t FROM ArchivedTask t where " + TaskRepository.SEARCH_CONDITIONS)
+    Page<ArchivedTask> findByParams(@Param("title") String title,
+                                    @Param("completed") Boolean completed,
+                                    @Param("priorityId") Long priorityId,
+                                    @Param("categoryId") Long categoryId,
+                                    @Param("email") String email,
+                                    @Param("dateFrom") Date dateFrom,
+                                    @Param("dateTo") Date dateTo,
+                                    Pageable pageable
+    );
+
+    // earliest task that will be archived (to create the yearly partitions before moving)
+    @Query(value = "select min(task_date) from todolist.task where completed = 1 and task_date < :before", nativeQuery = true)
+    Date findFirstDateToArchive(@Param("before") Date before);
+
+    // moves one batch of old completed tasks with one statement (rows locked by other nodes are skipped)
+    // returns (user_id, category_id) of the moved tasks
+    @Query(value = "with moved as (" +
+            "    delete from todolist.task t where t.id in (" +
+            "        select id from todolist.task where completed = 1 and task_date < :before" +
+            "        order by task_date limit :limit for update skip locked)" +
+            "    returning t.id, t.title, t.completed, t.task_date, t.priority_id, t.category_id, t.user_id, t.version" +
+            ") " +
+            "insert into todolist.task_archive (id, title, completed, task_date, priority_id, category_id, user_id, version) " +
+            "select id, title, completed, task_date, priority_id, category_id, user_id, version from moved " +
+            "returning user_id, category_id", nativeQuery = true)
+    List<Object[]> archiveBatch(@Param("before") Date before, @Param("limit") int limit);
+
+    // totals of the user include archived tasks (DB triggers decrement them when a task is deleted from todolist.task)
+    @Modifying
+    @Query(value = "update todolist.stat s set " +
+            "completed_total = (select count(*) from todolist.task t where t.user_id = s.user_id and t.completed = 1) " +
+            "                + (select count(*) from todolist.task_archive a where a.user_id = s.user_id and a.completed = 1), " +
+            "uncompleted_total = (select count(*) from todolist.task t where t.user_id = s.user_id and coalesce(t.completed, 0) = 0) " +
+            "where s.user_id in (:userIds)", nativeQuery = true)
+    int recalculateStat(@Param("userIds") Collection<Long> userIds);
+
+    // archived tasks keep no references to deleted categories/priorities (as tasks in todolist.task)
+
+    @Modifying
+    @Query(value = "update todolist.task_archive set category_id = null where category_id = :categoryId", nativeQuery = true)
+    int detachCategory(@Param("categoryId") Long categoryId);
+
+    @Modifying
+    @Query(value = "update todolist.task_archive set priority_id = null where priority_id = :priorityId", nativeQuery = true)
+    int detachPriority(@Param("priorityId") Long priorityId);
+
+    @Modifying
+    @Query(value = "update todolist.task_archive set category_id = :targetId where category_id = :categoryId", nativeQuery = true)
+    int moveToCategory(@Param("categoryId") Long categoryId, @Param("targetId") Long targetId);
+
+    @Modifying
+    @Query(value = "update todolist.task_archive set priority_id = :targetId where priority_id = :priorityId", nativeQuery = true)
+    int moveToPriority(@Param("priorityId") Long priorityId, @Param("targetId") Long targetId);
+
+}
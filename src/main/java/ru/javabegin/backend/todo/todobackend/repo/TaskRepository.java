@@ -3,31 +3,37 @@ package ru.javabegin.backend.todo.todobackend.repo;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.javabegin.backend.todo.todobackend.entity.Task;
 
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 // OOP principle: abstraction-implementation — here we describe all available ways to access data
 @Repository
-public interface TaskRepository extends JpaRepository<Task, Long> {
+public interface TaskRepository extends JpaRepository<Task, Long>, TaskUpdateRepository {
 
-    @Query("SELECT t FROM Task t where " +
+    // conditions of the task search (alias t), also used by the archive search and by the field projection
+    String SEARCH_CONDITIONS =
             "(:title is null or :title='' or lower(t.title) like lower(concat('%', :title,'%'))) and" +
             "(:completed is null or t.completed=:completed) and " +  // consider that parameter can be null or empty
             "(:priorityId is null or t.priority.id=:priorityId) and " +
             "(:categoryId is null or t.category.id=:categoryId) and " +
-            "(:categoryId is null or t.category.id=:categoryId) and " +
             "(" +
             "(cast(:dateFrom as timestamp) is null or t.taskDate>=:dateFrom) and " +
             "(cast(:dateTo as timestamp) is null or t.taskDate<=:dateTo)" +
             ") and " +
-            "(t.user.email=:email)" // show tasks only for the specified user, not all
-    )
+            // show tasks only for the specified user, not all; the id is found first (one value for the whole query),
+            // so the tasks are read by index (user_id, sort column, id) already in the order of the page (TaskSort)
+            "t.user.id = (select u.id from User u where u.email = :email)";
+
+    @Query("SELECT t FROM Task t where " + SEARCH_CONDITIONS)
         // search by all provided parameters (empty parameters will be ignored)
     Page<Task> findByParams(@Param("title") String title,
                             @Param("completed") Boolean completed,
@@ -44,5 +50,69 @@ public interface TaskRepository extends JpaRepository<Task, Long> {
 
     List<Task> findByCategory_IdOrderByTaskDateAsc(Long categoryId);
 
+    // tasks of a category in pages (keyset on task_date, id - index task_category_date_id_idx), tasks without date last;
+    // the size of a page is given by Pageable (PageRequest.of(0, size))
+
+    String CATEGORY_TASKS = "select t from Task t left join fetch t.priority left join fetch t.category " +
+            "where t.category.id = :categoryId and t.user.email = :email ";
+
+    @Query(CATEGORY_TASKS + "and t.taskDate is not null order by t.taskDate, t.id")
+    List<Task> findCategoryTasks(@Param("categoryId") Long categoryId, @Param("email") String email, Pageable pageable);
+
+    @Query(CATEGORY_TASKS + "and (t.taskDate, t.id) > (:afterDate, :afterId) order by t.taskDate, t.id")
+    List<Task> findCategoryTasksAfter(@Param("categoryId") Long categoryId, @Param("email") String email,
+                                      @Param("afterDate") Date afterDate, @Param("afterId") Long afterId, Pageable pageable);
+
+    @Query(CATEGORY_TASKS + "and t.taskDate is null and t.id > :afterId order by t.id")
+    List<Task> findUndatedCategoryTasksAfter(@Param("categoryId") Long categoryId, @Param("email") String email,
+                                             @Param("afterId") Long afterId, Pageable pageable);
+
+    // all tasks of the user with priority and category in one query (for the in-memory working set)
+    @Query("select t from Task t left join fetch t.priority left join fetch t.category where t.user.email = :email")
+    List<Task> findWorkingSet(@Param("email") String email);
+
+    @Query("select t from Task t left join fetch t.priority left join fetch t.category where t.id = :id")
+    Optional<Task> findWithReferencesById(@Param("id") Long id);
+
+    // tasks of a remembered search result (TaskSearchCache), in any order
+    @Query("select t from Task t left join fetch t.priority left join fetch t.category where t.id in :ids")
+    List<Task> findWithReferencesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // distinct titles of the user's tasks with the number of tasks (autocomplete)
+    @Query("select t.title, count(t) from Task t where t.user.email = :email and t.title is not null group by t.title")
+    List<Object[]> findTitleCounts(@Param("email") String email);
+
+    // for optimistic locking: current version and owner without loading the entity
+    @Query("select t.version from Task t where t.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query("select t.user.id from Task t where t.id = :id")
+    Optional<Long> findUserIdById(@Param("id") Long id);
+
+    // old title before an update (autocomplete counts), only for users whose titles are in memory
+    @Query("select t.title from Task t where t.id = :id")
+    Optional<String> findTitleById(@Param("id") Long id);
+
+    // set-based changes of all tasks of a category/priority (one UPDATE statement, entities are not loaded)
+    // the services turn the row triggers on task off for them (RowTriggers, no table lock) and recalculate once
+    // bulk statements also invalidate the Task region of the second-level cache
+    // versions are incremented: clients holding the old task must not write the old category/priority back
+
+    @Modifying
+    @Query("update versioned Task t set t.category = null where t.category.id = :categoryId")
+    int detachCategory(@Param("categoryId") Long categoryId);
+
+    @Modifying
+    @Query(value = "update todolist.task set category_id = :targetId, version = version + 1 where category_id = :categoryId", nativeQuery = true)
+    int moveToCategory(@Param("categoryId") Long categoryId, @Param("targetId") Long targetId);
+
+    @Modifying
+    @Query("update versioned Task t set t.priority = null where t.priority.id = :priorityId")
+    int detachPriority(@Param("priorityId") Long priorityId);
+
+    @Modifying
+    @Query(value = "update todolist.task set priority_id = :targetId, version = version + 1 where priority_id = :priorityId", nativeQuery = true)
+    int moveToPriority(@Param("priorityId") Long priorityId, @Param("targetId") Long targetId);
+
 }
 
@@ -0,0 +1,100 @@
+package ru.javabegin.backend.todo.todobackend.repo;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.JpaSort;
+import ru.javabegin.backend.todo.todobackend.entity.Task;
+
+import java.util.Comparator;
+import java.util.Date;
+
+/*
+
+Sort columns of the task search. Each one is read in the order of an index (user_id, column, id)
+from V8__task_sort_indexes.sql, so a page is the first rows of an index range instead of a sort of all tasks of the user:
+- id is the second column in the same direction (equal values always come in the same order);
+- nulls as in the index: last when ascending, first when descending (PostgreSQL reads the index backwards);
+- titles in the collation ucs_basic (order of Unicode code points, V9__task_title_sort_collation.sql): the same order
+  in every database and in TaskWorkingSet, which can't reproduce the default (libc/ICU) collation of the server.
+Other columns are rejected.
+
+*/
+
+public enum TaskSort {
+
+    TASK_DATE("taskDate", "taskDate", Comparator.comparing((Task task) -> time(task.getTaskDate()), Comparator.nullsLast(Comparator.naturalOrder()))),
+    TITLE("title", TaskSort.TITLE_ORDER, Comparator.comparing(Task::getTitle, Comparator.nullsLast(TaskSort::compareTitles))),
+    PRIORITY("priority", "priority.id", Comparator.comparing((Task task) -> task.getPriority() != null ? task.getPriority().getId() : null,
+            Comparator.nullsLast(Comparator.naturalOrder()))),
+    CATEGORY("category", "category.id", Comparator.comparing((Task task) -> task.getCategory() != null ? task.getCategory().getId() : null,
+            Comparator.nullsLast(Comparator.naturalOrder()))),
+    COMPLETED("completed", "completed", Comparator.comparing(Task::getCompleted, Comparator.nullsLast(Comparator.naturalOrder())));
+
+    // JPQL expression (alias t in all task searches), also recognized by TaskWorkingSet
+    public static final String TITLE_ORDER = "collate(t.title as ucs_basic)";
+
+    private static final String ID_PROPERTY = "id";
+
+    private final String key; // sortColumn of the client
+    private final String property; // path in the entity (or a JPQL expression)
+    private final Comparator<Task> ascending; // the same order in memory (nulls last)
+
+    TaskSort(String key, String property, Comparator<Task> ascending) {
+        this.key = key;
+        this.property = property;
+        this.ascending = ascending;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    // IllegalArgumentException for a column without an index; no column: by date
+    public static TaskSort of(String key) {
+        if (key == null || key.isBlank()) {
+            return TASK_DATE;
+        }
+        for (TaskSort sort : values()) {
+            if (sort.key.equals(key.trim())) {
+                return sort;
+            }
+        }
+        throw new IllegalArgumentException("unsupported sortColumn: " + key +
+                " (allowed: taskDate, title, priority, category, completed)");
+    }
+
+    public Sort toSort(Sort.Direction direction) {
+        Sort.NullHandling nulls = direction.isAscending() ? Sort.NullHandling.NULLS_LAST : Sort.NullHandling.NULLS_FIRST;
+        Sort.Order order = property.equals(TITLE_ORDER)
+                ? JpaSort.unsafe(direction, property).iterator().next().with(nulls) // a function: not checked as a property path
+                : new Sort.Order(direction, property, nulls);
+        return Sort.by(order, new Sort.Order(direction, ID_PROPERTY));
+    }
+
+    // the order of toSort(direction) for tasks that are already read (e.g. to merge the results of two queries)
+    public Comparator<Task> comparator(Sort.Direction direction) {
+        Comparator<Task> order = ascending.thenComparing(Task::getId);
+        return direction.isAscending() ? order : order.reversed(); // reversed: nulls first, as in toSort
+    }
+
+    // order of ucs_basic (Unicode code points); String.compareTo compares UTF-16 units and differs above U+FFFF
+    public static int compareTitles(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int codePointA = a.codePointAt(i);
+            int codePointB = b.codePointAt(j);
+            if (codePointA != codePointB) {
+                return Integer.compare(codePointA, codePointB);
+            }
+            i += Character.charCount(codePointA);
+            j += Character.charCount(codePointB);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    // milliseconds (a Timestamp and a Date of the same moment are equal)
+    private static Long time(Date date) {
+        return date != null ? date.getTime() : null;
+    }
+
+}
@@ -0,0 +1,13 @@
+package ru.javabegin.backend.todo.todobackend.repo;
+
+import java.util.Map;
+
+// updates of a task without reading it first (implemented in TaskUpdateRepositoryImpl, used through TaskRepository)
+public interface TaskUpdateRepository {
+
+    // one UPDATE of the given columns (title, completed, taskDate, priority and category as ids) with version + 1
+    // version and userId are checked only if not null
+    // returns the number of changed rows: 0 - not found, changed by somebody else or belongs to another user
+    int updateColumns(Long id, Long version, Long userId, Map<String, Object> values);
+
+}
@@ -0,0 +1,67 @@
+package ru.javabegin.backend.todo.todobackend.repo;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import ru.javabegin.backend.todo.todobackend.entity.Category;
+import ru.javabegin.backend.todo.todobackend.entity.Priority;
+import ru.javabegin.backend.todo.todobackend.entity.Task;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+public class TaskUpdateRepositoryImpl implements TaskUpdateRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int updateColumns(Long id, Long version, Long userId, Map<String, Object> values) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Task> update = cb.createCriteriaUpdate(Task.class);
+        Root<Task> task = update.from(Task.class);
+
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            switch (entry.getKey()) {
+                case "title" -> set(update, cb, task.get("title"), String.class, (String) value);
+                case "completed" -> set(update, cb, task.get("completed"), Boolean.class, (Boolean) value);
+                case "taskDate" -> set(update, cb, task.get("taskDate"), Date.class, (Date) value);
+                // references by id: getReference does not read the priority/category
+                case "priority" -> set(update, cb, task.get("priority"), Priority.class,
+                        value == null ? null : entityManager.getReference(Priority.class, value));
+                case "category" -> set(update, cb, task.get("category"), Category.class,
+                        value == null ? null : entityManager.getReference(Category.class, value));
+                default -> throw new IllegalArgumentException("unknown task field: " + entry.getKey());
+            }
+        }
+        update.set(task.<Long>get("version"), cb.sum(task.<Long>get("version"), 1L));
+
+        List<Predicate> where = new ArrayList<>();
+        where.add(cb.equal(task.get("id"), id));
+        if (version != null) {
+            where.add(cb.equal(task.get("version"), version));
+        }
+        if (userId != null) {
+            where.add(cb.equal(task.get("user").get("id"), userId));
+        }
+        update.where(where.toArray(new Predicate[0]));
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    private static <Y> void set(CriteriaUpdate<Task> update, CriteriaBuilder cb, Path<Y> path, Class<Y> type, Y value) {
+        if (value == null) {
+            update.set(path, cb.nullLiteral(type));
+        } else {
+            update.set(path, value);
+        }
+    }
+
+}
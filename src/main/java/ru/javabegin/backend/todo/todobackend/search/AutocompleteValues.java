@@ -0,0 +1,20 @@
+package ru.javabegin.backend.todo.todobackend.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+// подсказки названий при вводе (/autocomplete)
+public class AutocompleteValues {
+
+    private String email; // для фильтрации значений конкретного пользователя - обязательно заполнять
+    private String prefix; // начало названия (регистр не важен) - обязательно заполнять
+    private String type; // task, category или priority - необязательно заполнять (тогда все)
+    private Integer limit; // сколько подсказок вернуть - необязательно заполнять
+
+}
@@ -0,0 +1,21 @@
+package ru.javabegin.backend.todo.todobackend.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+// задачи одной категории по частям (/task/category/page) или потоком (/task/category/stream)
+public class CategoryTaskValues {
+
+    private String email; // задачи только этого пользователя - обязательно нужно заполнять
+    private Long categoryId; // обязательно нужно заполнять
+
+    private String after; // значение next из предыдущей страницы (null - первая страница)
+    private Integer pageSize; // null - размер по умолчанию
+
+}
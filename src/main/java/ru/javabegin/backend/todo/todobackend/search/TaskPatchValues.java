@@ -0,0 +1,68 @@
+package ru.javabegin.backend.todo.todobackend.search;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@NoArgsConstructor
+// partial update of a task: only the fields present in the JSON are changed
+// (a field sent as null is cleared, a field that is not sent keeps its value)
+public class TaskPatchValues {
+
+    private Long id;
+    private Long version; // version the client has seen (optional: without it the last write wins)
+    private Long userId; // owner of the task (optional)
+
+    private String title;
+    private Boolean completed;
+    private Date taskDate;
+    private Long priorityId;
+    private Long categoryId;
+
+    // Jackson calls setters only for fields present in the JSON
+    @JsonIgnore
+    private final Map<String, Object> changes = new HashMap<>();
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+        changes.put("title", title);
+    }
+
+    public void setCompleted(Boolean completed) {
+        this.completed = completed;
+        changes.put("completed", completed);
+    }
+
+    public void setTaskDate(Date taskDate) {
+        this.taskDate = taskDate;
+        changes.put("taskDate", taskDate);
+    }
+
+    public void setPriorityId(Long priorityId) {
+        this.priorityId = priorityId;
+        changes.put("priority", priorityId);
+    }
+
+    public void setCategoryId(Long categoryId) {
+        this.categoryId = categoryId;
+        changes.put("category", categoryId);
+    }
+
+}
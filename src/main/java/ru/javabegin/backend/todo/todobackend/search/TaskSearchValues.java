@@ -6,6 +6,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.util.Date;
+import java.util.List;
 
 @Getter
 @Setter
@@ -24,6 +25,8 @@ public class TaskSearchValues {
     private Date dateFrom; // для задания периода по датам
     private Date dateTo;
 
+    private Boolean archived; // true - текущие задачи вместе с архивом старых завершенных задач (по умолчанию - только текущие задачи)
+
     // постраничность
     private Integer pageNumber;
     private Integer pageSize;
@@ -32,6 +35,9 @@ public class TaskSearchValues {
     private String sortColumn;
     private String sortDirection;
 
+    // поля задачи в ответе, например ["id", "title", "completed"] или "priority" (null - задачи целиком)
+    private List<String> fields;
+
     // такие же названия должны быть у объекта на frontend
 
 }
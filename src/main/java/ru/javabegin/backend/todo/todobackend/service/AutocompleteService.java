@@ -0,0 +1,63 @@
+package ru.javabegin.backend.todo.todobackend.service;
+
+import jakarta.transaction.Transactional;
+import org.springframework.stereotype.Service;
+import ru.javabegin.backend.todo.todobackend.cache.TitleIndex;
+import ru.javabegin.backend.todo.todobackend.cache.TitleSuggestionCache;
+import ru.javabegin.backend.todo.todobackend.repo.CategoryRepository;
+import ru.javabegin.backend.todo.todobackend.repo.PriorityRepository;
+import ru.javabegin.backend.todo.todobackend.repo.TaskRepository;
+
+import java.util.List;
+
+// title suggestions while the user types (from the in-memory index of the user's titles)
+@Service
+@Transactional(Transactional.TxType.SUPPORTS) // no transaction for answers from memory, the load has its own
+public class AutocompleteService {
+
+    private final TitleSuggestionCache cache;
+    private final TaskRepository taskRepository;
+    private final CategoryRepository categoryRepository;
+    private final PriorityRepository priorityRepository;
+
+    public AutocompleteService(TitleSuggestionCache cache, TaskRepository taskRepository,
+                               CategoryRepository categoryRepository, PriorityRepository priorityRepository) {
+        this.cache = cache;
+        this.taskRepository = taskRepository;
+        this.categoryRepository = categoryRepository;
+        this.priorityRepository = priorityRepository;
+    }
+
+    // type: task, category, priority or null (all); IllegalArgumentException for another one
+    public List<String> suggest(String email, String prefix, String type, int limit) {
+        int kinds = kinds(type);
+        return cache.get(email, () -> load(email)).suggest(prefix, kinds, limit);
+    }
+
+    private TitleIndex load(String email) {
+        TitleIndex.Builder builder = TitleIndex.builder();
+        for (Object[] row : taskRepository.findTitleCounts(email)) {
+            builder.add((String) row[0], ((Number) row[1]).longValue(), TitleIndex.TASK);
+        }
+        for (Object[] row : categoryRepository.findTitleCounts(email)) {
+            builder.add((String) row[0], ((Number) row[1]).longValue(), TitleIndex.CATEGORY);
+        }
+        for (Object[] row : priorityRepository.findTitleCounts(email)) {
+            builder.add((String) row[0], ((Number) row[1]).longValue(), TitleIndex.PRIORITY);
+        }
+        return builder.build();
+    }
+
+    private static int kinds(String type) {
+        if (type == null || type.isEmpty()) {
+            return TitleIndex.ALL;
+        }
+        return switch (type) {
+            case "task" -> TitleIndex.TASK;
+            case "category" -> TitleIndex.CATEGORY;
+            case "priority" -> TitleIndex.PRIORITY;
+            default -> throw new IllegalArgumentException("unknown type: " + type + " (task, category or priority)");
+        };
+    }
+
+}
@@ -0,0 +1,162 @@
+package ru.javabegin.backend.todo.todobackend.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.javabegin.backend.todo.todobackend.dto.BootstrapResponse;
+import ru.javabegin.backend.todo.todobackend.entity.Category;
+import ru.javabegin.backend.todo.todobackend.entity.Priority;
+import ru.javabegin.backend.todo.todobackend.entity.Stat;
+import ru.javabegin.backend.todo.todobackend.jdbc.QueryDeadline;
+import ru.javabegin.backend.todo.todobackend.search.TaskSearchValues;
+import ru.javabegin.backend.todo.todobackend.shard.ShardContext;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/*
+
+Data for the first page after login in one call: categories, priorities, stat and the first page of tasks.
+
+All four are read from one database snapshot. The main transaction (repeatable read, read only) exports its snapshot
+(pg_export_snapshot), the categories, priorities and stat are read in parallel by other threads in their own
+transactions that import this snapshot (SET TRANSACTION SNAPSHOT), the tasks are searched by the main transaction
+at the same time. All of them go to the DB (the task search bypasses TaskWorkingSetCache and TaskSearchCache),
+so the result is consistent as if it was read by one transaction, but takes the time of the slowest query.
+
+Every parallel bootstrap holds 4 connections of the pool. At most todo.bootstrap.parallel-max bootstraps run in parallel,
+the others read everything in the main transaction one after another (1 connection, still one snapshot).
+
+*/
+
+@Service
+public class BootstrapService {
+
+    private static final int PARALLEL_QUERIES = 3; // categories, priorities, stat (tasks - in the calling thread)
+    private static final Pattern SNAPSHOT_ID = Pattern.compile("[0-9A-Fa-f-]+");
+
+    private final CategoryService categoryService;
+    private final PriorityService priorityService;
+    private final StatService statService;
+    private final TaskService taskService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction; // repeatable read, read only
+
+    private final Semaphore parallelPermits;
+    private final ExecutorService executor;
+
+    public BootstrapService(CategoryService categoryService,
+                            PriorityService priorityService,
+                            StatService statService,
+                            TaskService taskService,
+                            JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${todo.bootstrap.parallel-max:2}") int parallelMax) {
+        this.categoryService = categoryService;
+        this.priorityService = priorityService;
+        this.statService = statService;
+        this.taskService = taskService;
+        this.jdbcTemplate = jdbcTemplate;
+
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.transaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.transaction.setReadOnly(true);
+
+        this.parallelPermits = new Semaphore(Math.max(0, parallelMax));
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelMax * PARALLEL_QUERIES), runnable -> {
+            Thread thread = new Thread(runnable, "bootstrap-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // values: email and the parameters of the first task search (the caller checks the email)
+    public BootstrapResponse load(TaskSearchValues values) {
+        if (!parallelPermits.tryAcquire()) {
+            return transaction.execute(status -> loadSequentially(values));
+        }
+        try {
+            return transaction.execute(status -> loadInParallel(values));
+        } finally {
+            parallelPermits.release();
+        }
+    }
+
+    private BootstrapResponse loadSequentially(TaskSearchValues values) {
+        String email = values.getEmail();
+        return new BootstrapResponse(categoryService.findAll(email), priorityService.findAll(email),
+                statService.findStat(email), searchTasks(values));
+    }
+
+    private BootstrapResponse loadInParallel(TaskSearchValues values) {
+        String email = values.getEmail();
+
+        // the snapshot stays importable while this transaction is open (it waits for all queries below)
+        String snapshot = jdbcTemplate.queryForObject("select pg_export_snapshot()", String.class);
+
+        CompletableFuture<List<Category>> categories = inSnapshot(snapshot, () -> categoryService.findAll(email));
+        CompletableFuture<List<Priority>> priorities = inSnapshot(snapshot, () -> priorityService.findAll(email));
+        CompletableFuture<Stat> stat = inSnapshot(snapshot, () -> statService.findStat(email));
+
+        Page<?> tasks;
+        try {
+            tasks = searchTasks(values);
+        } finally {
+            // don't end the exporting transaction while the other threads may still import the snapshot
+            CompletableFuture.allOf(categories, priorities, stat).exceptionally(e -> null).join();
+        }
+
+        return new BootstrapResponse(join(categories), join(priorities), join(stat), tasks);
+    }
+
+    private Page<?> searchTasks(TaskSearchValues values) {
+        // not from the in-memory caches of the task search: they may hold another state than the snapshot
+        return values.getFields() == null || values.getFields().isEmpty()
+                ? taskService.searchInTransaction(values) : taskService.searchFieldsInTransaction(values);
+    }
+
+    // query in another thread and transaction which sees the same data as the exporting transaction
+    private <T> CompletableFuture<T> inSnapshot(String snapshot, Supplier<T> query) {
+        if (!SNAPSHOT_ID.matcher(snapshot).matches()) { // it is put into SQL text (SET can't have bind parameters)
+            throw new IllegalStateException("unexpected snapshot id: " + snapshot);
+        }
+        // the other thread works with the shard of this one (a snapshot exists only in its own database)
+        // and within the deadline of the request
+        return CompletableFuture.supplyAsync(ShardContext.wrap(QueryDeadline.wrap(() -> transaction.execute(status -> {
+            // must be the first statement of the transaction
+            jdbcTemplate.execute("SET TRANSACTION SNAPSHOT '" + snapshot + "'");
+            return query.get();
+        }))), executor);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause; // the same exception as if the query was executed in this thread
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+}
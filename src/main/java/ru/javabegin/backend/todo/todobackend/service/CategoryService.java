@@ -1,13 +1,25 @@
 package ru.javabegin.backend.todo.todobackend.service;
 
 import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 
+import ru.javabegin.backend.todo.todobackend.cache.UserCacheEvictor;
 import ru.javabegin.backend.todo.todobackend.entity.Category;
+import ru.javabegin.backend.todo.todobackend.outbox.OutboxWriter;
 import ru.javabegin.backend.todo.todobackend.repo.CategoryRepository;
+import ru.javabegin.backend.todo.todobackend.repo.FieldProjectionRepository;
+import ru.javabegin.backend.todo.todobackend.repo.SelectableFields;
+import ru.javabegin.backend.todo.todobackend.repo.TaskArchiveRepository;
+import ru.javabegin.backend.todo.todobackend.repo.TaskRepository;
 
 
 import java.util.List;
+import java.util.Map;
 
 
 
@@ -19,25 +31,114 @@ public class CategoryService {
 
 
     private final CategoryRepository repository; // service has the right to access the repository (database)
-
-    public CategoryService(CategoryRepository repository) {
+    private final TaskRepository taskRepository; // tasks of a deleted category are changed in bulk
+    private final TaskArchiveRepository archiveRepository; // archived tasks reference the category too
+    private final UserCacheEvictor cacheEvictor; // cached responses of the user must be dropped after any change
+    private final FieldProjectionRepository projectionRepository; // lists with the selected fields only
+    private final OutboxWriter outbox; // change events in the same transaction
+    private final RowTriggers rowTriggers; // off while the tasks of a deleted category are changed
+    private final JdbcTemplate jdbcTemplate; // lock of the target category (the connection of the transaction)
+    private final boolean bypassTriggers;
+
+    public CategoryService(CategoryRepository repository, TaskRepository taskRepository,
+                           TaskArchiveRepository archiveRepository, UserCacheEvictor cacheEvictor,
+                           FieldProjectionRepository projectionRepository, OutboxWriter outbox,
+                           RowTriggers rowTriggers, JdbcTemplate jdbcTemplate,
+                           @Value("${todo.bulk-delete.bypass-triggers:true}") boolean bypassTriggers) {
         this.repository = repository;
+        this.taskRepository = taskRepository;
+        this.archiveRepository = archiveRepository;
+        this.cacheEvictor = cacheEvictor;
+        this.projectionRepository = projectionRepository;
+        this.outbox = outbox;
+        this.rowTriggers = rowTriggers;
+        this.jdbcTemplate = jdbcTemplate;
+        this.bypassTriggers = bypassTriggers;
     }
 
     public List<Category> findAll(String email) {
         return repository.findByUserEmailOrderByIdAsc(email);
     }
 
+    // only the selected fields (IllegalArgumentException for an unknown field)
+    public List<Map<String, Object>> findAll(String email, List<String> fields) {
+        return projectionRepository.findAll(SelectableFields.CATEGORY, SelectableFields.CATEGORY.resolve(fields), "Category",
+                "c.user.email = :email", Map.of("email", email), Sort.by("id"));
+    }
+
     public Category add(Category category) {
-        return repository.save(category); // save method updates or creates a new object if it didn't exist
+        Category saved = repository.save(category); // save method updates or creates a new object if it didn't exist
+        outbox.rowSaved("category", saved.getId(), true);
+        cacheEvictor.evict(category.getUser());
+        return saved;
     }
 
-    public Category update(Category category) {
-        return repository.save(category); // save method updates or creates a new object if it didn't exist
+    // one UPDATE without reading the category first (as TaskWriter does for tasks), returns the new version
+    // ObjectOptimisticLockingFailureException if the category was changed by somebody else (version differs),
+    // EmptyResultDataAccessException if there is no such category (of this user)
+    public long update(Category category) {
+        Long id = category.getId();
+        Long version = category.getVersion(); // client without versions - the last write wins (as before optimistic locking)
+        Long userId = category.getUser() != null ? category.getUser().getId() : null;
+
+        if (repository.updateTitle(id, version, userId, category.getTitle()) == 0) {
+            Long current = repository.findVersionById(id)
+                    .orElseThrow(() -> new EmptyResultDataAccessException("category id=" + id + " not found", 1));
+            if (version != null && !version.equals(current)) {
+                throw new ObjectOptimisticLockingFailureException(Category.class, id);
+            }
+            throw new EmptyResultDataAccessException("category id=" + id + " not found", 1); // category of another user
+        }
+
+        outbox.rowSaved("category", id, false);
+        cacheEvictor.evictByUserId(userId != null ? userId : repository.findUserIdById(id).orElse(null));
+
+        // the version is known without reading it, if the client sent it
+        return version != null ? version + 1 : repository.findVersionById(id).orElse(0L);
     }
 
     public void deleteById(Long id) {
-        repository.deleteById(id);
+        deleteById(id, null);
+    }
+
+    // tasks of the category are detached (or moved to targetId) with one UPDATE, the category is deleted without loading it;
+    // the row triggers on task are off for the UPDATE (RowTriggers), their work is done once here:
+    // the target is checked and locked as the foreign key check would do, counters and stat are recalculated,
+    // one cache notification is sent for all tasks
+    public void deleteById(Long id, Long targetId) {
+        Long userId = repository.findUserIdById(id)
+                .orElseThrow(() -> new EmptyResultDataAccessException("category id=" + id + " not found", 1));
+
+        // tasks can be moved only to another category of the same user; FOR KEY SHARE - it can't be deleted before commit
+        if (targetId != null && (targetId.equals(id) || jdbcTemplate.queryForList(
+                "select id from todolist.category where id = ? and user_id = ? for key share", Long.class, targetId, userId).isEmpty())) {
+            throw new IllegalArgumentException("category id=" + targetId + " not found");
+        }
+
+        boolean triggersBypassed = bypassTriggers && rowTriggers.disable();
+
+        if (targetId == null) {
+            taskRepository.detachCategory(id);
+            archiveRepository.detachCategory(id);
+        } else {
+            taskRepository.moveToCategory(id, targetId);
+            archiveRepository.moveToCategory(id, targetId);
+        }
+
+        if (triggersBypassed) {
+            rowTriggers.enable(); // the delete of the category itself runs with its triggers (foreign keys, notification)
+            archiveRepository.recalculateStat(List.of(userId));
+            rowTriggers.notifyChanged("task", userId);
+        }
+        if (targetId != null) {
+            repository.recalculateCounters(List.of(targetId)); // counters of the target also count the moved archived tasks
+        }
+
+        outbox.rowDeleted("category", id, targetId);
+        repository.deleteInBulk(id);
+
+        // task search results and category counters of this user are not valid anymore
+        cacheEvictor.evictByUserId(userId);
     }
 
     // find user categories by title
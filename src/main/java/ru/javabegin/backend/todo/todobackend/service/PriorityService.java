@@ -1,37 +1,131 @@
 package ru.javabegin.backend.todo.todobackend.service;
 
 import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import ru.javabegin.backend.todo.todobackend.cache.UserCacheEvictor;
 import ru.javabegin.backend.todo.todobackend.entity.Priority;
+import ru.javabegin.backend.todo.todobackend.outbox.OutboxWriter;
+import ru.javabegin.backend.todo.todobackend.repo.FieldProjectionRepository;
 import ru.javabegin.backend.todo.todobackend.repo.PriorityRepository;
+import ru.javabegin.backend.todo.todobackend.repo.SelectableFields;
+import ru.javabegin.backend.todo.todobackend.repo.TaskArchiveRepository;
+import ru.javabegin.backend.todo.todobackend.repo.TaskRepository;
 
 
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Transactional
 public class PriorityService {
 
     private final PriorityRepository repository;
+    private final TaskRepository taskRepository;
+    private final TaskArchiveRepository archiveRepository; // archived tasks reference the priority too
+    private final UserCacheEvictor cacheEvictor;
+    private final FieldProjectionRepository projectionRepository; // lists with the selected fields only
+    private final OutboxWriter outbox; // change events in the same transaction
+    private final RowTriggers rowTriggers; // off while the tasks of a deleted priority are changed
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean bypassTriggers;
 
-    public PriorityService(PriorityRepository repository) {
+    public PriorityService(PriorityRepository repository, TaskRepository taskRepository,
+                           TaskArchiveRepository archiveRepository, UserCacheEvictor cacheEvictor,
+                           FieldProjectionRepository projectionRepository, OutboxWriter outbox,
+                           RowTriggers rowTriggers, JdbcTemplate jdbcTemplate,
+                           @Value("${todo.bulk-delete.bypass-triggers:true}") boolean bypassTriggers) {
         this.repository = repository;
+        this.taskRepository = taskRepository;
+        this.archiveRepository = archiveRepository;
+        this.cacheEvictor = cacheEvictor;
+        this.projectionRepository = projectionRepository;
+        this.outbox = outbox;
+        this.rowTriggers = rowTriggers;
+        this.jdbcTemplate = jdbcTemplate;
+        this.bypassTriggers = bypassTriggers;
     }
 
     public List<Priority> findAll(String email) {
         return repository.findByUserEmailOrderByIdAsc(email);
     }
 
+    // only the selected fields (IllegalArgumentException for an unknown field)
+    public List<Map<String, Object>> findAll(String email, List<String> fields) {
+        return projectionRepository.findAll(SelectableFields.PRIORITY, SelectableFields.PRIORITY.resolve(fields), "Priority",
+                "p.user.email = :email", Map.of("email", email), Sort.by("id"));
+    }
+
     public Priority add(Priority priority) {
-        return repository.save(priority);
+        Priority saved = repository.save(priority);
+        outbox.rowSaved("priority", saved.getId(), true);
+        cacheEvictor.evict(priority.getUser());
+        return saved;
     }
 
-    public Priority update(Priority priority) {
-        return repository.save(priority);
+    // one UPDATE without reading the priority first (as TaskWriter does for tasks), returns the new version
+    // ObjectOptimisticLockingFailureException if the priority was changed by somebody else (version differs),
+    // EmptyResultDataAccessException if there is no such priority (of this user)
+    public long update(Priority priority) {
+        Long id = priority.getId();
+        Long version = priority.getVersion(); // client without versions - the last write wins (as before optimistic locking)
+        Long userId = priority.getUser() != null ? priority.getUser().getId() : null;
+
+        if (repository.updateValues(id, version, userId,
+                priority.getTitle(), priority.getColor()) == 0) {
+            Long current = repository.findVersionById(id)
+                    .orElseThrow(() -> new EmptyResultDataAccessException("priority id=" + id + " not found", 1));
+            if (version != null && !version.equals(current)) {
+                throw new ObjectOptimisticLockingFailureException(Priority.class, id);
+            }
+            throw new EmptyResultDataAccessException("priority id=" + id + " not found", 1); // priority of another user
+        }
+
+        outbox.rowSaved("priority", id, false);
+        cacheEvictor.evictByUserId(userId != null ? userId : repository.findUserIdById(id).orElse(null));
+
+        // the version is known without reading it, if the client sent it
+        return version != null ? version + 1 : repository.findVersionById(id).orElse(0L);
     }
 
     public void deleteById(Long id) {
-        repository.deleteById(id);
+        deleteById(id, null);
+    }
+
+    // tasks of the priority are detached (or moved to targetId) with one UPDATE, the priority is deleted without loading it;
+    // row triggers on task are off for the UPDATE as in CategoryService.deleteById
+    public void deleteById(Long id, Long targetId) {
+        Long userId = repository.findUserIdById(id)
+                .orElseThrow(() -> new EmptyResultDataAccessException("priority id=" + id + " not found", 1));
+
+        if (targetId != null && (targetId.equals(id) || jdbcTemplate.queryForList(
+                "select id from todolist.priority where id = ? and user_id = ? for key share", Long.class, targetId, userId).isEmpty())) {
+            throw new IllegalArgumentException("priority id=" + targetId + " not found");
+        }
+
+        boolean triggersBypassed = bypassTriggers && rowTriggers.disable();
+
+        if (targetId == null) {
+            taskRepository.detachPriority(id);
+            archiveRepository.detachPriority(id);
+        } else {
+            taskRepository.moveToPriority(id, targetId); // priority does not take part in category/stat counters
+            archiveRepository.moveToPriority(id, targetId);
+        }
+
+        if (triggersBypassed) {
+            rowTriggers.enable();
+            rowTriggers.notifyChanged("task", userId);
+        }
+
+        outbox.rowDeleted("priority", id, targetId);
+        repository.deleteInBulk(id);
+
+        cacheEvictor.evictByUserId(userId);
     }
 
     public Priority findById(Long id) {
@@ -0,0 +1,63 @@
+package ru.javabegin.backend.todo.todobackend.service;
+
+import lombok.extern.java.Log;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.javabegin.backend.todo.todobackend.cache.CacheInvalidationListener;
+
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+
+/*
+
+Row triggers of the current transaction, for set-based changes of many rows (import, delete of a category/priority):
+the counter and notification triggers of todolist.task would run once per row, so they are turned off
+(session_replication_role = replica, no table lock) and the caller does their work once.
+Needs the right to set session_replication_role; without it the triggers stay on and everything still works.
+
+Replica mode skips the foreign key triggers too: the caller checks and locks the referenced rows itself.
+Triggers marked ENABLE ALWAYS (shard ids) still run.
+
+*/
+
+@Component
+@Log
+public class RowTriggers {
+
+    private final JdbcTemplate jdbcTemplate; // uses the connection of the current transaction
+
+    public RowTriggers(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // true if the row triggers are off until enable() or the end of the transaction
+    public boolean disable() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("set local session_replication_role = replica");
+                connection.releaseSavepoint(savepoint);
+                return true;
+            } catch (SQLException e) {
+                connection.rollback(savepoint); // the transaction continues, with the triggers
+                log.info("Row triggers stay on: " + e.getMessage());
+                return false;
+            }
+        }));
+    }
+
+    // the rest of the transaction runs with the triggers again (e.g. the delete of the row the changed rows referenced)
+    public void enable() {
+        jdbcTemplate.execute("set local session_replication_role = origin");
+    }
+
+    // the notification the trigger of the table would have sent (one for all rows of the user); sent on commit
+    public void notifyChanged(String table, long userId) {
+        jdbcTemplate.query("select pg_notify('" + CacheInvalidationListener.CHANNEL + "', ? || ':' || ? || ':' || " +
+                "coalesce(current_setting('application_name', true), ''))", rs -> {
+        }, table, String.valueOf(userId));
+    }
+
+}
@@ -0,0 +1,146 @@
+package ru.javabegin.backend.todo.todobackend.service;
+
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.javabegin.backend.todo.todobackend.cache.UserCacheEvictor;
+import ru.javabegin.backend.todo.todobackend.repo.CategoryRepository;
+import ru.javabegin.backend.todo.todobackend.repo.TaskArchiveRepository;
+import ru.javabegin.backend.todo.todobackend.shard.ShardRouter;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+
+Moves completed tasks older than todo.archive.older-than-days from todolist.task to todolist.task_archive
+(so the live table and its indexes contain only recent and uncompleted tasks).
+
+Each batch is one transaction: DELETE ... RETURNING + INSERT in one statement, then the counters of the affected
+categories and users are recalculated (DB triggers decrement them on delete, but archived tasks still count).
+Several instances may run the job at the same time: rows locked by another instance are skipped.
+With sharding the job runs on every shard (each has its own archive partitions).
+
+*/
+
+@Component
+@Log
+public class TaskArchiveJob {
+
+    private final TaskArchiveRepository archiveRepository;
+    private final CategoryRepository categoryRepository;
+    private final UserCacheEvictor cacheEvictor;
+    private final ShardRouter router;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+
+    private final boolean enabled;
+    private final int olderThanDays;
+    private final int batchSize;
+
+    public TaskArchiveJob(TaskArchiveRepository archiveRepository,
+                          CategoryRepository categoryRepository,
+                          UserCacheEvictor cacheEvictor,
+                          ShardRouter router,
+                          JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${todo.archive.enabled:false}") boolean enabled,
+                          @Value("${todo.archive.older-than-days:365}") int olderThanDays,
+                          @Value("${todo.archive.batch-size:1000}") int batchSize) {
+        this.archiveRepository = archiveRepository;
+        this.categoryRepository = categoryRepository;
+        this.cacheEvictor = cacheEvictor;
+        this.router = router;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.olderThanDays = olderThanDays;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(cron = "${todo.archive.cron:0 30 3 * * *}")
+    public void run() {
+        if (enabled) {
+            router.forEachShard(this::archive);
+        }
+    }
+
+    // returns the number of archived tasks
+    public int archive() {
+        Date before = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(olderThanDays));
+
+        Date first = archiveRepository.findFirstDateToArchive(before);
+        if (first == null) {
+            return 0; // nothing to archive
+        }
+        createPartitions(year(first), year(before));
+
+        int total = 0;
+        int moved;
+        do {
+            moved = transaction.execute(status -> archiveBatch(before));
+            total += moved;
+        } while (moved == batchSize);
+
+        log.info("Archived " + total + " completed tasks older than " + before);
+        return total;
+    }
+
+    private int archiveBatch(Date before) {
+        List<Object[]> moved = archiveRepository.archiveBatch(before, batchSize);
+        if (moved.isEmpty()) {
+            return 0;
+        }
+
+        Set<Long> userIds = new HashSet<>();
+        Set<Long> categoryIds = new HashSet<>();
+        for (Object[] row : moved) {
+            userIds.add(((Number) row[0]).longValue());
+            if (row[1] != null) {
+                categoryIds.add(((Number) row[1]).longValue());
+            }
+        }
+
+        if (!categoryIds.isEmpty()) {
+            categoryRepository.recalculateCounters(categoryIds);
+        }
+        archiveRepository.recalculateStat(userIds);
+
+        // this node ignores its own change notifications, so the caches are dropped here (after commit)
+        for (Long userId : userIds) {
+            cacheEvictor.evictByUserId(userId);
+        }
+        return moved.size();
+    }
+
+    // one partition per year; DDL can't have bind parameters, the values are numbers
+    private void createPartitions(int fromYear, int toYear) {
+        for (int year = fromYear; year <= toYear; year++) {
+            String sql = String.format("create table if not exists todolist.task_archive_%d partition of todolist.task_archive " +
+                    "for values from ('%d-01-01') to ('%d-01-01')", year, year, year + 1);
+            try {
+                // every partition in its own transaction: a failed one does not undo the others
+                transaction.executeWithoutResult(status -> jdbcTemplate.execute(sql));
+            } catch (DataAccessException e) {
+                // created by another instance at the same moment or the default partition has rows of this year
+                // (then the rows of this year stay in the default partition)
+                log.warning("Archive partition for " + year + " is not created: " + e.getMessage());
+            }
+        }
+    }
+
+    private static int year(Date date) {
+        return LocalDate.ofInstant(date.toInstant(), ZoneId.systemDefault()).getYear();
+    }
+
+}
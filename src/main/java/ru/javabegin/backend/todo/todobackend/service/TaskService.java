@@ -2,42 +2,300 @@ package ru.javabegin.backend.todo.todobackend.service;
 
 import jakarta.transaction.Transactional;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import ru.javabegin.backend.todo.todobackend.cache.TaskSearchCache;
+import ru.javabegin.backend.todo.todobackend.cache.TaskWorkingSetCache;
+import ru.javabegin.backend.todo.todobackend.dto.TaskKeysetPage;
+import ru.javabegin.backend.todo.todobackend.entity.ArchivedTask;
 import ru.javabegin.backend.todo.todobackend.entity.Task;
+import ru.javabegin.backend.todo.todobackend.repo.FieldProjectionRepository;
+import ru.javabegin.backend.todo.todobackend.repo.SelectableFields;
+import ru.javabegin.backend.todo.todobackend.repo.TaskArchiveRepository;
 import ru.javabegin.backend.todo.todobackend.repo.TaskRepository;
+import ru.javabegin.backend.todo.todobackend.repo.TaskSort;
+import ru.javabegin.backend.todo.todobackend.search.TaskPatchValues;
+import ru.javabegin.backend.todo.todobackend.search.TaskSearchValues;
 
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Transactional
 public class TaskService {
 
     private final TaskRepository repository;
+    private final TaskArchiveRepository archiveRepository; // old completed tasks (moved by TaskArchiveJob)
+    private final TaskWorkingSetCache workingSets; // optional in-memory copy of the user's tasks (written through)
+    private final TaskSearchCache searchCache; // ids of the found tasks per search (dropped on any change of the user's data)
+    private final TaskWriteQueue writeQueue; // all task changes (synchronous or group commit)
+    private final FieldProjectionRepository projectionRepository; // search results with the selected fields only
 
-    public TaskService(TaskRepository repository) {
+    public TaskService(TaskRepository repository, TaskArchiveRepository archiveRepository,
+                       TaskWorkingSetCache workingSets, TaskSearchCache searchCache, TaskWriteQueue writeQueue,
+                       FieldProjectionRepository projectionRepository) {
         this.repository = repository;
+        this.archiveRepository = archiveRepository;
+        this.workingSets = workingSets;
+        this.searchCache = searchCache;
+        this.writeQueue = writeQueue;
+        this.projectionRepository = projectionRepository;
     }
 
     public List<Task> findAll(String email) {
+        List<Task> cached = workingSets.findAll(email);
+        if (cached != null) {
+            return cached;
+        }
         return repository.findByUserEmailOrderByTaskDateDesc(email);
     }
 
+    // writes go through the queue: it opens the transaction (for one write or for a group of writes)
+
+    @Transactional(Transactional.TxType.SUPPORTS)
     public Task add(Task task) {
-        return repository.save(task);
+        return writeQueue.execute(writer -> writer.add(task));
+    }
+
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public long update(Task task) {
+        return writeQueue.execute(writer -> writer.update(task));
     }
 
-    public Task update(Task task) {
-        return repository.save(task);
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public long patch(TaskPatchValues patch) {
+        return writeQueue.execute(writer -> writer.patch(patch));
     }
 
+    @Transactional(Transactional.TxType.SUPPORTS)
     public void deleteById(Long id) {
-        repository.deleteById(id);
+        writeQueue.execute(writer -> {
+            writer.deleteById(id);
+            return null;
+        });
+    }
+
+    // search by the parameters from the client (/task/search); email is checked by the caller
+    public Page<Task> search(TaskSearchValues values) {
+        return search(values, true);
+    }
+
+    // the same search, but only values.fields are read and returned (IllegalArgumentException for an unknown field)
+    public Page<Map<String, Object>> searchFields(TaskSearchValues values) {
+        return searchFields(values, true);
+    }
+
+    // the same searches only in the DB, without the in-memory caches (working set, search results):
+    // the result is what the current transaction sees (/bootstrap reads everything from one snapshot)
+    public Page<Task> searchInTransaction(TaskSearchValues values) {
+        return search(values, false);
+    }
+
+    public Page<Map<String, Object>> searchFieldsInTransaction(TaskSearchValues values) {
+        return searchFields(values, false);
+    }
+
+    private Page<Task> search(TaskSearchValues values, boolean useCaches) {
+        Boolean completed = completed(values);
+        Date dateFrom = dateFrom(values);
+        Date dateTo = dateTo(values);
+        PageRequest pageRequest = pageRequest(values);
+
+        // old completed tasks are included only if archived = true
+        return Boolean.TRUE.equals(values.getArchived())
+                ? findWithArchivedByParams(values.getTitle(), completed, values.getPriorityId(), values.getCategoryId(), values.getEmail(), dateFrom, dateTo, pageRequest, comparator(values), useCaches)
+                : findByParams(values.getTitle(), completed, values.getPriorityId(), values.getCategoryId(), values.getEmail(), dateFrom, dateTo, pageRequest, useCaches);
+    }
+
+    private Page<Map<String, Object>> searchFields(TaskSearchValues values, boolean useCaches) {
+        List<String> fields = SelectableFields.TASK.resolve(values.getFields());
+
+        if (Boolean.TRUE.equals(values.getArchived())) {
+            // two sources are merged by the sort columns, which may be not among the selected fields - whole tasks are read
+            return search(values, useCaches).map(task -> SelectableFields.TASK.toMap(task, fields));
+        }
+
+        Boolean completed = completed(values);
+        Date dateFrom = dateFrom(values);
+        Date dateTo = dateTo(values);
+        PageRequest pageRequest = pageRequest(values);
+
+        // the working set cache already has whole tasks in memory
+        Page<Task> cached = useCaches ? workingSets.findByParams(values.getTitle(), completed, values.getPriorityId(), values.getCategoryId(), values.getEmail(), dateFrom, dateTo, pageRequest) : null;
+        if (cached != null) {
+            return cached.map(task -> SelectableFields.TASK.toMap(task, fields));
+        }
+
+        Map<String, Object> params = new HashMap<>(); // values can be null
+        params.put("title", values.getTitle());
+        params.put("completed", completed);
+        params.put("priorityId", values.getPriorityId());
+        params.put("categoryId", values.getCategoryId());
+        params.put("email", values.getEmail());
+        params.put("dateFrom", dateFrom);
+        params.put("dateTo", dateTo);
+
+        return projectionRepository.findPage(SelectableFields.TASK, fields, "Task", TaskRepository.SEARCH_CONDITIONS, params, pageRequest);
+    }
+
+    // convert Integer to Boolean
+    private static Boolean completed(TaskSearchValues values) {
+        return values.getCompleted() != null && values.getCompleted() == 1 ? true : false;
+    }
+
+    // to capture all tasks within date range regardless of time - set times from 00:00 to 23:59
+
+    // set time to 00:01 for start date (if specified)
+    private static Date dateFrom(TaskSearchValues values) {
+        if (values.getDateFrom() == null) {
+            return null;
+        }
+        Calendar calendarFrom = Calendar.getInstance();
+        calendarFrom.setTime(values.getDateFrom());
+        calendarFrom.set(Calendar.HOUR_OF_DAY, 0);
+        calendarFrom.set(Calendar.MINUTE, 1);
+        calendarFrom.set(Calendar.SECOND, 1);
+        calendarFrom.set(Calendar.MILLISECOND, 1);
+
+        return calendarFrom.getTime();
+    }
+
+    // set time to 23:59 for end date (if specified)
+    private static Date dateTo(TaskSearchValues values) {
+        if (values.getDateTo() == null) {
+            return null;
+        }
+        Calendar calendarTo = Calendar.getInstance();
+        calendarTo.setTime(values.getDateTo());
+        calendarTo.set(Calendar.HOUR_OF_DAY, 23);
+        calendarTo.set(Calendar.MINUTE, 59);
+        calendarTo.set(Calendar.SECOND, 59);
+        calendarTo.set(Calendar.MILLISECOND, 999);
+
+        return calendarTo.getTime();
+    }
+
+    // sort direction
+    private static Sort.Direction direction(TaskSearchValues values) {
+        String sortDirection = values.getSortDirection();
+        return sortDirection == null || sortDirection.trim().length() == 0 || sortDirection.trim().equals("asc") ? Sort.Direction.ASC : Sort.Direction.DESC;
+    }
+
+    // the order of pageRequest(values) for tasks in memory
+    private static Comparator<Task> comparator(TaskSearchValues values) {
+        return TaskSort.of(values.getSortColumn()).comparator(direction(values));
+    }
+
+    private static PageRequest pageRequest(TaskSearchValues values) {
+        Sort.Direction direction = direction(values);
+
+        /* ID is the second sort field (see TaskSort) to ensure a consistent order.
+           For example, if two tasks have the same priority and we sort by that field,
+           the order of those two records could vary on each query since no secondary sort is specified.
+           Only columns with an index are allowed (IllegalArgumentException for others).
+         */
+        Sort sort = TaskSort.of(values.getSortColumn()).toSort(direction);
+
+        // pagination object
+        return PageRequest.of(values.getPageNumber(), values.getPageSize(), sort);
     }
 
     public Page<Task> findByParams(String text, Boolean completed, Long priorityId, Long categoryId, String email, Date dateFrom, Date dateTo, PageRequest paging) {
-        return repository.findByParams(text, completed, priorityId, categoryId, email, dateFrom, dateTo, paging);
+        return findByParams(text, completed, priorityId, categoryId, email, dateFrom, dateTo, paging, true);
+    }
+
+    private Page<Task> findByParams(String text, Boolean completed, Long priorityId, Long categoryId, String email, Date dateFrom, Date dateTo, PageRequest paging, boolean useCaches) {
+        if (!useCaches) {
+            return repository.findByParams(text, completed, priorityId, categoryId, email, dateFrom, dateTo, paging);
+        }
+        // answered from memory if the working set cache is on
+        Page<Task> cached = workingSets.findByParams(text, completed, priorityId, categoryId, email, dateFrom, dateTo, paging);
+        if (cached != null) {
+            return cached;
+        }
+        // ids of a repeated search are remembered until the user's data changes
+        return searchCache.findByParams(text, completed, priorityId, categoryId, email, dateFrom, dateTo, paging,
+                () -> repository.findByParams(text, completed, priorityId, categoryId, email, dateFrom, dateTo, paging));
+    }
+
+    // live and archived tasks as one result: both are read up to the end of the page in the same order and merged
+    // (the cost grows with the page number; a task archived between the two queries may be missed or returned twice)
+    private Page<Task> findWithArchivedByParams(String text, Boolean completed, Long priorityId, Long categoryId, String email, Date dateFrom, Date dateTo, PageRequest paging, Comparator<Task> order, boolean useCaches) {
+        int end = (int) Math.min(paging.getOffset() + paging.getPageSize(), Integer.MAX_VALUE);
+        PageRequest head = PageRequest.of(0, end, paging.getSort());
+
+        Page<Task> live = findByParams(text, completed, priorityId, categoryId, email, dateFrom, dateTo, head, useCaches);
+        Page<Task> archived = findArchivedByParams(text, completed, priorityId, categoryId, email, dateFrom, dateTo, head);
+
+        List<Task> merged = new ArrayList<>(live.getNumberOfElements() + archived.getNumberOfElements());
+        merged.addAll(live.getContent());
+        merged.addAll(archived.getContent());
+        merged.sort(order);
+
+        int from = (int) Math.min(paging.getOffset(), merged.size());
+        return new PageImpl<>(new ArrayList<>(merged.subList(from, Math.min(end, merged.size()))), paging,
+                live.getTotalElements() + archived.getTotalElements());
+    }
+
+    // search in the archive only (same parameters, archived tasks are returned as usual tasks)
+    public Page<Task> findArchivedByParams(String text, Boolean completed, Long priorityId, Long categoryId, String email, Date dateFrom, Date dateTo, PageRequest paging) {
+        return archiveRepository.findByParams(text, completed, priorityId, categoryId, email, dateFrom, dateTo, paging)
+                .map(ArchivedTask::toTask);
+    }
+
+    // one page of the category's tasks after the cursor (IllegalArgumentException for a malformed cursor)
+    public TaskKeysetPage findByCategoryAfter(String email, Long categoryId, String after, int size) {
+        Date afterDate = null;
+        Long afterId = null;
+        if (after != null && !after.isEmpty()) {
+            // "<taskDate>,<id>" or ",<id>" when the tasks without date are being read
+            int comma = after.indexOf(',');
+            try {
+                afterId = Long.valueOf(after.substring(comma + 1));
+                afterDate = comma > 0 ? Timestamp.from(Instant.parse(after.substring(0, comma))) : null;
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("wrong param: after");
+            }
+        }
+        boolean undatedOnly = afterId != null && afterDate == null;
+
+        // one more than needed: shows whether there is a next page
+        List<Task> tasks = new ArrayList<>(size + 1);
+        if (!undatedOnly) {
+            tasks.addAll(afterId == null
+                    ? repository.findCategoryTasks(categoryId, email, PageRequest.of(0, size + 1))
+                    : repository.findCategoryTasksAfter(categoryId, email, afterDate, afterId, PageRequest.of(0, size + 1)));
+        }
+        if (tasks.size() <= size) {
+            // dated tasks are over - continue with the tasks without date
+            tasks.addAll(repository.findUndatedCategoryTasksAfter(categoryId, email, undatedOnly ? afterId : 0L,
+                    PageRequest.of(0, size + 1 - tasks.size())));
+        }
+
+        if (tasks.size() <= size) {
+            return new TaskKeysetPage(tasks, null);
+        }
+        tasks = tasks.subList(0, size);
+        return new TaskKeysetPage(tasks, cursor(tasks.get(size - 1)));
+    }
+
+    // exact value of the timestamp (JSON dates have milliseconds only, the column has microseconds)
+    private static String cursor(Task task) {
+        Date date = task.getTaskDate();
+        if (date == null) {
+            return "," + task.getId();
+        }
+        Instant instant = date instanceof Timestamp timestamp ? timestamp.toInstant() : date.toInstant();
+        return instant + "," + task.getId();
     }
 
     public Task findById(Long id) {
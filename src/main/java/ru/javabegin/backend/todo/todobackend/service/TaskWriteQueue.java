@@ -0,0 +1,235 @@
+package ru.javabegin.backend.todo.todobackend.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.javabegin.backend.todo.todobackend.shard.ShardContext;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/*
+
+All task changes go through this queue.
+
+By default (todo.write-queue.enabled=false) a change is executed at once in its own transaction.
+In asynchronous mode the changes are put into a bounded queue and one writer thread executes them in groups:
+one transaction (one commit = one fsync in PostgreSQL) for up to todo.write-queue.max-batch changes.
+The writer waits for more changes not longer than todo.write-queue.max-latency-ms after the first one.
+The caller gets the result only after the commit of its group, so the client gets an answer as before.
+
+If one change of a group fails in the DB, the group is rolled back and its changes are executed one by one.
+If the queue is full, the change is executed synchronously by the caller (back pressure instead of errors).
+With sharding a group has one transaction per shard of its changes.
+
+*/
+
+@Component
+@Log
+public class TaskWriteQueue {
+
+    private final TaskWriter writer;
+    private final TransactionTemplate transaction;
+
+    private final boolean enabled;
+    private final int maxBatch;
+    private final long maxLatencyNanos;
+
+    private final BlockingQueue<Item<?>> queue;
+    private final DistributionSummary batchSizes;
+    private final Thread writerThread;
+    private volatile boolean running;
+
+    public TaskWriteQueue(TaskWriter writer,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry,
+                          @Value("${todo.write-queue.enabled:false}") boolean enabled,
+                          @Value("${todo.write-queue.capacity:10000}") int capacity,
+                          @Value("${todo.write-queue.max-batch:100}") int maxBatch,
+                          @Value("${todo.write-queue.max-latency-ms:5}") long maxLatencyMs) {
+        this.writer = writer;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMs);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        this.batchSizes = DistributionSummary.builder("todo.write.queue.batch.size")
+                .description("task changes committed in one transaction")
+                .register(meterRegistry);
+        meterRegistry.gauge("todo.write.queue.size", queue, BlockingQueue::size);
+
+        if (enabled) {
+            running = true;
+            writerThread = new Thread(this::drain, "task-write-queue");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        } else {
+            writerThread = null;
+        }
+    }
+
+    // changes still in the queue are committed before the application stops
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (writerThread != null) {
+            writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    // executes the change and returns its result after commit (exceptions of the change are thrown to the caller)
+    public <T> T execute(Function<TaskWriter, T> operation) {
+        // synchronous: queue is off/stopped, or the caller has its own transaction (the change must be a part of it)
+        if (!running || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return executeAlone(operation);
+        }
+
+        Item<T> item = new Item<>(operation);
+        if (!queue.offer(item)) {
+            return executeAlone(operation); // queue is full
+        }
+
+        try {
+            return item.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the task change", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private <T> T executeAlone(Function<TaskWriter, T> operation) {
+        return transaction.execute(status -> operation.apply(writer));
+    }
+
+    private void drain() {
+        List<Item<?>> batch = new ArrayList<>(maxBatch);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                Item<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - batch.size());
+
+                // wait a little for more changes (up to max-latency after the first one)
+                long deadline = System.nanoTime() + maxLatencyNanos;
+                while (batch.size() < maxBatch) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) {
+                        break;
+                    }
+                    Item<?> next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatch - batch.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Item<?>> batch) {
+        Map<String, List<Item<?>>> byShard = new LinkedHashMap<>();
+        for (Item<?> item : batch) {
+            byShard.computeIfAbsent(item.shard, shard -> new ArrayList<>()).add(item);
+        }
+        byShard.forEach((shard, items) -> ShardContext.run(shard, () -> commitGroup(items)));
+    }
+
+    private void commitGroup(List<Item<?>> batch) {
+        batchSizes.record(batch.size());
+
+        try {
+            transaction.executeWithoutResult(status -> {
+                for (Item<?> item : batch) {
+                    item.apply(writer);
+                }
+            });
+        } catch (RuntimeException e) {
+            // some change failed in the DB (the transaction is aborted) - each change in its own transaction
+            if (batch.size() > 1) {
+                log.warning("Group of " + batch.size() + " task changes rolled back (" + e.getMessage() + "), retried one by one");
+            }
+            for (Item<?> item : batch) {
+                try {
+                    transaction.executeWithoutResult(status -> item.apply(writer));
+                    item.complete();
+                } catch (RuntimeException single) {
+                    item.result.completeExceptionally(single);
+                }
+            }
+            return;
+        }
+
+        for (Item<?> item : batch) {
+            item.complete();
+        }
+    }
+
+    private static final class Item<T> {
+        final Function<TaskWriter, T> operation;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final String shard = ShardContext.current(); // of the caller's request
+
+        T value;
+        RuntimeException failure;
+
+        Item(Function<TaskWriter, T> operation) {
+            this.operation = operation;
+        }
+
+        // expected answers (not found, version conflict) are thrown by TaskWriter before anything is changed in the DB,
+        // so they are given to the caller and the other changes of the group are committed
+        void apply(TaskWriter writer) {
+            value = null;
+            failure = null;
+            try {
+                value = operation.apply(writer);
+            } catch (EmptyResultDataAccessException | ObjectOptimisticLockingFailureException e) {
+                failure = e;
+            }
+        }
+
+        void complete() {
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(value);
+            }
+        }
+    }
+
+}
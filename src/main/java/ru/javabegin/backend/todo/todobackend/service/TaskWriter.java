@@ -0,0 +1,150 @@
+package ru.javabegin.backend.todo.todobackend.service;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import ru.javabegin.backend.todo.todobackend.cache.TaskWorkingSetCache;
+import ru.javabegin.backend.todo.todobackend.cache.TitleSuggestionCache;
+import ru.javabegin.backend.todo.todobackend.cache.UserCacheEvictor;
+import ru.javabegin.backend.todo.todobackend.entity.Task;
+import ru.javabegin.backend.todo.todobackend.entity.User;
+import ru.javabegin.backend.todo.todobackend.outbox.OutboxWriter;
+import ru.javabegin.backend.todo.todobackend.reminder.ReminderScheduler;
+import ru.javabegin.backend.todo.todobackend.repo.TaskRepository;
+import ru.javabegin.backend.todo.todobackend.search.TaskPatchValues;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// task changes; always called inside a transaction opened by TaskWriteQueue
+// (no @Transactional here: an expected exception of one write must not mark a whole group of writes for rollback)
+@Component
+public class TaskWriter {
+
+    private final TaskRepository repository;
+    private final UserCacheEvictor cacheEvictor; // task changes also change category counters (DB triggers)
+    private final TaskWorkingSetCache workingSets; // optional in-memory copy of the user's tasks (written through)
+    private final ReminderScheduler reminders; // due dates (changes are applied after commit)
+    private final TitleSuggestionCache titles; // autocomplete (changes are applied after commit)
+    private final OutboxWriter outbox; // change events in the same transaction
+
+    public TaskWriter(TaskRepository repository, UserCacheEvictor cacheEvictor, TaskWorkingSetCache workingSets,
+                      ReminderScheduler reminders, TitleSuggestionCache titles, OutboxWriter outbox) {
+        this.repository = repository;
+        this.cacheEvictor = cacheEvictor;
+        this.workingSets = workingSets;
+        this.reminders = reminders;
+        this.titles = titles;
+        this.outbox = outbox;
+    }
+
+    public Task add(Task task) {
+        // id and version are set by an earlier attempt if its group of changes was rolled back
+        task.setId(null);
+        task.setVersion(null);
+
+        Task saved = repository.save(task);
+        outbox.rowSaved("task", saved.getId(), true);
+        cacheEvictor.tasksChanged(task.getUser());
+        workingSets.taskSaved(saved.getId(), task.getUser());
+        reminders.taskSaved(saved.getId(), task.getUser() != null ? task.getUser().getId() : null, saved.getCompleted(), saved.getTaskDate());
+        titles.taskTitleSaved(task.getUser(), saved.getTitle());
+        return saved;
+    }
+
+    // full update: all editable columns are written with one UPDATE without reading the task first
+    // returns the new version of the task
+    public long update(Task task) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("title", task.getTitle());
+        values.put("completed", task.getCompleted());
+        values.put("taskDate", task.getTaskDate());
+        values.put("priority", task.getPriority() != null ? task.getPriority().getId() : null);
+        values.put("category", task.getCategory() != null ? task.getCategory().getId() : null);
+
+        Long userId = task.getUser() != null ? task.getUser().getId() : null;
+        Optional<String> oldTitle = oldTitle(task.getId(), task.getUser());
+        long version = write(task.getId(), task.getVersion(), userId, values);
+        if (userId != null) {
+            reminders.taskSaved(task.getId(), userId, task.getCompleted(), task.getTaskDate());
+        } else {
+            reminders.taskChanged(task.getId()); // the owner is taken from the DB
+        }
+        titleChanged(task.getUser(), oldTitle, task.getTitle());
+        return version;
+    }
+
+    // partial update: only the fields sent by the client are written
+    public long patch(TaskPatchValues patch) {
+        User owner = null;
+        Optional<String> oldTitle = Optional.empty();
+        if (patch.getChanges().containsKey("title") && patch.getUserId() != null) {
+            owner = new User();
+            owner.setId(patch.getUserId());
+            oldTitle = oldTitle(patch.getId(), owner);
+        }
+
+        long version = write(patch.getId(), patch.getVersion(), patch.getUserId(), patch.getChanges());
+        if (patch.getChanges().containsKey("completed") || patch.getChanges().containsKey("taskDate")) {
+            reminders.taskChanged(patch.getId());
+        }
+        if (owner != null) {
+            titleChanged(owner, oldTitle, (String) patch.getChanges().get("title"));
+        }
+        return version;
+    }
+
+    // title before the update, read only if the user's autocomplete titles are in memory (empty - not read)
+    private Optional<String> oldTitle(Long id, User user) {
+        if (user == null || user.getId() == null || !titles.isLoaded(user)) {
+            return Optional.empty();
+        }
+        return Optional.of(repository.findTitleById(id).orElse(""));
+    }
+
+    // autocomplete counts change only with the title: a completion or a new date is not a new use of the title
+    private void titleChanged(User user, Optional<String> oldTitle, String newTitle) {
+        oldTitle.ifPresent(title -> titles.taskTitleChanged(user, title, newTitle));
+    }
+
+    // throws ObjectOptimisticLockingFailureException if the task was changed after the client read it (version differs)
+    // and EmptyResultDataAccessException if there is no such task (of this user)
+    private long write(Long id, Long version, Long userId, Map<String, Object> values) {
+        int updated = values.isEmpty() ? 0 : repository.updateColumns(id, version, userId, values);
+
+        if (updated == 0) {
+            Long current = repository.findVersionById(id)
+                    .orElseThrow(() -> new EmptyResultDataAccessException("task id=" + id + " not found", 1));
+            if (version != null && !version.equals(current)) {
+                throw new ObjectOptimisticLockingFailureException(Task.class, id);
+            }
+            if (!values.isEmpty()) {
+                throw new EmptyResultDataAccessException("task id=" + id + " not found", 1); // task of another user
+            }
+            return current; // nothing to change
+        }
+
+        outbox.rowSaved("task", id, false);
+
+        User owner = new User();
+        owner.setId(userId != null ? userId : repository.findUserIdById(id).orElse(null));
+        cacheEvictor.tasksChanged(owner);
+        workingSets.taskSaved(id, owner);
+
+        // the version is known without reading it, if the client sent it
+        return version != null ? version + 1 : repository.findVersionById(id).orElse(0L);
+    }
+
+    public void deleteById(Long id) {
+        repository.findById(id).ifPresent(task -> {
+            cacheEvictor.tasksChanged(task.getUser());
+            workingSets.taskDeleted(id, task.getUser());
+            titles.taskTitleDeleted(task.getUser(), task.getTitle());
+        });
+        outbox.rowDeleted("task", id);
+        repository.deleteById(id);
+        reminders.taskDeleted(id);
+    }
+
+}
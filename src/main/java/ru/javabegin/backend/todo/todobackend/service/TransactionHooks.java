@@ -0,0 +1,27 @@
+package ru.javabegin.backend.todo.todobackend.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// helpers for work that must only happen once the current transaction is committed
+public final class TransactionHooks {
+
+    private TransactionHooks() {
+    }
+
+    // runs the action after commit, or immediately if there is no active transaction
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+}
@@ -0,0 +1,77 @@
+package ru.javabegin.backend.todo.todobackend.service;
+
+import org.springframework.stereotype.Component;
+import ru.javabegin.backend.todo.todobackend.entity.User;
+import ru.javabegin.backend.todo.todobackend.repo.UserRepository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// resolves the owner email of an entity (clients send only user.id in the request body)
+@Component
+public class UserResolver {
+
+    private static final int MAX_ENTRIES = 100_000;
+
+    private final UserRepository userRepository;
+
+    // email never changes for a user, so id -> email (and back) can be remembered
+    private final Map<Long, String> emails = new ConcurrentHashMap<>();
+    private final Map<String, Long> ids = new ConcurrentHashMap<>();
+
+    public UserResolver(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    // returns null if the user is unknown
+    public String emailOf(User user) {
+        if (user == null || user.getId() == null) {
+            return null;
+        }
+        return emailOf(user.getId());
+    }
+
+    public String emailOf(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+
+        String email = emails.get(userId);
+        if (email != null) {
+            return email;
+        }
+
+        // we don't trust the email sent by the client - always take it from the DB
+        email = userRepository.findById(userId).map(User::getEmail).orElse(null);
+        if (email != null) {
+            if (emails.size() >= MAX_ENTRIES) {
+                emails.clear();
+            }
+            emails.put(userId, email);
+        }
+        return email;
+    }
+
+    // id of the user with exactly this email (surrounding spaces are ignored), null if there is no such user
+    public Long userIdOf(String email) {
+        if (email == null || email.isBlank()) {
+            return null;
+        }
+        String trimmed = email.trim();
+
+        Long userId = ids.get(trimmed);
+        if (userId != null) {
+            return userId;
+        }
+
+        userId = userRepository.findByEmail(trimmed).map(User::getId).orElse(null);
+        if (userId != null) {
+            if (ids.size() >= MAX_ENTRIES) {
+                ids.clear();
+            }
+            ids.put(trimmed, userId);
+        }
+        return userId;
+    }
+
+}
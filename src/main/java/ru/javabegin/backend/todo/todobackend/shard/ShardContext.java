@@ -0,0 +1,54 @@
+package ru.javabegin.backend.todo.todobackend.shard;
+
+import java.util.function.Supplier;
+
+// shard of the current thread: ShardRoutingDataSource gives connections of this shard
+// (it must be set before the transaction gets its connection; null = the directory shard)
+public final class ShardContext {
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    public static <T> T call(String shard, Supplier<T> action) {
+        String previous = CURRENT.get();
+        set(shard);
+        try {
+            return action.get();
+        } finally {
+            set(previous);
+        }
+    }
+
+    public static void run(String shard, Runnable action) {
+        call(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    // for work handed over to another thread
+    public static Runnable wrap(Runnable action) {
+        String shard = current();
+        return shard == null ? action : () -> run(shard, action);
+    }
+
+    public static <T> Supplier<T> wrap(Supplier<T> action) {
+        String shard = current();
+        return shard == null ? action : () -> call(shard, action);
+    }
+
+    static void set(String shard) {
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package ru.javabegin.backend.todo.todobackend.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// connection pools of the shards in the order of todo.sharding.shards; the first shard is also the directory
+// (all users with their passwords for the login, data of the users whose slots it owns)
+public final class ShardDataSources implements AutoCloseable {
+
+    private final Map<String, HikariDataSource> dataSources;
+
+    ShardDataSources(Map<String, HikariDataSource> dataSources) {
+        this.dataSources = dataSources;
+    }
+
+    public String directory() {
+        return dataSources.keySet().iterator().next();
+    }
+
+    public List<String> names() {
+        return new ArrayList<>(dataSources.keySet());
+    }
+
+    public HikariDataSource get(String shard) {
+        HikariDataSource dataSource = dataSources.get(shard);
+        if (dataSource == null) {
+            throw new IllegalArgumentException("unknown shard: " + shard);
+        }
+        return dataSource;
+    }
+
+    Map<String, HikariDataSource> asMap() {
+        return dataSources;
+    }
+
+    @Override
+    public void close() {
+        dataSources.values().forEach(HikariDataSource::close);
+    }
+
+}
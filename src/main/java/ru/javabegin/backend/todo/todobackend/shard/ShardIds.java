@@ -0,0 +1,34 @@
+package ru.javabegin.backend.todo.todobackend.shard;
+
+/*
+
+Users are divided into SLOTS slots (user_id % SLOTS), the slots are divided between the shards (ShardRing).
+All rows of a user are on the shard of the user's slot.
+
+Ids of tasks, categories and priorities created with sharding carry the slot of the owner (db/sharding/V1__shard_ids.sql):
+MARKER | sequence << SLOT_BITS | slot, so a request with only an id is routed without looking for the row.
+Ids stay below 2^53 (exact numbers in JavaScript clients); ids created before sharding are below MARKER.
+
+*/
+
+public final class ShardIds {
+
+    public static final int SLOT_BITS = 10;
+    public static final int SLOTS = 1 << SLOT_BITS;
+    public static final int MAX_SHARDS = 64; // the id sequences of the shards step by it (start = index of the shard)
+
+    static final long MARKER = 1L << 52;
+
+    private ShardIds() {
+    }
+
+    public static int slotOfUser(long userId) {
+        return (int) Math.floorMod(userId, (long) SLOTS);
+    }
+
+    // -1 for ids created before sharding (the owner must be looked for)
+    public static int slotOfId(long id) {
+        return (id & MARKER) != 0 ? (int) (id & (SLOTS - 1)) : -1;
+    }
+
+}
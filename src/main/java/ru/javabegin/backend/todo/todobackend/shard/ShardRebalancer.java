@@ -0,0 +1,176 @@
+package ru.javabegin.backend.todo.todobackend.shard;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.java.Log;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.javabegin.backend.todo.todobackend.cache.UserCacheEvictor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+
+Moves the data of users to the shard that owns their slot now (after a shard was added to todo.sharding.shards
+and the application restarted with it). Per user: copy to the target and commit, then delete on the source and commit.
+Ids stay the same (they carry the slot, not the shard), so links to tasks keep working.
+
+The move is not online: run it before opening traffic to the new configuration.
+A failed move can be repeated - existing rows are skipped on the target and deleted again on the source.
+POST /admin/shards/rebalance only starts it on a background thread (start()), the result is in status().
+
+*/
+
+@Component
+@Log
+@ConditionalOnProperty(name = "todo.sharding.enabled", havingValue = "true")
+public class ShardRebalancer {
+
+    // in the order of the foreign keys
+    private static final String[] TABLES = {"category", "priority", "task", "task_archive"};
+
+    private final ShardDataSources shards;
+    private final ShardRouter router;
+    private final UserCacheEvictor cacheEvictor;
+    private final JdbcTemplate jdbcTemplate;
+
+    // one rebalance at a time, outside of the request that started it
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "shard-rebalance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private boolean running;
+    private Map<String, Integer> lastMoved; // result of the last finished run
+    private String lastError;
+
+    public ShardRebalancer(ShardDataSources shards, ShardRouter router, UserCacheEvictor cacheEvictor, JdbcTemplate jdbcTemplate) {
+        this.shards = shards;
+        this.router = router;
+        this.cacheEvictor = cacheEvictor;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+    }
+
+    // false if a rebalance is already running
+    public synchronized boolean start() {
+        if (running) {
+            return false;
+        }
+        running = true;
+        runner.execute(() -> {
+            Map<String, Integer> moved = null;
+            String error = null;
+            try {
+                moved = rebalance();
+            } catch (RuntimeException e) {
+                log.severe("Rebalance failed: " + e);
+                error = e.getMessage();
+            }
+            finished(moved, error);
+        });
+        return true;
+    }
+
+    private synchronized void finished(Map<String, Integer> moved, String error) {
+        running = false;
+        lastMoved = moved;
+        lastError = error;
+    }
+
+    // running, moved (shard -> users moved from it in the last run) or error of the last run
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running);
+        status.put("moved", lastMoved);
+        status.put("error", lastError);
+        return status;
+    }
+
+    // shard -> number of users moved from it
+    public Map<String, Integer> rebalance() {
+        Map<String, Integer> moved = new LinkedHashMap<>();
+        for (String source : shards.names()) {
+            int count = 0;
+            for (long userId : usersOf(source)) {
+                String target = router.shardOfUser(userId);
+                if (!target.equals(source)) {
+                    move(userId, source, target);
+                    count++;
+                }
+            }
+            moved.put(source, count);
+            log.info("Moved " + count + " users from shard " + source);
+        }
+        return moved;
+    }
+
+    private List<Long> usersOf(String shard) {
+        List<Long> userIds = new ArrayList<>();
+        try (Connection connection = shards.get(shard).getConnection();
+             PreparedStatement select = connection.prepareStatement(
+                     "select user_id from todolist.category union select user_id from todolist.priority " +
+                             "union select user_id from todolist.task union select user_id from todolist.task_archive");
+             ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                userIds.add(rs.getLong(1));
+            }
+        } catch (SQLException e) {
+            throw jdbcTemplate.getExceptionTranslator().translate("users of shard " + shard, null, e);
+        }
+        return userIds;
+    }
+
+    private void move(long userId, String source, String target) {
+        router.place(userId, target);
+
+        try (Connection from = shards.get(source).getConnection();
+             Connection to = shards.get(target).getConnection()) {
+            // the copy is one transaction on the target, the delete one transaction on the source
+            boolean toAutoCommit = ShardRowCopier.begin(to);
+            try {
+                for (String table : TABLES) {
+                    ShardRowCopier.copy(from, to, table, "user_id", userId);
+                }
+                ShardRowCopier.recalculateCounters(to, userId);
+                to.commit();
+            } finally {
+                ShardRowCopier.end(to, toAutoCommit);
+            }
+
+            boolean fromAutoCommit = ShardRowCopier.begin(from);
+            try {
+                for (int i = TABLES.length - 1; i >= 0; i--) {
+                    ShardRowCopier.update(from, "delete from todolist." + TABLES[i] + " where user_id = ?", userId);
+                }
+                if (!source.equals(shards.directory())) {
+                    // the directory keeps every user (login)
+                    ShardRowCopier.update(from, "delete from todolist.stat where user_id = ?", userId);
+                    ShardRowCopier.update(from, "delete from todolist.user_data where id = ?", userId);
+                }
+                from.commit();
+            } finally {
+                ShardRowCopier.end(from, fromAutoCommit);
+            }
+        } catch (SQLException e) {
+            throw jdbcTemplate.getExceptionTranslator().translate("moving user " + userId + " from shard " + source + " to " + target, null, e);
+        }
+
+        cacheEvictor.evictByUserId(userId);
+    }
+
+}
@@ -0,0 +1,65 @@
+package ru.javabegin.backend.todo.todobackend.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+
+Consistent hashing of the slots: every shard has virtual-nodes points on a ring of 64 bit hashes,
+a slot belongs to the first shard point after the hash of the slot. Adding a shard takes only about
+1/N of the slots from the others (instead of moving almost everything as with slot % N).
+The owner of every slot is computed once, so routing is an array lookup.
+
+*/
+
+final class ShardRing {
+
+    private final String[] owners = new String[ShardIds.SLOTS];
+
+    ShardRing(Collection<String> shards, int virtualNodes) {
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String shard : shards) {
+            for (int node = 0; node < virtualNodes; node++) {
+                // the same owner for equal hashes regardless of the order of the shards
+                ring.merge(hash(shard + "#" + node), shard, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+
+        for (int slot = 0; slot < ShardIds.SLOTS; slot++) {
+            Map.Entry<Long, String> point = ring.ceilingEntry(hash("slot#" + slot));
+            owners[slot] = (point != null ? point : ring.firstEntry()).getValue();
+        }
+    }
+
+    String ownerOf(int slot) {
+        return owners[slot];
+    }
+
+    // shard -> number of its slots
+    Map<String, Integer> slotCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String owner : owners) {
+            counts.merge(owner, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    // FNV-1a with a final mix (the same on every instance, unlike String.hashCode it spreads over 64 bits)
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
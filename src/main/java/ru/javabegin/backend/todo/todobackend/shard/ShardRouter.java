@@ -0,0 +1,166 @@
+package ru.javabegin.backend.todo.todobackend.shard;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// finds the shard of a user or of a row; without sharding (todo.sharding.enabled=false) everything runs as before
+// lookups use their own connections, so they are called outside of transactions
+@Component
+public class ShardRouter {
+
+    private static final int MAX_ENTRIES = 100_000;
+    private static final Set<String> TABLES_WITH_SHARD_IDS = Set.of("task", "category", "priority");
+
+    private final ShardDataSources shards; // null without sharding
+    private final ShardRing ring;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<String, Long> userIds = new ConcurrentHashMap<>(); // email never changes for a user
+    private final Set<Long> placedUsers = ConcurrentHashMap.newKeySet(); // the row of the user is on the user's shard
+
+    public ShardRouter(ObjectProvider<ShardDataSources> shards,
+                       JdbcTemplate jdbcTemplate,
+                       @Value("${todo.sharding.virtual-nodes:128}") int virtualNodes) {
+        this.shards = shards.getIfAvailable();
+        this.ring = this.shards != null ? new ShardRing(this.shards.names(), virtualNodes) : null;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public boolean isEnabled() {
+        return shards != null;
+    }
+
+    public String shardOfUser(long userId) {
+        return ring.ownerOf(ShardIds.slotOfUser(userId));
+    }
+
+    // null if there is no such user
+    public String shardOfEmail(String email) {
+        Long userId = userIdOf(email);
+        if (userId == null) {
+            return null;
+        }
+        String shard = shardOfUser(userId);
+        place(userId, shard);
+        return shard;
+    }
+
+    // null if there is no such row on any shard
+    public String shardOfRow(String table, long id) {
+        if (!TABLES_WITH_SHARD_IDS.contains(table)) {
+            throw new IllegalArgumentException("no shard ids in table " + table);
+        }
+        int slot = ShardIds.slotOfId(id);
+        if (slot >= 0) {
+            return ring.ownerOf(slot);
+        }
+
+        // created before sharding: the row is looked for on every shard
+        for (String shard : shards.names()) {
+            Boolean found = ShardContext.call(shard, () ->
+                    jdbcTemplate.query("select 1 from todolist." + table + " where id = ?", (ResultSetExtractor<Boolean>) ResultSet::next, id));
+            if (Boolean.TRUE.equals(found)) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    // the action works with the shard of the user (the directory shard for an unknown user)
+    public <T> T forUser(String email, Supplier<T> action) {
+        if (shards == null) {
+            return action.get();
+        }
+        String shard = shardOfEmail(email);
+        return shard != null ? ShardContext.call(shard, action) : action.get();
+    }
+
+    public <T> T forRow(String table, long id, Supplier<T> action) {
+        if (shards == null) {
+            return action.get();
+        }
+        String shard = shardOfRow(table, id);
+        return shard != null ? ShardContext.call(shard, action) : action.get();
+    }
+
+    // background jobs: the action once per shard
+    public void forEachShard(Runnable action) {
+        if (shards == null) {
+            action.run();
+            return;
+        }
+        for (String shard : shards.names()) {
+            ShardContext.run(shard, action);
+        }
+    }
+
+    // for connections outside of the pool (LISTEN)
+    public List<String> jdbcUrls(String defaultUrl) {
+        if (shards == null) {
+            return List.of(defaultUrl);
+        }
+        return shards.names().stream().map(shard -> shards.get(shard).getJdbcUrl()).toList();
+    }
+
+    // shard -> number of its slots
+    public Map<String, Integer> slotCounts() {
+        return ring != null ? ring.slotCounts() : Map.of();
+    }
+
+    private Long userIdOf(String email) {
+        Long userId = userIds.get(email);
+        if (userId != null) {
+            return userId;
+        }
+
+        userId = ShardContext.call(shards.directory(), () -> jdbcTemplate.query(
+                "select id from todolist.user_data where email = ?", rs -> rs.next() ? rs.getLong(1) : null, email));
+        if (userId != null) {
+            if (userIds.size() >= MAX_ENTRIES) {
+                userIds.clear();
+            }
+            userIds.put(email, userId);
+        }
+        return userId;
+    }
+
+    // users are created in the directory; their row is copied to their shard before the first request there
+    // (foreign keys of the user's rows, queries by email)
+    void place(long userId, String shard) {
+        if (shard.equals(shards.directory()) || placedUsers.contains(userId)) {
+            return;
+        }
+
+        try (Connection from = shards.get(shards.directory()).getConnection();
+             Connection to = shards.get(shard).getConnection()) {
+            boolean autoCommit = ShardRowCopier.begin(to);
+            try {
+                ShardRowCopier.copy(from, to, "user_data", "id", userId);
+                ShardRowCopier.ensureStat(to, userId);
+                to.commit();
+            } finally {
+                ShardRowCopier.end(to, autoCommit);
+            }
+        } catch (SQLException e) {
+            throw jdbcTemplate.getExceptionTranslator().translate("placing user " + userId + " on shard " + shard, null, e);
+        }
+
+        if (placedUsers.size() >= MAX_ENTRIES) {
+            placedUsers.clear();
+        }
+        placedUsers.add(userId);
+    }
+
+}
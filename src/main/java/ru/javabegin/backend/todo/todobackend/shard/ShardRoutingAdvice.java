@@ -0,0 +1,102 @@
+package ru.javabegin.backend.todo.todobackend.shard;
+
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+import ru.javabegin.backend.todo.todobackend.entity.Category;
+import ru.javabegin.backend.todo.todobackend.entity.Priority;
+import ru.javabegin.backend.todo.todobackend.entity.Task;
+import ru.javabegin.backend.todo.todobackend.entity.User;
+import ru.javabegin.backend.todo.todobackend.search.LoginRequest;
+import ru.javabegin.backend.todo.todobackend.search.TaskPatchValues;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/*
+
+Shard of a request by its body (read before the controller method, so before any transaction):
+the email (a string or the email field of search parameters), the owner of a sent object (user.id)
+or the id of the object. The login stays in the directory shard (it has all users).
+
+*/
+
+@ControllerAdvice
+@ConditionalOnProperty(name = "todo.sharding.enabled", havingValue = "true")
+public class ShardRoutingAdvice extends RequestBodyAdviceAdapter {
+
+    private final ShardRouter router;
+
+    public ShardRoutingAdvice(ShardRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType,
+                            Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                Class<? extends HttpMessageConverter<?>> converterType) {
+        String shard = shardOf(body, ShardRoutingInterceptor.tableOf(parameter.getContainingClass()));
+        if (shard != null) {
+            ShardContext.set(shard);
+        }
+        return body;
+    }
+
+    private String shardOf(Object body, String table) {
+        if (body instanceof LoginRequest) {
+            return null;
+        }
+        if (body instanceof String email) {
+            return router.shardOfEmail(email.trim());
+        }
+        if (body instanceof Long id) {
+            return table != null ? router.shardOfRow(table, id) : null;
+        }
+        if (body instanceof Map<?, ?> values) {
+            return values.get("categoryId") instanceof Number categoryId ? router.shardOfRow("category", categoryId.longValue()) : null;
+        }
+        if (body instanceof Task task) {
+            return ofOwner(task.getUser(), "task", task.getId());
+        }
+        if (body instanceof Category category) {
+            return ofOwner(category.getUser(), "category", category.getId());
+        }
+        if (body instanceof Priority priority) {
+            return ofOwner(priority.getUser(), "priority", priority.getId());
+        }
+        if (body instanceof TaskPatchValues patch) {
+            return patch.getUserId() != null ? ofUser(patch.getUserId()) : patch.getId() != null ? router.shardOfRow("task", patch.getId()) : null;
+        }
+
+        // search parameters and other values with the email of the user
+        BeanWrapper values = PropertyAccessorFactory.forBeanPropertyAccess(body);
+        if (values.isReadableProperty("email") && values.getPropertyValue("email") instanceof String email) {
+            return router.shardOfEmail(email.trim());
+        }
+        return null;
+    }
+
+    private String ofOwner(User user, String table, Long id) {
+        if (user != null && user.getId() != null) {
+            return ofUser(user.getId());
+        }
+        return id != null ? router.shardOfRow(table, id) : null;
+    }
+
+    private String ofUser(long userId) {
+        String shard = router.shardOfUser(userId);
+        router.place(userId, shard);
+        return shard;
+    }
+
+}
@@ -0,0 +1,17 @@
+package ru.javabegin.backend.todo.todobackend.shard;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+// the DataSource of the application with sharding: connections of the shard from ShardContext
+final class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    ShardRoutingDataSource() {
+        setLenientFallback(false); // an unknown shard name is an error, only "no shard" means the directory shard
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+
+}
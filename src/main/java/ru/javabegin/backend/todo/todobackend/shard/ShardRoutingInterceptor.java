@@ -0,0 +1,67 @@
+package ru.javabegin.backend.todo.todobackend.shard;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import ru.javabegin.backend.todo.todobackend.controller.CategoryController;
+import ru.javabegin.backend.todo.todobackend.controller.PriorityController;
+import ru.javabegin.backend.todo.todobackend.controller.TaskController;
+
+import java.util.Map;
+
+// shard of requests with the id in the path (/task/delete/{id}); requests with a body are routed by ShardRoutingAdvice
+// the shard is removed from the thread after the request (threads of the server are reused)
+@Component
+@ConditionalOnProperty(name = "todo.sharding.enabled", havingValue = "true")
+public class ShardRoutingInterceptor implements AsyncHandlerInterceptor {
+
+    private static final Map<Class<?>, String> TABLES = Map.of(
+            TaskController.class, "task",
+            CategoryController.class, "category",
+            PriorityController.class, "priority");
+
+    private final ShardRouter router;
+
+    public ShardRoutingInterceptor(ShardRouter router) {
+        this.router = router;
+    }
+
+    // table of the ids the controller works with (null for others)
+    static String tableOf(Class<?> controller) {
+        return TABLES.get(controller);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ShardContext.set(null);
+        if (handler instanceof HandlerMethod method) {
+            String table = tableOf(method.getBeanType());
+            @SuppressWarnings("unchecked")
+            Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+            if (table != null && variables != null && variables.get("id") != null) {
+                try {
+                    ShardContext.set(router.shardOfRow(table, Long.parseLong(variables.get("id"))));
+                } catch (NumberFormatException ignored) {
+                    // the controller answers it
+                }
+            }
+        }
+        return true;
+    }
+
+    // the asynchronous part got the shard through the TaskDecorator
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ShardContext.set(null);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ShardContext.set(null);
+    }
+
+}
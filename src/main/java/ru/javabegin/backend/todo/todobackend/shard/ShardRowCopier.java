@@ -0,0 +1,100 @@
+package ru.javabegin.backend.todo.todobackend.shard;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+// rows of one user from one shard to another with the same ids (all columns, whatever the table has)
+final class ShardRowCopier {
+
+    private static final int BATCH_SIZE = 500;
+
+    private ShardRowCopier() {
+    }
+
+    // rows that already exist on the target are kept (a move can be repeated after a failure)
+    static int copy(Connection from, Connection to, String table, String column, long value) throws SQLException {
+        try (PreparedStatement select = from.prepareStatement("select * from todolist." + table + " where " + column + " = ?")) {
+            select.setLong(1, value);
+            try (ResultSet rs = select.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int columns = meta.getColumnCount();
+                StringBuilder names = new StringBuilder();
+                StringBuilder parameters = new StringBuilder();
+                for (int i = 1; i <= columns; i++) {
+                    names.append(i > 1 ? ", " : "").append(meta.getColumnName(i));
+                    parameters.append(i > 1 ? ", ?" : "?");
+                }
+
+                // overriding: ids of identity columns are taken from the source too
+                String insert = "insert into todolist." + table + " (" + names + ") overriding system value values (" + parameters + ") " +
+                        "on conflict do nothing";
+                int rows = 0;
+                try (PreparedStatement statement = to.prepareStatement(insert)) {
+                    while (rs.next()) {
+                        for (int i = 1; i <= columns; i++) {
+                            statement.setObject(i, rs.getObject(i));
+                        }
+                        statement.addBatch();
+                        if (++rows % BATCH_SIZE == 0) {
+                            statement.executeBatch();
+                        }
+                    }
+                    statement.executeBatch();
+                }
+                return rows;
+            }
+        }
+    }
+
+    // the stat row is not copied (its id belongs to the source shard), it's created if missing
+    static void ensureStat(Connection connection, long userId) throws SQLException {
+        update(connection, "insert into todolist.stat (user_id, completed_total, uncompleted_total) " +
+                "select ?, 0, 0 where not exists (select 1 from todolist.stat where user_id = ?)", userId, userId);
+    }
+
+    // counters of the copied rows are not trusted (the insert triggers of the target have added to them)
+    static void recalculateCounters(Connection connection, long userId) throws SQLException {
+        ensureStat(connection, userId);
+        // archived tasks are counted too (as by TaskArchiveJob)
+        update(connection, "update todolist.category c set " +
+                "completed_count = (select count(*) from todolist.task t where t.category_id = c.id and t.completed = 1) " +
+                "                + (select count(*) from todolist.task_archive a where a.category_id = c.id and a.completed = 1), " +
+                "uncompleted_count = (select count(*) from todolist.task t where t.category_id = c.id and coalesce(t.completed, 0) = 0) " +
+                "where c.user_id = ?", userId);
+        update(connection, "update todolist.stat s set " +
+                "completed_total = (select count(*) from todolist.task t where t.user_id = s.user_id and t.completed = 1) " +
+                "                + (select count(*) from todolist.task_archive a where a.user_id = s.user_id and a.completed = 1), " +
+                "uncompleted_total = (select count(*) from todolist.task t where t.user_id = s.user_id and coalesce(t.completed, 0) = 0) " +
+                "where s.user_id = ?", userId);
+    }
+
+    // connections of the pools are in auto-commit mode (the pool default): the copy of a user is one transaction
+    // returns the mode to restore with end()
+    static boolean begin(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        return autoCommit;
+    }
+
+    // before the connection goes back to the pool: what was not committed is rolled back, the mode is restored
+    static void end(Connection connection, boolean autoCommit) throws SQLException {
+        try {
+            connection.rollback();
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    static int update(Connection connection, String sql, long... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setLong(i + 1, parameters[i]);
+            }
+            return statement.executeUpdate();
+        }
+    }
+
+}
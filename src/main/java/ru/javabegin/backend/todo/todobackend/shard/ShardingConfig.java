@@ -0,0 +1,100 @@
+package ru.javabegin.backend.todo.todobackend.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import ru.javabegin.backend.todo.todobackend.cache.NodeIdentity;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+
+Sharding by user (todo.sharding.enabled=true): one connection pool per shard of todo.sharding.shards
+("name=jdbc url" separated by commas; user, password and pool settings are the spring.datasource ones),
+the application DataSource chooses the pool by ShardContext.
+
+Every shard gets the migrations of db/migration and the shard id generator of db/sharding
+(own history table, the index of the shard in the list is a placeholder - so don't reorder the list, only append).
+A new shard database needs the baseline schema todolist first (pg_dump --schema-only of the first database).
+
+*/
+
+@Configuration
+@ConditionalOnProperty(name = "todo.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    @Bean(destroyMethod = "close")
+    public ShardDataSources shardDataSources(DataSourceProperties properties,
+                                             Environment environment,
+                                             NodeIdentity nodeIdentity,
+                                             ObjectProvider<MeterRegistry> meterRegistry,
+                                             @Value("${todo.sharding.shards}") String shards) {
+        Map<String, HikariDataSource> dataSources = new LinkedHashMap<>();
+        for (String shard : shards.split(",")) {
+            String[] nameUrl = shard.trim().split("=", 2);
+            if (nameUrl.length != 2 || nameUrl[0].isBlank() || dataSources.containsKey(nameUrl[0].trim())) {
+                throw new IllegalArgumentException("todo.sharding.shards: expected unique name=jdbc-url, got " + shard);
+            }
+            String name = nameUrl[0].trim();
+
+            HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(nameUrl[1].trim())
+                    .build();
+            Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(dataSource)); // same pool settings
+            dataSource.setPoolName("todo-" + name);
+            dataSource.addDataSourceProperty("ApplicationName", nodeIdentity.getApplicationName()); // own notifications
+            meterRegistry.ifAvailable(registry -> dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+            dataSources.put(name, dataSource);
+        }
+
+        if (dataSources.size() > ShardIds.MAX_SHARDS) {
+            throw new IllegalArgumentException("todo.sharding.shards: at most " + ShardIds.MAX_SHARDS + " shards");
+        }
+        return new ShardDataSources(dataSources);
+    }
+
+    // replaces the DataSource of Spring Boot (the statistics proxy is put around this one)
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardDataSources shards) {
+        ShardRoutingDataSource dataSource = new ShardRoutingDataSource();
+        dataSource.setTargetDataSources(new HashMap<>(shards.asMap()));
+        dataSource.setDefaultTargetDataSource(shards.get(shards.directory()));
+        return dataSource;
+    }
+
+    @Bean
+    public FlywayMigrationStrategy shardMigrations(ShardDataSources shards) {
+        return flyway -> {
+            List<String> names = shards.names();
+            for (int index = 0; index < names.size(); index++) {
+                DataSource dataSource = shards.get(names.get(index));
+                Flyway.configure().configuration(flyway.getConfiguration()).dataSource(dataSource).load().migrate();
+                Flyway.configure().configuration(flyway.getConfiguration()).dataSource(dataSource)
+                        .locations("classpath:db/sharding")
+                        .table("flyway_sharding_history")
+                        .baselineVersion("0")
+                        .placeholders(Map.of("shardIndex", String.valueOf(index), "maxShards", String.valueOf(ShardIds.MAX_SHARDS)))
+                        .load().migrate();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,25 @@
+package ru.javabegin.backend.todo.todobackend.startup;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationInitializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.javabegin.backend.todo.todobackend.cache.CacheInvalidationListener;
+import ru.javabegin.backend.todo.todobackend.outbox.OutboxRelay;
+import ru.javabegin.backend.todo.todobackend.service.TaskArchiveJob;
+
+@Configuration
+public class StartupConfig {
+
+    // with spring.main.lazy-initialization=true (profile fast-start) these beans are still created at startup:
+    // migrations must run before the first request, scheduled jobs and listeners are registered only when created
+    @Bean
+    static LazyInitializationExcludeFilter eagerBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(
+                FlywayMigrationInitializer.class,
+                TaskArchiveJob.class,
+                CacheInvalidationListener.class,
+                OutboxRelay.class);
+    }
+
+}
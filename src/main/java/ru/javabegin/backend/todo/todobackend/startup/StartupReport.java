@@ -0,0 +1,76 @@
+package ru.javabegin.backend.todo.todobackend.startup;
+
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/*
+
+Startup time after the application is ready:
+- the slowest startup steps (bean creation, context phases) are logged (the whole timeline is at /actuator/startup)
+- if todo.startup.budget-ms is set and the startup took longer, a warning is logged;
+  with todo.startup.fail-over-budget=true the application exits with code 1 (used by the CI startup check)
+
+*/
+
+@Component
+@Log
+public class StartupReport {
+
+    private final long budgetMs;
+    private final boolean failOverBudget;
+    private final int slowestSteps;
+
+    public StartupReport(@Value("${todo.startup.budget-ms:0}") long budgetMs,
+                         @Value("${todo.startup.fail-over-budget:false}") boolean failOverBudget,
+                         @Value("${todo.startup.log-slowest:10}") int slowestSteps) {
+        this.budgetMs = budgetMs;
+        this.failOverBudget = failOverBudget;
+        this.slowestSteps = slowestSteps;
+    }
+
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+        Duration timeTaken = event.getTimeTaken();
+        log.info("Started in " + (timeTaken != null ? timeTaken.toMillis() : -1) + " ms" + slowestSteps(event));
+
+        if (budgetMs > 0 && timeTaken != null && timeTaken.toMillis() > budgetMs) {
+            log.warning("Startup took " + timeTaken.toMillis() + " ms, budget is " + budgetMs + " ms");
+            if (failOverBudget) {
+                System.exit(SpringApplication.exit(event.getApplicationContext(), () -> 1));
+            }
+        }
+    }
+
+    private String slowestSteps(ApplicationReadyEvent event) {
+        ApplicationStartup startup = event.getApplicationContext().getApplicationStartup();
+        if (slowestSteps <= 0 || !(startup instanceof BufferingApplicationStartup buffering)) {
+            return "";
+        }
+
+        StartupTimeline timeline = buffering.getBufferedTimeline(); // not drained: /actuator/startup shows it too
+        return StreamSupport.stream(timeline.getEvents().spliterator(), false)
+                .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+                .limit(slowestSteps)
+                .map(e -> "\n  " + e.getDuration().toMillis() + " ms  " + e.getStartupStep().getName() + " " + describe(e))
+                .collect(Collectors.joining("", ", slowest steps:", ""));
+    }
+
+    private static String describe(StartupTimeline.TimelineEvent event) {
+        return StreamSupport.stream(event.getStartupStep().getTags().spliterator(), false)
+                .map(tag -> tag.getKey() + "=" + tag.getValue())
+                .collect(Collectors.joining(", "));
+    }
+
+}
@@ -0,0 +1,172 @@
+package ru.javabegin.backend.todo.todobackend.web;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+
+Safe retries of write requests (PUT, PATCH, DELETE and the POST endpoints in WRITE_POSTS) with the header
+"Idempotency-Key: <unique value>". Other POST requests only read data (search, lists) and are not filtered.
+The first request is executed, its response is remembered; a retry with the same key, method, URI and query gets
+the same response without executing it again. A retry while the first request is still running gets 409.
+Responses with 5xx are not remembered (the retry executes the request again).
+
+Keys are kept in memory of this instance for todo.idempotency.ttl-seconds.
+
+*/
+
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final int MAX_KEY_LENGTH = 200;
+
+    // POST endpoints that change data (paths without the context path); a new one must be added here
+    private static final Set<String> WRITE_POSTS = Set.of(
+            "/task/add", "/category/add", "/priority/add",
+            "/import/tasks",
+            "/admin/shards/rebalance");
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public IdempotencyFilter(@Value("${todo.idempotency.enabled:true}") boolean enabled,
+                             @Value("${todo.idempotency.ttl-seconds:3600}") long ttlSeconds,
+                             @Value("${todo.idempotency.max-entries:100000}") int maxEntries) {
+        this.enabled = enabled;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!enabled || request.getHeader(HEADER) == null) {
+            return true;
+        }
+        String method = request.getMethod();
+        return switch (method) {
+            case "PUT", "PATCH", "DELETE" -> false;
+            case "POST" -> !WRITE_POSTS.contains(request.getRequestURI().substring(request.getContextPath().length()));
+            default -> true;
+        };
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        String header = request.getHeader(HEADER);
+        if (header.isBlank() || header.length() > MAX_KEY_LENGTH) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "invalid " + HEADER);
+            return;
+        }
+
+        // the query is a part of the request (e.g. the email of /import/tasks)
+        String query = request.getQueryString();
+        String key = request.getMethod() + " " + request.getRequestURI() + (query != null ? "?" + query : "") + " " + header;
+        Entry entry = new Entry(System.currentTimeMillis());
+
+        Entry existing = claim(key, entry);
+        if (existing != null) {
+            if (existing.completed) {
+                replay(existing, response);
+            } else {
+                write(response, HttpStatus.CONFLICT.value(), "text/plain;charset=UTF-8",
+                        ("request with " + HEADER + "=" + header + " is in progress").getBytes(StandardCharsets.UTF_8));
+            }
+            return;
+        }
+
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        try {
+            chain.doFilter(request, wrapper);
+        } catch (IOException | ServletException | RuntimeException e) {
+            entries.remove(key, entry); // not executed completely - may be retried
+            throw e;
+        }
+
+        if (wrapper.getStatus() >= 500) {
+            entries.remove(key, entry);
+        } else {
+            entry.status = wrapper.getStatus();
+            entry.contentType = wrapper.getContentType();
+            entry.body = wrapper.getContentAsByteArray();
+            entry.completed = true;
+        }
+        wrapper.copyBodyToResponse();
+    }
+
+    // returns the entry of an earlier request with this key or null if the key is taken by this request
+    private Entry claim(String key, Entry entry) {
+        while (true) {
+            Entry existing = entries.putIfAbsent(key, entry);
+            if (existing == null) {
+                if (entries.size() > maxEntries) {
+                    purge();
+                }
+                return null;
+            }
+            if (!expired(existing)) {
+                return existing;
+            }
+            if (entries.replace(key, existing, entry)) {
+                return null;
+            }
+        }
+    }
+
+    private void purge() {
+        entries.values().removeIf(this::expired);
+        if (entries.size() > maxEntries) {
+            entries.values().removeIf(e -> e.completed); // still too many - forget finished requests
+        }
+    }
+
+    private boolean expired(Entry entry) {
+        return System.currentTimeMillis() - entry.createdAt > ttlMillis;
+    }
+
+    private void replay(Entry entry, HttpServletResponse response) throws IOException {
+        response.setHeader("Idempotent-Replayed", "true");
+        write(response, entry.status, entry.contentType, entry.body);
+    }
+
+    private void write(HttpServletResponse response, int status, String contentType, byte[] body) throws IOException {
+        response.setStatus(status);
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private static final class Entry {
+        final long createdAt;
+        volatile boolean completed;
+        int status;
+        String contentType;
+        byte[] body;
+
+        Entry(long createdAt) {
+            this.createdAt = createdAt;
+        }
+    }
+
+}
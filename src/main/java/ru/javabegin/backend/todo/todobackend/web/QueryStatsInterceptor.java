@@ -0,0 +1,30 @@
+package ru.javabegin.backend.todo.todobackend.web;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import ru.javabegin.backend.todo.todobackend.jdbc.QueryStatistics;
+
+// marks the boundaries of a request, so statements repeated inside one request (N+1) can be detected
+@Component
+public class QueryStatsInterceptor implements HandlerInterceptor {
+
+    private final QueryStatistics queryStatistics;
+
+    public QueryStatsInterceptor(QueryStatistics queryStatistics) {
+        this.queryStatistics = queryStatistics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        queryStatistics.beginRequest();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        queryStatistics.endRequest(request.getMethod() + " " + request.getRequestURI());
+    }
+
+}
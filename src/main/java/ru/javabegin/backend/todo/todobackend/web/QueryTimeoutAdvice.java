@@ -0,0 +1,18 @@
+package ru.javabegin.backend.todo.todobackend.web;
+
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+// a statement stopped by the request deadline (RequestDeadlineFilter): the answer would come too late anyway
+@RestControllerAdvice
+public class QueryTimeoutAdvice {
+
+    @ExceptionHandler({QueryTimeoutException.class, jakarta.persistence.QueryTimeoutException.class})
+    public ResponseEntity timeout(RuntimeException e) {
+        return new ResponseEntity("request deadline exceeded", HttpStatus.GATEWAY_TIMEOUT);
+    }
+
+}
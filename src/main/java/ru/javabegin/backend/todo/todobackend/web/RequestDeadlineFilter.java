@@ -0,0 +1,121 @@
+package ru.javabegin.backend.todo.todobackend.web;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.javabegin.backend.todo.todobackend.jdbc.QueryDeadline;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+
+Time budget of a request for its SQL statements: todo.deadline.budgets per path ("path=ms" separated by commas,
+0 = no limit), todo.deadline.default-ms for other paths. A client may ask for less with the header
+"X-Request-Timeout: <ms>" (the time it waits for the answer). When the budget is used up the running statement
+is cancelled by PostgreSQL and the client gets 504 (see QueryTimeoutAdvice) instead of holding a connection.
+
+Asynchronous responses (streaming) keep the budget of their request; if the client disconnects during them,
+the running statement is cancelled at once. A blocking request learns about a disconnect only when it writes
+the answer, so there the budget is the limit.
+
+*/
+
+@Component
+public class RequestDeadlineFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "X-Request-Timeout";
+
+    private final boolean enabled;
+    private final long defaultMillis;
+    private final Map<String, Long> budgets = new HashMap<>();
+
+    public RequestDeadlineFilter(@Value("${todo.deadline.enabled:true}") boolean enabled,
+                                 @Value("${todo.deadline.default-ms:10000}") long defaultMillis,
+                                 @Value("${todo.deadline.budgets:}") String budgets) {
+        this.enabled = enabled;
+        this.defaultMillis = defaultMillis;
+        for (String budget : budgets.split(",")) {
+            if (budget.isBlank()) {
+                continue;
+            }
+            String[] pathMillis = budget.trim().split("=", 2);
+            if (pathMillis.length != 2) {
+                throw new IllegalArgumentException("todo.deadline.budgets: expected path=ms, got " + budget);
+            }
+            this.budgets.put(pathMillis[0].trim(), Long.parseLong(pathMillis[1].trim()));
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        long budget = budgetOf(request);
+        if (budget <= 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        QueryDeadline deadline = QueryDeadline.start(budget);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            QueryDeadline.clear();
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new DisconnectListener(deadline));
+            }
+        }
+    }
+
+    private long budgetOf(HttpServletRequest request) {
+        long budget = budgets.getOrDefault(request.getServletPath(), defaultMillis);
+
+        String header = request.getHeader(HEADER);
+        if (header != null) {
+            try {
+                long clientMillis = Long.parseLong(header.trim());
+                if (clientMillis > 0 && (budget <= 0 || clientMillis < budget)) {
+                    budget = clientMillis;
+                }
+            } catch (NumberFormatException ignored) {
+                // the budget of the path
+            }
+        }
+        return budget;
+    }
+
+    private record DisconnectListener(QueryDeadline deadline) implements AsyncListener {
+
+        @Override
+        public void onError(AsyncEvent event) {
+            deadline.cancel();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            deadline.cancel();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+}
@@ -1,16 +1,47 @@
 package ru.javabegin.backend.todo.todobackend.web;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.javabegin.backend.todo.todobackend.jdbc.QueryDeadline;
+import ru.javabegin.backend.todo.todobackend.shard.ShardContext;
+import ru.javabegin.backend.todo.todobackend.shard.ShardRoutingInterceptor;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
+
+    private final QueryStatsInterceptor queryStatsInterceptor;
+    private final ShardRoutingInterceptor shardRoutingInterceptor; // null without sharding
+
+    public WebConfig(QueryStatsInterceptor queryStatsInterceptor, ObjectProvider<ShardRoutingInterceptor> shardRoutingInterceptor) {
+        this.queryStatsInterceptor = queryStatsInterceptor;
+        this.shardRoutingInterceptor = shardRoutingInterceptor.getIfAvailable();
+    }
+
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/**")  // Dla wszystkich ścieżek
                 .allowedOrigins("http://localhost:3000") // Tylko localhost:3000
-                .allowedMethods("GET", "POST", "PUT", "DELETE") // Dozwolone metody HTTP
+                .allowedMethods("GET", "POST", "PUT", "PATCH", "DELETE") // Dozwolone metody HTTP
                 .allowCredentials(true); // Zezwolenie na przesyłanie ciasteczek i nagłówków autoryzacji
     }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(queryStatsInterceptor); // SQL statements of one request (N+1 detection)
+        if (shardRoutingInterceptor != null) {
+            registry.addInterceptor(shardRoutingInterceptor); // shard of the request
+        }
+    }
+
+    // the shard and the deadline of a request go with its asynchronous parts (streaming responses);
+    // one decorator for both: the task executor takes it only if there is a single one
+    @Bean
+    public TaskDecorator requestContextTaskDecorator() {
+        return runnable -> ShardContext.wrap(QueryDeadline.wrap(runnable));
+    }
 }
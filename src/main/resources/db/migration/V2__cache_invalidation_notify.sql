@@ -0,0 +1,39 @@
+-- Cache invalidation between application nodes.
+-- Every change of task/category/priority/stat sends a notification to the channel todo_cache_invalidation
+-- with payload "<table>:<user_id>:<application_name>" (application_name tells which node made the change).
+-- Notifications are sent on commit; identical payloads of one transaction are delivered only once.
+
+create or replace function todolist.notify_cache_invalidation() returns trigger
+    language plpgsql as
+$$
+declare
+    changed_user_id bigint;
+begin
+    if (tg_op = 'DELETE') then
+        changed_user_id := old.user_id;
+    else
+        changed_user_id := new.user_id;
+    end if;
+
+    perform pg_notify('todo_cache_invalidation',
+                      tg_table_name || ':' || coalesce(changed_user_id::text, '') || ':' ||
+                      coalesce(current_setting('application_name', true), ''));
+    return null;
+end;
+$$;
+
+create trigger task_cache_invalidation
+    after insert or update or delete on todolist.task
+    for each row execute function todolist.notify_cache_invalidation();
+
+create trigger category_cache_invalidation
+    after insert or update or delete on todolist.category
+    for each row execute function todolist.notify_cache_invalidation();
+
+create trigger priority_cache_invalidation
+    after insert or update or delete on todolist.priority
+    for each row execute function todolist.notify_cache_invalidation();
+
+create trigger stat_cache_invalidation
+    after insert or update or delete on todolist.stat
+    for each row execute function todolist.notify_cache_invalidation();
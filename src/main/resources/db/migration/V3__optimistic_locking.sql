@@ -0,0 +1,4 @@
+-- version of a row for optimistic locking (incremented by every update from the application)
+alter table todolist.task add column version bigint not null default 0;
+alter table todolist.category add column version bigint not null default 0;
+alter table todolist.priority add column version bigint not null default 0;
@@ -0,0 +1,17 @@
+-- Archive of old completed tasks (moved from todolist.task by TaskArchiveJob).
+-- Range partitioned by task_date: one partition per year is created by the job before moving rows into it,
+-- the default partition only catches rows for which the yearly partition could not be created.
+-- No foreign keys: the application detaches archived tasks when a category/priority is deleted.
+
+create table todolist.task_archive
+(
+    like todolist.task,
+    archived_at timestamp not null default now(),
+    primary key (id, task_date)
+) partition by range (task_date);
+
+create table todolist.task_archive_default partition of todolist.task_archive default;
+
+create index task_archive_user_date_idx on todolist.task_archive (user_id, task_date desc);
+create index task_archive_category_idx on todolist.task_archive (category_id);
+create index task_archive_priority_idx on todolist.task_archive (priority_id);
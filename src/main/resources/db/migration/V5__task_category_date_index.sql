@@ -0,0 +1,4 @@
+-- keyset pages of the tasks of one category: where category_id = ? and (task_date, id) > (?, ?) order by task_date, id
+-- (tasks without date come last: task_date is null and id > ?)
+-- built without blocking writes to the table; Flyway runs this script outside of a transaction (see the .conf file)
+create index concurrently if not exists task_category_date_id_idx on todolist.task (category_id, task_date, id);
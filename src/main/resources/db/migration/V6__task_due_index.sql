@@ -0,0 +1,3 @@
+-- reminders: uncompleted tasks due in a time window (where coalesce(completed, 0) = 0 and task_date >= ? and task_date < ?)
+-- built without blocking writes to the table; Flyway runs this script outside of a transaction (see the .conf file)
+create index concurrently if not exists task_due_idx on todolist.task (task_date) where coalesce(completed, 0) = 0;
@@ -0,0 +1,16 @@
+-- Change events of tasks, categories and priorities (transactional outbox, see OutboxWriter and OutboxRelay).
+-- A row is written in the transaction of the change and deleted when the relay has published it,
+-- so the table stays small but sees many deletes: it is vacuumed more often than the default.
+
+create table todolist.outbox
+(
+    id           bigint generated always as identity primary key,
+    user_id      bigint,
+    aggregate    varchar(16) not null,
+    aggregate_id bigint      not null,
+    type         varchar(16) not null,
+    payload      jsonb       not null,
+    created_at   timestamptz not null default now()
+);
+
+alter table todolist.outbox set (autovacuum_vacuum_scale_factor = 0.01, autovacuum_vacuum_threshold = 1000);
@@ -0,0 +1,9 @@
+-- one index per sort column of the task search (TaskSort): where user_id = ? order by <column>, id
+-- (read forwards for asc, backwards for desc; nulls last/first as the index has them)
+-- built without blocking writes to the table; Flyway runs this script outside of a transaction (see the .conf file)
+-- a B-tree entry must fit into ~2700 bytes: longer titles can't be inserted while the title index exists
+create index concurrently if not exists task_user_date_id_idx on todolist.task (user_id, task_date, id);
+create index concurrently if not exists task_user_title_id_idx on todolist.task (user_id, title, id);
+create index concurrently if not exists task_user_priority_id_idx on todolist.task (user_id, priority_id, id);
+create index concurrently if not exists task_user_category_id_idx on todolist.task (user_id, category_id, id);
+create index concurrently if not exists task_user_completed_id_idx on todolist.task (user_id, completed, id);
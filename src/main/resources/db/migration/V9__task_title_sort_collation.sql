@@ -0,0 +1,5 @@
+-- the task search sorts titles in the collation ucs_basic (Unicode code points, TaskSort.TITLE): the same order in every
+-- database and in the in-memory working set; the index has to be in the same collation to be read in this order
+-- built without blocking writes to the table; Flyway runs this script outside of a transaction (see the .conf file)
+create index concurrently if not exists task_user_title_ucs_id_idx on todolist.task (user_id, title collate ucs_basic, id);
+drop index concurrently if exists todolist.task_user_title_id_idx;
@@ -0,0 +1,33 @@
+-- Ids of tasks, categories and priorities with sharding (see ShardIds): 2^52 | sequence << 10 | (user_id % 1024).
+-- The sequence of every shard gives other numbers (start = index of the shard, step = max number of shards),
+-- so ids stay unique when the rows of a user are moved to another shard.
+
+create sequence todolist.shard_id_seq minvalue 0 start with ${shardIndex} increment by ${maxShards};
+
+create function todolist.shard_id() returns trigger
+    language plpgsql as
+$$
+begin
+    if new.id is null then
+        new.id := (1::bigint << 52) | (nextval('todolist.shard_id_seq') << 10) | (new.user_id % 1024);
+    end if;
+    return new;
+end
+$$;
+
+-- the id is set by the trigger instead of the identity/serial default (a default would be applied before the trigger)
+alter table todolist.task alter column id drop identity if exists;
+alter table todolist.task alter column id drop default;
+alter table todolist.category alter column id drop identity if exists;
+alter table todolist.category alter column id drop default;
+alter table todolist.priority alter column id drop identity if exists;
+alter table todolist.priority alter column id drop default;
+
+create trigger task_shard_id before insert on todolist.task for each row execute function todolist.shard_id();
+create trigger category_shard_id before insert on todolist.category for each row execute function todolist.shard_id();
+create trigger priority_shard_id before insert on todolist.priority for each row execute function todolist.shard_id();
+
+-- also with session_replication_role = replica (bulk import turns the other triggers off)
+alter table todolist.task enable always trigger task_shard_id;
+alter table todolist.category enable always trigger category_shard_id;
+alter table todolist.priority enable always trigger priority_shard_id;
@@ -0,0 +1,69 @@
+package ru.javabegin.backend.todo.todobackend;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// main endpoints against a running PostgreSQL (SPRING_DATASOURCE_URL, _USERNAME, _PASSWORD);
+// also compiled into the native test image: ./gradlew nativeTest checks the native build the same way
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@EnabledIfEnvironmentVariable(named = "SPRING_DATASOURCE_URL", matches = ".+")
+class SmokeTest {
+
+    private static final String EMAIL = "\"smoke-test@example.com\"";
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void mainEndpointsAnswer() throws IOException, InterruptedException {
+        assertThat(status("GET", "/actuator/health", null)).isEqualTo(200);
+
+        List<String> failed = new ArrayList<>();
+        check(failed, "POST", "/category/all", EMAIL);
+        check(failed, "POST", "/priority/all", EMAIL);
+        check(failed, "POST", "/task/all", EMAIL);
+        check(failed, "POST", "/task/search", "{\"email\":" + EMAIL + ",\"pageNumber\":0,\"pageSize\":10," +
+                "\"sortColumn\":\"title\",\"sortDirection\":\"asc\"}");
+        check(failed, "POST", "/bootstrap", "{\"email\":" + EMAIL + "}");
+        check(failed, "POST", "/task/id", "-1");
+        check(failed, "GET", "/admin/query-stats", null);
+        check(failed, "GET", "/actuator/metrics", null);
+
+        assertThat(failed).isEmpty();
+    }
+
+    // expected answers: 200, or 406 for an unknown id (the repository's "not found" answer)
+    private void check(List<String> failed, String method, String path, String body) throws IOException, InterruptedException {
+        int status = status(method, path, body);
+        if (status != 200 && status != 406) {
+            failed.add(method + " " + path + " -> " + status);
+        }
+    }
+
+    private int status(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .timeout(Duration.ofSeconds(5));
+        if (body != null) {
+            request.header("Content-Type", "application/json").method(method, HttpRequest.BodyPublishers.ofString(body));
+        } else {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        }
+        return http.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+}
@@ -0,0 +1,122 @@
+package ru.javabegin.backend.todo.todobackend.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.javabegin.backend.todo.todobackend.entity.Task;
+import ru.javabegin.backend.todo.todobackend.entity.User;
+import ru.javabegin.backend.todo.todobackend.repo.CategoryRepository;
+import ru.javabegin.backend.todo.todobackend.repo.TaskRepository;
+import ru.javabegin.backend.todo.todobackend.service.UserResolver;
+import ru.javabegin.backend.todo.todobackend.shard.ShardContext;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// write-through of the working set when the user's tasks are not on the directory shard
+class TaskWorkingSetCacheTest {
+
+    private static final String EMAIL = "user@example.com";
+    private static final String USER_SHARD = "shard-b";
+
+    // tasks of every shard (null = the directory shard), the mocked repository answers from the current one
+    private final Map<String, Map<Long, Task>> shards = new HashMap<>();
+
+    private TaskWorkingSetCache cache;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        shards.put(null, new HashMap<>());
+        shards.put("shard-a", new HashMap<>());
+        shards.put(USER_SHARD, new HashMap<>());
+
+        user = new User();
+        user.setId(1L);
+
+        TaskRepository taskRepository = mock(TaskRepository.class);
+        when(taskRepository.findWorkingSet(anyString()))
+                .thenAnswer(invocation -> new ArrayList<>(currentShard().values()));
+        when(taskRepository.findWithReferencesById(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(currentShard().get(invocation.<Long>getArgument(0))));
+
+        CategoryRepository categoryRepository = mock(CategoryRepository.class);
+        when(categoryRepository.findByUserEmailOrderByIdAsc(anyString())).thenReturn(List.of());
+
+        UserResolver userResolver = mock(UserResolver.class);
+        when(userResolver.emailOf(any(User.class))).thenReturn(EMAIL);
+
+        cache = new TaskWorkingSetCache(taskRepository, categoryRepository, userResolver,
+                mock(PlatformTransactionManager.class), true, 256);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.shutdown();
+    }
+
+    @Test
+    void savedTaskStaysInWorkingSetOfAnotherShard() {
+        shards.get(USER_SHARD).put(10L, task(10L, "first"));
+
+        ShardContext.run(USER_SHARD, () -> assertThat(cache.findAll(EMAIL)).extracting(Task::getId).containsExactly(10L));
+
+        // the request writes on the user's shard, the change is applied on the updater thread
+        shards.get(USER_SHARD).put(11L, task(11L, "second"));
+        ShardContext.run(USER_SHARD, () -> cache.taskSaved(11L, user));
+
+        List<Task> tasks = ShardContext.call(USER_SHARD, this::awaitApplied);
+        assertThat(tasks).extracting(Task::getId).containsExactlyInAnyOrder(10L, 11L);
+    }
+
+    @Test
+    void changedTaskIsReplacedInWorkingSetOfAnotherShard() {
+        shards.get(USER_SHARD).put(10L, task(10L, "first"));
+        ShardContext.run(USER_SHARD, () -> cache.findAll(EMAIL));
+
+        shards.get(USER_SHARD).put(10L, task(10L, "renamed"));
+        ShardContext.run(USER_SHARD, () -> cache.taskSaved(10L, user));
+
+        List<Task> tasks = ShardContext.call(USER_SHARD, this::awaitApplied);
+        assertThat(tasks).extracting(Task::getTitle).containsExactly("renamed");
+    }
+
+    private Map<Long, Task> currentShard() {
+        return shards.get(ShardContext.current());
+    }
+
+    // null is returned while a change is pending
+    private List<Task> awaitApplied() {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            List<Task> tasks = cache.findAll(EMAIL);
+            if (tasks != null) {
+                return tasks;
+            }
+            Thread.onSpinWait();
+        }
+        throw new AssertionError("working set change is not applied");
+    }
+
+    private static Task task(long id, String title) {
+        Task task = new Task();
+        task.setId(id);
+        task.setTitle(title);
+        task.setTaskDate(new Date(1_700_000_000_000L + id));
+        task.setVersion(0L);
+        return task;
+    }
+
+}
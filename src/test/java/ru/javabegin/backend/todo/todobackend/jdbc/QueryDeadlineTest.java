@@ -0,0 +1,116 @@
+package ru.javabegin.backend.todo.todobackend.jdbc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// the request deadline as query timeout of the statements (JdbcProxyFactory)
+class QueryDeadlineTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private PreparedStatement statement;
+    private DataSource dataSource;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws SQLException {
+        statement = mock(PreparedStatement.class);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        DataSource target = mock(DataSource.class);
+        when(target.getConnection()).thenReturn(connection);
+
+        ObjectProvider<MeterRegistry> registry = mock(ObjectProvider.class);
+        when(registry.getIfAvailable()).thenReturn(meterRegistry);
+        dataSource = JdbcProxyFactory.wrap(target, new QueryStatistics(registry, 2000, 10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        QueryDeadline.clear();
+    }
+
+    @Test
+    void statementGetsRemainingTimeAsTimeout() throws SQLException {
+        QueryDeadline.start(2500);
+
+        execute();
+
+        verify(statement).setQueryTimeout(3); // rounded up to whole seconds
+        verify(statement).executeUpdate();
+    }
+
+    @Test
+    void shorterTimeoutOfStatementIsKept() throws SQLException {
+        when(statement.getQueryTimeout()).thenReturn(1);
+        QueryDeadline.start(60_000);
+
+        execute();
+
+        verify(statement, never()).setQueryTimeout(anyInt());
+    }
+
+    @Test
+    void statementIsNotSentWhenBudgetIsUsedUp() throws SQLException {
+        QueryDeadline.start(0);
+
+        assertThatThrownBy(this::execute).isInstanceOf(SQLTimeoutException.class)
+                .hasMessage("request deadline exceeded");
+        verify(statement, never()).executeUpdate();
+        assertThat(meterRegistry.counter("todo.query.timeouts", "reason", "deadline").count()).isEqualTo(1);
+    }
+
+    @Test
+    void statementIsNotSentAfterDisconnect() throws SQLException {
+        QueryDeadline.start(60_000).cancel();
+
+        assertThatThrownBy(this::execute).isInstanceOf(SQLTimeoutException.class)
+                .hasMessage("client disconnected");
+        verify(statement, never()).executeUpdate();
+        assertThat(meterRegistry.counter("todo.query.timeouts", "reason", "disconnect").count()).isEqualTo(1);
+    }
+
+    @Test
+    void cancelledStatementFailsWithTimeout() throws SQLException {
+        when(statement.executeUpdate()).thenThrow(new SQLException("canceling statement due to statement timeout", "57014"));
+        QueryDeadline.start(60_000);
+
+        assertThatThrownBy(this::execute).isInstanceOf(SQLTimeoutException.class)
+                .hasCauseInstanceOf(SQLException.class);
+    }
+
+    @Test
+    void statementWithoutDeadlineHasNoTimeout() throws SQLException {
+        execute();
+
+        verify(statement, never()).setQueryTimeout(anyInt());
+        verify(statement).executeUpdate();
+    }
+
+    private void execute() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement prepared = connection.prepareStatement("update todolist.task set completed = 1 where id = ?")) {
+            prepared.setLong(1, 1L);
+            prepared.executeUpdate();
+        }
+    }
+
+}
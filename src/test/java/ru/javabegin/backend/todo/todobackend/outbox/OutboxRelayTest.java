@@ -0,0 +1,106 @@
+package ru.javabegin.backend.todo.todobackend.outbox;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.javabegin.backend.todo.todobackend.shard.ShardRouter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// order of the published events: by id within a batch (RETURNING has no order) and across batches
+class OutboxRelayTest {
+
+    private static final int BATCH_SIZE = 2;
+
+    private JdbcTemplate jdbcTemplate;
+    private final List<Long> published = new ArrayList<>();
+    private OutboxSink sink = events -> events.forEach(event -> published.add(event.id()));
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(contains("pg_try_advisory_xact_lock"), eq(Boolean.class), anyLong()))
+                .thenReturn(true);
+    }
+
+    @Test
+    void eventsArePublishedInIdOrder() {
+        takeBatches(List.of(event(4, 1L), event(2, 1L)), List.of(event(5, 2L)));
+
+        assertThat(relay().relay()).isEqualTo(3);
+        assertThat(published).containsExactly(2L, 4L, 5L);
+    }
+
+    @Test
+    void nothingIsPublishedWhileAnotherInstanceHasTheLock() {
+        when(jdbcTemplate.queryForObject(contains("pg_try_advisory_xact_lock"), eq(Boolean.class), anyLong()))
+                .thenReturn(false);
+        takeBatches(List.of(event(1, 1L)));
+
+        assertThat(relay().relay()).isZero();
+        assertThat(published).isEmpty();
+    }
+
+    @Test
+    void failedSinkKeepsEventsForNextRun() {
+        sink = events -> {
+            throw new IOException("disk full");
+        };
+        takeBatches(List.of(event(1, 1L)));
+
+        // the exception rolls the DELETE back: the events stay in the outbox
+        assertThatThrownBy(() -> relay().relay()).isInstanceOf(UncheckedIOException.class);
+    }
+
+    @Test
+    void eventIdIsTakenAfterTheUserIsLocked() {
+        OutboxWriter writer = new OutboxWriter(jdbcTemplate, mock(EntityManager.class), true);
+        writer.rowSaved("task", 7L, false);
+
+        // the lock is in the same statement, joined to the row before the insert takes the next id
+        verify(jdbcTemplate).update(argThat((String sql) ->
+                sql.startsWith("insert into todolist.outbox") && sql.contains("pg_advisory_xact_lock")), any(), any());
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    private void takeBatches(List<OutboxEvent>... batches) {
+        var stubbing = when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(BATCH_SIZE)));
+        for (List<OutboxEvent> batch : batches) {
+            stubbing = stubbing.thenReturn(batch);
+        }
+        stubbing.thenReturn(List.of());
+    }
+
+    private OutboxRelay relay() {
+        OutboxWriter writer = mock(OutboxWriter.class);
+        when(writer.isEnabled()).thenReturn(true);
+        return new OutboxRelay(writer, sink, mock(ShardRouter.class), jdbcTemplate,
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), BATCH_SIZE);
+    }
+
+    private static OutboxEvent event(long id, Long userId) {
+        return new OutboxEvent(id, null, userId, "task", id, OutboxWriter.UPDATED, "{}", Instant.EPOCH);
+    }
+
+}
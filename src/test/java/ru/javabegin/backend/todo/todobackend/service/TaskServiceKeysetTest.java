@@ -0,0 +1,132 @@
+package ru.javabegin.backend.todo.todobackend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import ru.javabegin.backend.todo.todobackend.cache.TaskSearchCache;
+import ru.javabegin.backend.todo.todobackend.cache.TaskWorkingSetCache;
+import ru.javabegin.backend.todo.todobackend.dto.TaskKeysetPage;
+import ru.javabegin.backend.todo.todobackend.entity.Task;
+import ru.javabegin.backend.todo.todobackend.repo.FieldProjectionRepository;
+import ru.javabegin.backend.todo.todobackend.repo.TaskArchiveRepository;
+import ru.javabegin.backend.todo.todobackend.repo.TaskRepository;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// keyset paging of the category's tasks: (taskDate, id) after the cursor, then the tasks without date by id
+class TaskServiceKeysetTest {
+
+    private static final long CATEGORY_ID = 1;
+    private static final String EMAIL = "user@example.com";
+
+    private final List<Task> tasks = new ArrayList<>();
+    private TaskService service;
+
+    @BeforeEach
+    void setUp() {
+        Timestamp same = timestamp(1_700_000_000_000L, 123_456_789); // microseconds are a part of the cursor
+        tasks.add(task(5, same));
+        tasks.add(task(3, same));
+        tasks.add(task(9, timestamp(1_600_000_000_000L, 0)));
+        tasks.add(task(1, timestamp(1_800_000_000_000L, 0)));
+        tasks.add(task(4, null));
+        tasks.add(task(2, null));
+        tasks.add(task(8, timestamp(1_700_000_000_000L, 123_457_000)));
+
+        // the queries of TaskRepository over the list
+        TaskRepository repository = mock(TaskRepository.class);
+        when(repository.findCategoryTasks(anyLong(), anyString(), any(Pageable.class))).thenAnswer(invocation ->
+                dated(task -> true, invocation.getArgument(2)));
+        when(repository.findCategoryTasksAfter(anyLong(), anyString(), any(Date.class), anyLong(), any(Pageable.class)))
+                .thenAnswer(invocation -> {
+                    Date afterDate = invocation.getArgument(2);
+                    long afterId = invocation.getArgument(3);
+                    // compareTo of Timestamp compares the nanoseconds too (as the row comparison in the DB)
+                    return dated(task -> {
+                        int compared = task.getTaskDate().compareTo(afterDate);
+                        return compared > 0 || (compared == 0 && task.getId() > afterId);
+                    }, invocation.getArgument(4));
+                });
+        when(repository.findUndatedCategoryTasksAfter(anyLong(), anyString(), anyLong(), any(Pageable.class)))
+                .thenAnswer(invocation -> {
+                    long afterId = invocation.getArgument(2);
+                    Pageable pageable = invocation.getArgument(3);
+                    return tasks.stream()
+                            .filter(task -> task.getTaskDate() == null && task.getId() > afterId)
+                            .sorted(Comparator.comparing(Task::getId))
+                            .limit(pageable.getPageSize())
+                            .toList();
+                });
+
+        service = new TaskService(repository, mock(TaskArchiveRepository.class), mock(TaskWorkingSetCache.class),
+                mock(TaskSearchCache.class), mock(TaskWriteQueue.class), mock(FieldProjectionRepository.class));
+    }
+
+    @Test
+    void pagesReturnEveryTaskOnceInOrder() {
+        List<Long> ids = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        String after = null;
+        do {
+            TaskKeysetPage page = service.findByCategoryAfter(EMAIL, CATEGORY_ID, after, 2);
+            page.getTasks().forEach(task -> ids.add(task.getId()));
+            sizes.add(page.getTasks().size());
+            after = page.getNext();
+        } while (after != null);
+
+        // equal dates by id, the microseconds of 8 are after the ones of 3 and 5, tasks without date at the end
+        assertThat(ids).containsExactly(9L, 3L, 5L, 8L, 1L, 2L, 4L);
+        assertThat(sizes).containsExactly(2, 2, 2, 1);
+    }
+
+    @Test
+    void pageOfExactSizeHasNoNextPage() {
+        TaskKeysetPage page = service.findByCategoryAfter(EMAIL, CATEGORY_ID, null, tasks.size());
+
+        assertThat(page.getTasks()).hasSize(tasks.size());
+        assertThat(page.getNext()).isNull();
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThatThrownBy(() -> service.findByCategoryAfter(EMAIL, CATEGORY_ID, "yesterday,5", 2))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private List<Task> dated(Predicate<Task> condition, Pageable pageable) {
+        return tasks.stream()
+                .filter(task -> task.getTaskDate() != null)
+                .filter(condition)
+                .sorted(Comparator.comparing(Task::getTaskDate).thenComparing(Task::getId))
+                .limit(pageable.getPageSize())
+                .toList();
+    }
+
+    private static Timestamp timestamp(long millis, int nanos) {
+        Timestamp timestamp = new Timestamp(millis);
+        timestamp.setNanos(nanos);
+        return timestamp;
+    }
+
+    private static Task task(long id, Date date) {
+        Task task = new Task();
+        task.setId(id);
+        task.setTitle("task " + id);
+        task.setTaskDate(date);
+        return task;
+    }
+
+}
@@ -0,0 +1,97 @@
+package ru.javabegin.backend.todo.todobackend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import ru.javabegin.backend.todo.todobackend.cache.TaskWorkingSetCache;
+import ru.javabegin.backend.todo.todobackend.cache.TitleSuggestionCache;
+import ru.javabegin.backend.todo.todobackend.cache.UserCacheEvictor;
+import ru.javabegin.backend.todo.todobackend.entity.Task;
+import ru.javabegin.backend.todo.todobackend.entity.User;
+import ru.javabegin.backend.todo.todobackend.outbox.OutboxWriter;
+import ru.javabegin.backend.todo.todobackend.reminder.ReminderScheduler;
+import ru.javabegin.backend.todo.todobackend.repo.TaskRepository;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// optimistic locking of TaskWriter.update: one UPDATE with the version, the task is read only when nothing was updated
+class TaskWriterTest {
+
+    private TaskRepository repository;
+    private UserCacheEvictor cacheEvictor;
+    private OutboxWriter outbox;
+    private TaskWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(TaskRepository.class);
+        cacheEvictor = mock(UserCacheEvictor.class);
+        outbox = mock(OutboxWriter.class);
+        writer = new TaskWriter(repository, cacheEvictor, mock(TaskWorkingSetCache.class),
+                mock(ReminderScheduler.class), mock(TitleSuggestionCache.class), outbox);
+    }
+
+    @Test
+    void updateWithCurrentVersionReturnsNextVersion() {
+        when(repository.updateColumns(eq(7L), eq(3L), eq(1L), anyMap())).thenReturn(1);
+
+        assertThat(writer.update(task(7L, 3L))).isEqualTo(4L);
+        verify(outbox).rowSaved("task", 7L, false);
+        verify(cacheEvictor).tasksChanged(any(User.class));
+    }
+
+    @Test
+    void updateWithOldVersionIsConflict() {
+        when(repository.updateColumns(eq(7L), eq(3L), eq(1L), anyMap())).thenReturn(0);
+        when(repository.findVersionById(7L)).thenReturn(Optional.of(4L)); // changed by another client
+
+        assertThatThrownBy(() -> writer.update(task(7L, 3L)))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+        verify(outbox, never()).rowSaved(anyString(), any(), anyBoolean());
+        verify(cacheEvictor, never()).tasksChanged(any(User.class));
+    }
+
+    @Test
+    void updateOfMissingTaskIsNotFound() {
+        when(repository.updateColumns(eq(7L), eq(3L), eq(1L), anyMap())).thenReturn(0);
+        when(repository.findVersionById(7L)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> writer.update(task(7L, 3L)))
+                .isInstanceOf(EmptyResultDataAccessException.class);
+    }
+
+    @Test
+    void updateOfTaskOfAnotherUserIsNotFound() {
+        when(repository.updateColumns(eq(7L), eq(3L), eq(1L), anyMap())).thenReturn(0);
+        when(repository.findVersionById(7L)).thenReturn(Optional.of(3L)); // same version, but not the user's task
+
+        assertThatThrownBy(() -> writer.update(task(7L, 3L)))
+                .isInstanceOf(EmptyResultDataAccessException.class);
+    }
+
+    private static Task task(Long id, Long version) {
+        User user = new User();
+        user.setId(1L);
+
+        Task task = new Task();
+        task.setId(id);
+        task.setVersion(version);
+        task.setTitle("title");
+        task.setUser(user);
+        return task;
+    }
+
+}
@@ -0,0 +1,213 @@
+package ru.javabegin.backend.todo.todobackend.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.javabegin.backend.todo.todobackend.cache.UserCacheEvictor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// placement and rebalance over two shards whose pool connections are in auto-commit mode (as pgjdbc behaves)
+class ShardRebalancerTest {
+
+    private static final String DIRECTORY = "a";
+    private static final String NEW_SHARD = "b";
+
+    // everything done on the connections of a shard, in order
+    private final Map<String, List<String>> journal = new LinkedHashMap<>();
+    private final Map<String, List<FakeConnection>> connections = new LinkedHashMap<>();
+
+    private ShardRouter router;
+    private ShardRebalancer rebalancer;
+    private long userId;
+    private String failingStatement; // executeUpdate of SQL starting with it fails
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws SQLException {
+        Map<String, HikariDataSource> pools = new LinkedHashMap<>();
+        for (String shard : List.of(DIRECTORY, NEW_SHARD)) {
+            journal.put(shard, new ArrayList<>());
+            connections.put(shard, new ArrayList<>());
+            HikariDataSource pool = mock(HikariDataSource.class);
+            when(pool.getConnection()).thenAnswer(invocation -> {
+                FakeConnection connection = new FakeConnection(shard);
+                connections.get(shard).add(connection);
+                return connection.mock;
+            });
+            pools.put(shard, pool);
+        }
+        ShardDataSources shards = new ShardDataSources(pools);
+
+        ObjectProvider<ShardDataSources> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(shards);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate();
+        router = new ShardRouter(provider, jdbcTemplate, 128);
+        rebalancer = new ShardRebalancer(shards, router, mock(UserCacheEvictor.class), jdbcTemplate);
+
+        // a user on the directory whose slot belongs to the new shard
+        userId = LongStream.rangeClosed(1, ShardIds.SLOTS)
+                .filter(id -> router.shardOfUser(id).equals(NEW_SHARD))
+                .findFirst().orElseThrow();
+    }
+
+    @Test
+    void placedUserIsCommittedInOneTransaction() {
+        router.place(userId, NEW_SHARD);
+
+        assertThat(journal.get(NEW_SHARD)).containsSubsequence(
+                "autoCommit=false", "insert into todolist.user_data", "insert into todolist.stat", "commit", "autoCommit=true");
+        assertConnectionsReturnedInAutoCommit();
+    }
+
+    @Test
+    void movedUserIsCopiedThenDeleted() {
+        Map<String, Integer> moved = rebalancer.rebalance();
+
+        assertThat(moved).containsEntry(DIRECTORY, 1).containsEntry(NEW_SHARD, 0);
+        assertThat(journal.get(NEW_SHARD)).containsSubsequence(
+                "autoCommit=false", "insert into todolist.category", "insert into todolist.task_archive",
+                "update todolist.stat", "commit", "autoCommit=true");
+        assertThat(journal.get(DIRECTORY)).containsSubsequence(
+                "autoCommit=false", "delete from todolist.task_archive", "delete from todolist.category", "commit",
+                "autoCommit=true");
+        // the directory keeps the user (login)
+        assertThat(journal.get(DIRECTORY)).noneMatch(entry -> entry.startsWith("delete from todolist.user_data"));
+        assertConnectionsReturnedInAutoCommit();
+    }
+
+    @Test
+    void failedDeleteIsRolledBackAsAWhole() {
+        failingStatement = "delete from todolist.category";
+
+        assertThatThrownBy(() -> rebalancer.rebalance()).isInstanceOf(DataAccessException.class);
+
+        // the deletes before the failing one are not committed; the move can be repeated
+        List<String> source = journal.get(DIRECTORY);
+        List<String> deletes = source.subList(source.lastIndexOf("autoCommit=false"), source.size());
+        assertThat(deletes).contains("delete from todolist.task", "rollback").doesNotContain("commit");
+        assertConnectionsReturnedInAutoCommit();
+    }
+
+    @Test
+    void startedRebalanceRunsInBackground() throws InterruptedException {
+        assertThat(rebalancer.start()).isTrue();
+
+        for (int i = 0; i < 100 && (Boolean) rebalancer.status().get("running"); i++) {
+            Thread.sleep(50);
+        }
+        rebalancer.shutdown();
+
+        assertThat(rebalancer.status()).containsEntry("running", false).containsEntry("error", null)
+                .containsEntry("moved", Map.of(DIRECTORY, 1, NEW_SHARD, 0));
+    }
+
+    @Test
+    void failedBackgroundRebalanceIsReported() throws InterruptedException {
+        failingStatement = "delete from todolist.category";
+
+        assertThat(rebalancer.start()).isTrue();
+        for (int i = 0; i < 100 && (Boolean) rebalancer.status().get("running"); i++) {
+            Thread.sleep(50);
+        }
+        rebalancer.shutdown();
+
+        assertThat(rebalancer.status()).containsEntry("running", false).containsEntry("moved", null);
+        assertThat(rebalancer.status().get("error")).isNotNull();
+    }
+
+    private void assertConnectionsReturnedInAutoCommit() {
+        connections.values().forEach(list -> list.forEach(connection -> assertThat(connection.autoCommit).isTrue()));
+    }
+
+    // a pool connection: auto-commit on, commit() fails in auto-commit mode, statements are written to the journal
+    private final class FakeConnection {
+
+        final Connection mock = mock(Connection.class);
+        final List<String> log;
+        boolean autoCommit = true;
+
+        FakeConnection(String shard) throws SQLException {
+            log = journal.get(shard);
+            when(mock.getAutoCommit()).thenAnswer(invocation -> autoCommit);
+            doAnswer(invocation -> {
+                autoCommit = invocation.getArgument(0);
+                log.add("autoCommit=" + autoCommit);
+                return null;
+            }).when(mock).setAutoCommit(anyBoolean());
+            doAnswer(invocation -> {
+                if (autoCommit) {
+                    throw new SQLException("Cannot commit when autoCommit is enabled.");
+                }
+                log.add("commit");
+                return null;
+            }).when(mock).commit();
+            doAnswer(invocation -> {
+                log.add("rollback");
+                return null;
+            }).when(mock).rollback();
+            when(mock.prepareStatement(anyString())).thenAnswer(invocation -> statement(invocation.getArgument(0)));
+        }
+
+        private PreparedStatement statement(String sql) throws SQLException {
+            PreparedStatement statement = mock(PreparedStatement.class);
+            when(statement.executeQuery()).thenAnswer(invocation -> {
+                // the users of the directory; every table of the user has one row with one column
+                return sql.startsWith("select user_id") ? rows(List.of(userId)) : rows(List.of(1L));
+            });
+            when(statement.executeBatch()).thenAnswer(invocation -> {
+                log.add(name(sql));
+                return new int[0];
+            });
+            when(statement.executeUpdate()).thenAnswer(invocation -> {
+                if (failingStatement != null && sql.startsWith(failingStatement)) {
+                    throw new SQLException("connection lost", "08006");
+                }
+                log.add(name(sql));
+                return 1;
+            });
+            return statement;
+        }
+
+        // "insert into todolist.task", "update todolist.stat", "delete from todolist.category"
+        private static String name(String sql) {
+            int table = sql.indexOf("todolist.");
+            int end = sql.indexOf(' ', table);
+            return sql.substring(0, end < 0 ? sql.length() : end);
+        }
+
+        private ResultSet rows(List<Long> values) throws SQLException {
+            ResultSet rs = mock(ResultSet.class);
+            ResultSetMetaData meta = mock(ResultSetMetaData.class);
+            when(meta.getColumnCount()).thenReturn(1);
+            when(meta.getColumnName(1)).thenReturn("id");
+            when(rs.getMetaData()).thenReturn(meta);
+            int[] row = {-1};
+            when(rs.next()).thenAnswer(invocation -> ++row[0] < values.size());
+            when(rs.getLong(1)).thenAnswer(invocation -> values.get(row[0]));
+            when(rs.getObject(1)).thenAnswer(invocation -> values.get(row[0]));
+            return rs;
+        }
+    }
+
+}
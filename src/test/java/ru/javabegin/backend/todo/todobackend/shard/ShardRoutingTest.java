@@ -0,0 +1,102 @@
+package ru.javabegin.backend.todo.todobackend.shard;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// slot of a user and of an id, owners of the slots, connections of the shard in ShardContext
+class ShardRoutingTest {
+
+    @Test
+    void idCarriesSlotOfOwner() {
+        long userId = 5000;
+        int slot = ShardIds.slotOfUser(userId);
+        long id = ShardIds.MARKER | (12345L << ShardIds.SLOT_BITS) | slot;
+
+        assertThat(ShardIds.slotOfId(id)).isEqualTo(slot);
+        assertThat(ShardIds.slotOfId(12345L)).isEqualTo(-1); // created before sharding
+    }
+
+    @Test
+    void ownersDoNotDependOnOrderOfShards() {
+        ShardRing ring = new ShardRing(List.of("a", "b", "c"), 128);
+        ShardRing reordered = new ShardRing(List.of("c", "a", "b"), 128);
+
+        for (int slot = 0; slot < ShardIds.SLOTS; slot++) {
+            assertThat(reordered.ownerOf(slot)).isEqualTo(ring.ownerOf(slot));
+        }
+        assertThat(ring.slotCounts().keySet()).containsExactlyInAnyOrder("a", "b", "c");
+    }
+
+    @Test
+    void newShardTakesSlotsOnlyForItself() {
+        ShardRing before = new ShardRing(List.of("a", "b", "c"), 128);
+        ShardRing after = new ShardRing(List.of("a", "b", "c", "d"), 128);
+
+        int moved = 0;
+        for (int slot = 0; slot < ShardIds.SLOTS; slot++) {
+            if (!after.ownerOf(slot).equals(before.ownerOf(slot))) {
+                assertThat(after.ownerOf(slot)).isEqualTo("d");
+                moved++;
+            }
+        }
+        assertThat(moved).isEqualTo(after.slotCounts().get("d"));
+        assertThat(moved).isBetween(ShardIds.SLOTS / 8, ShardIds.SLOTS / 2); // about 1/4 of the slots
+    }
+
+    @Test
+    void connectionIsTakenFromShardOfContext() throws SQLException {
+        DataSource directory = dataSource();
+        DataSource shardB = dataSource();
+
+        ShardRoutingDataSource routing = new ShardRoutingDataSource();
+        routing.setTargetDataSources(Map.of("a", directory, "b", shardB));
+        routing.setDefaultTargetDataSource(directory);
+        routing.afterPropertiesSet();
+
+        Connection connection = ShardContext.call("b", () -> connection(routing));
+        assertThat(connection).isSameAs(shardB.getConnection());
+        assertThat(routing.getConnection()).isSameAs(directory.getConnection()); // no shard - the directory
+        assertThat(ShardContext.current()).isNull();
+
+        assertThatThrownBy(() -> ShardContext.call("unknown", () -> connection(routing)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void wrappedActionRunsOnShardOfCaller() throws InterruptedException {
+        String[] seen = new String[1];
+        Runnable action = ShardContext.call("b", () -> ShardContext.wrap(() -> seen[0] = ShardContext.current()));
+
+        Thread thread = new Thread(action);
+        thread.start();
+        thread.join();
+
+        assertThat(seen[0]).isEqualTo("b");
+    }
+
+    private static DataSource dataSource() throws SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        return dataSource;
+    }
+
+    private static Connection connection(DataSource dataSource) {
+        try {
+            return dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
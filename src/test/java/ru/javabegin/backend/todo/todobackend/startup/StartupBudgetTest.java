@@ -0,0 +1,43 @@
+package ru.javabegin.backend.todo.todobackend.startup;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledInNativeImage;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.javabegin.backend.todo.todobackend.TodoBackendApplication;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// the application with the fast-start profile is ready within todo.startup.budget-ms (measured as StartupReport does)
+@DisabledInNativeImage // the JVM startup is measured; the native image starts the context from its AOT code (SmokeTest)
+class StartupBudgetTest {
+
+    @Test
+    void fastStartIsWithinBudget() {
+        AtomicReference<Duration> timeTaken = new AtomicReference<>();
+
+        // as TodoBackendApplication.main; cds-training: the context starts without connecting to the DB
+        SpringApplication application = new SpringApplication(TodoBackendApplication.class);
+        application.setApplicationStartup(new BufferingApplicationStartup(4096));
+        application.setAdditionalProfiles("fast-start", "cds-training", "startup-check");
+        application.addListeners((ApplicationListener<ApplicationReadyEvent>) event -> timeTaken.set(event.getTimeTaken()));
+
+        try (ConfigurableApplicationContext context = application.run()) {
+            long budgetMs = context.getEnvironment().getRequiredProperty("todo.startup.budget-ms", Long.class);
+
+            assertThat(budgetMs).isPositive();
+            assertThat(timeTaken.get()).isNotNull();
+            assertThat(timeTaken.get().toMillis())
+                    .as("startup time in ms, budget %d ms", budgetMs)
+                    .isLessThanOrEqualTo(budgetMs);
+            assertThat(context.getBean(StartupReport.class)).isNotNull(); // the budget check of the application itself ran
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package ru.javabegin.backend.todo.todobackend.web;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdempotencyFilterTest {
+
+    private final IdempotencyFilter filter = new IdempotencyFilter(true, 3600, 1000);
+    private final AtomicInteger executions = new AtomicInteger();
+
+    // the endpoint: answers 200 with the number of its execution
+    private final FilterChain chain = (request, response) -> {
+        HttpServletResponse http = (HttpServletResponse) response;
+        http.setStatus(200);
+        http.setContentType("text/plain;charset=UTF-8");
+        http.getOutputStream().write(("executed " + executions.incrementAndGet()).getBytes(StandardCharsets.UTF_8));
+    };
+
+    @Test
+    void retryWithSameKeyIsReplayed() throws Exception {
+        MockHttpServletResponse first = send("POST", "/task/add", "key-1");
+        MockHttpServletResponse retry = send("POST", "/task/add", "key-1");
+
+        assertThat(executions).hasValue(1);
+        assertThat(retry.getStatus()).isEqualTo(200);
+        assertThat(retry.getContentAsString()).isEqualTo(first.getContentAsString()).isEqualTo("executed 1");
+        assertThat(retry.getHeader("Idempotent-Replayed")).isEqualTo("true");
+    }
+
+    @Test
+    void otherKeyOrOtherEndpointIsExecuted() throws Exception {
+        send("PUT", "/task/update", "key-1");
+        send("PUT", "/task/update", "key-2");
+        send("PATCH", "/task/update", "key-1");
+
+        assertThat(executions).hasValue(3);
+    }
+
+    @Test
+    void readingPostIsNotFiltered() throws Exception {
+        send("POST", "/task/search", "key-1");
+        MockHttpServletResponse second = send("POST", "/task/search", "key-1");
+
+        assertThat(executions).hasValue(2);
+        assertThat(second.getHeader("Idempotent-Replayed")).isNull();
+    }
+
+    @Test
+    void serverErrorIsNotRemembered() throws Exception {
+        FilterChain failing = (request, response) -> {
+            executions.incrementAndGet();
+            ((HttpServletResponse) response).setStatus(503);
+        };
+        filter.doFilter(request("DELETE", "/task/delete/1", "key-1"), new MockHttpServletResponse(), failing);
+        MockHttpServletResponse retry = send("DELETE", "/task/delete/1", "key-1");
+
+        assertThat(executions).hasValue(2);
+        assertThat(retry.getStatus()).isEqualTo(200);
+    }
+
+    private MockHttpServletResponse send(String method, String uri, String key) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(method, uri, key), response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String method, String uri, String key) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.addHeader(IdempotencyFilter.HEADER, key);
+        return request;
+    }
+
+}